@@ -12,6 +12,12 @@ import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
+import com.fitsnitchapp.location_loop.LoopCheckpointStore;
+
+/**
+ * Restarts the location loop after a reboot if it was running before, and
+ * otherwise asks the user to open the app.
+ */
 public class AutoStart extends BroadcastReceiver
 {
     public static final String CHANNEL_ID = "FITSNITCH_SYSTEM_ALERTS";
@@ -21,6 +27,11 @@ public class AutoStart extends BroadcastReceiver
     {
         Log.i("******FIT", "Did autostart here");
 
+        if (LoopCheckpointStore.hasCheckpoint(context) && resumeLoop(context)) {
+            Log.i("******FIT", "Resuming location loop after boot");
+            return;
+        }
+
         NotificationChannel serviceChannel = new NotificationChannel(
                 CHANNEL_ID,
                 CHANNEL_NAME,
@@ -36,6 +47,23 @@ public class AutoStart extends BroadcastReceiver
     }
 
 
+    /**
+     * Starts the foreground service without any UI. It resumes the loop
+     * from its checkpoint.
+     * @return False if the system didn't allow the service to start
+     */
+    private static boolean resumeLoop(Context context) {
+        try {
+            context.startForegroundService(new Intent(context, LocationForegroundService.class));
+            return true;
+        }
+        catch (IllegalStateException | SecurityException e) {
+            Log.i("******FIT", "Could not resume location loop: " + e.getMessage());
+            return false;
+        }
+    }
+
+
     static Notification createNotification(Context context) {
         Intent notificationIntent = new Intent(context, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
@@ -0,0 +1,157 @@
+package com.fitsnitchapp;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.LocationLoopManager;
+import com.fitsnitchapp.location_loop.LocationRequester;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams the user's location to JS while a screen asks for it.
+ *
+ * Updates are coalesced: only the newest location is kept, and it is sent
+ * no faster than the configured max rate. With acks enabled, a new event is
+ * only sent once JS has acknowledged the previous one, so a JS thread that
+ * falls behind just sees fewer, fresher updates.
+ *
+ * All state is only touched on the main thread.
+ */
+public class LiveLocationStream {
+    private static final LiveLocationStream _instance = new LiveLocationStream();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private FusedLocationProviderClient client;
+    private volatile boolean isActive = false;
+    private boolean requireAck = false;
+    private boolean awaitingAck = false;
+    private boolean emitScheduled = false;
+    private long minEmitInterval = 1000;
+    private long lastEmitTime = 0;
+    private Fix pending;
+    /** The only runnable removed on stop, so calls posted after it still run */
+    private final Runnable emitTask = this::emit;
+
+    private long received = 0;
+    private long emitted = 0;
+    private long coalesced = 0;
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            Location location = result.getLastLocation();
+            if (location != null) publish(LocationLoopManager.toFix(location));
+        }
+    };
+
+    private LiveLocationStream() {}
+
+    public static LiveLocationStream getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Starts streaming, and subscribes to location updates at the max rate.
+     * @param maxRate Most events per second to send to JS
+     * @param requireAck Whether to wait for acknowledge() between events
+     */
+    @SuppressLint("MissingPermission")
+    public void start(Context context, double maxRate, boolean requireAck) {
+        handler.post(() -> {
+            this.minEmitInterval = maxRate > 0 ? (long) (1000 / maxRate) : 1000;
+            this.requireAck = requireAck;
+            this.awaitingAck = false;
+            if (isActive) return;
+            if (!LocationRequester.hasLocationPermission(context)) {
+                JsLog("Insufficient location permission for live location!");
+                return;
+            }
+            isActive = true;
+            client = LocationServices.getFusedLocationProviderClient(context.getApplicationContext());
+            long interval = Math.max(1000, minEmitInterval);
+            client.requestLocationUpdates(
+                    LocationRequest.create()
+                            .setPriority(PRIORITY_HIGH_ACCURACY)
+                            .setInterval(interval)
+                            .setFastestInterval(interval),
+                    callback,
+                    Looper.getMainLooper());
+        });
+    }
+
+    public void stop() {
+        handler.post(() -> {
+            if (!isActive) return;
+            isActive = false;
+            pending = null;
+            handler.removeCallbacks(emitTask);
+            emitScheduled = false;
+            if (client != null) client.removeLocationUpdates(callback);
+        });
+    }
+
+    /**
+     * Offers a new location to the stream. Safe to call from any thread,
+     * and cheap when the stream isn't active.
+     */
+    public void publish(Fix location) {
+        if (!isActive || location == null) return;
+        handler.post(() -> {
+            if (!isActive) return;
+            received++;
+            if (pending != null) coalesced++;
+            pending = location;
+            scheduleEmit();
+        });
+    }
+
+    public void acknowledge() {
+        handler.post(() -> {
+            awaitingAck = false;
+            scheduleEmit();
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("active", isActive);
+        stats.put("received", received);
+        stats.put("emitted", emitted);
+        stats.put("coalesced", coalesced);
+        return stats;
+    }
+
+
+    private void scheduleEmit() {
+        if (pending == null || emitScheduled || (requireAck && awaitingAck)) return;
+        long wait = Math.max(0, lastEmitTime + minEmitInterval - SystemClock.elapsedRealtime());
+        emitScheduled = true;
+        handler.postDelayed(emitTask, wait);
+    }
+
+    private void emit() {
+        emitScheduled = false;
+        if (!isActive || pending == null) return;
+        Fix location = pending;
+        pending = null;
+        lastEmitTime = SystemClock.elapsedRealtime();
+        awaitingAck = requireAck;
+        emitted++;
+        LocationModule.sendEventToJS(LocationForegroundService.JS_LOCATION_EVENT_NAME, LocationPayload.fromFix(location));
+    }
+}
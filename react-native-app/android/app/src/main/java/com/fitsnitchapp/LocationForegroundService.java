@@ -14,6 +14,10 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import com.fitsnitchapp.location_loop.LocationLoopManager;
+import com.fitsnitchapp.logging.FitLog;
+import com.fitsnitchapp.outbox.SnitchDeliveryWorker;
+import com.fitsnitchapp.outbox.SnitchOutbox;
+import com.fitsnitchapp.trace.TraceRecorder;
 
 public class LocationForegroundService extends Service {
     public static final String CHANNEL_ID_BG = "FITSNITCH_BG";
@@ -32,6 +36,12 @@ public class LocationForegroundService extends Service {
         Log.i("******FIT", "CREATED LOCATION FOREGROUND SERVICE");
         super.onCreate();
         mContext = getApplicationContext();
+        if (SettingsManager.getInstance(mContext).getItem(SettingsManager.LOG_TO_FILE)) {
+            FitLog.enableFile(mContext);
+        }
+        if (SettingsManager.getInstance(mContext).getItem(SettingsManager.TRACE_RECORDING)) {
+            TraceRecorder.getInstance().enable(mContext);
+        }
     }
 
     @Override
@@ -39,8 +49,13 @@ public class LocationForegroundService extends Service {
         createNotificationChannel();
         startForeground(NOTIFICATION_ID, createNotification());
         Log.i("******FIT", "STARTED LOCATION FOREGROUND SERVICE");
+        if (intent == null) {
+            // START_STICKY restart - the loop resumes from its checkpoint
+            Log.i("******FIT", "Restarted by the system");
+        }
 
         startLocationLoop();
+        flushSnitchOutbox();
 
         return START_STICKY;
     }
@@ -50,6 +65,13 @@ public class LocationForegroundService extends Service {
         LocationLoopManager.getInstance().startLoop(getApplicationContext());
     }
 
+    /** Picks up any snitches left undelivered by a previous run */
+    private void flushSnitchOutbox() {
+        if (!SnitchOutbox.getInstance(mContext).isEmpty()) {
+            SnitchDeliveryWorker.enqueue(mContext, false);
+        }
+    }
+
 
     @Nullable
     @Override
@@ -60,10 +82,18 @@ public class LocationForegroundService extends Service {
     @Override
     public void onDestroy() {
         LocationLoopManager.getInstance().stopLoop();
+        SettingsManager.getInstance(mContext).flush();
         stopSelf();
         super.onDestroy();
     }
 
+    /** The process may be killed next, so settings still held back are written now */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        SettingsManager.getInstance(mContext).flush();
+    }
+
     static void createNotificationChannel() {
         NotificationChannel serviceChannel = new NotificationChannel(
                 CHANNEL_ID_BG,
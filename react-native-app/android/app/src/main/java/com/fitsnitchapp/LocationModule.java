@@ -12,14 +12,28 @@ import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.fitsnitchapp.api.ApiService;
+import com.fitsnitchapp.location_loop.AdaptiveIntervalPolicy;
+import com.fitsnitchapp.location_loop.EnergyGovernor;
+import com.fitsnitchapp.location_loop.FixedIntervalPolicy;
+import com.fitsnitchapp.location_loop.IntervalPolicy;
 import com.fitsnitchapp.location_loop.LocationLoopManager;
+import com.fitsnitchapp.location_loop.LoopMetrics;
+import com.fitsnitchapp.location_loop.LoopProfile;
+import com.fitsnitchapp.location_loop.RestaurantCache;
+import com.fitsnitchapp.logging.FitLog;
+import com.fitsnitchapp.logging.LogLevel;
+import com.fitsnitchapp.logging.LogRecord;
+import com.fitsnitchapp.outbox.SnitchOutbox;
+import com.fitsnitchapp.trace.TraceRecorder;
 import com.google.gson.Gson;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -29,6 +43,7 @@ public class LocationModule extends ReactContextBaseJavaModule {
     private static final String JS_EVENT_LOG = "JS_EVENT_LOG";
     private static final String JS_EVENT_LOG_MESSAGE = "JS_EVENT_LOG_MESSAGE";
     private static final String JS_EVENT_LOG_EXTRAS = "JS_EVENT_LOG_EXTRAS";
+    private static final String JS_EVENT_LOG_BATCH = "JS_EVENT_LOG_BATCH";
     private static final String CONST_JS_LOCATION_EVENT_NAME = "JS_LOCATION_EVENT_NAME";
     private static final String CONST_JS_LOCATION_LAT = "JS_LOCATION_LAT_KEY";
     private static final String CONST_JS_LOCATION_LON = "JS_LOCATION_LON_KEY";
@@ -37,6 +52,7 @@ public class LocationModule extends ReactContextBaseJavaModule {
     private Gson gson;
 
     private static ReactApplicationContext rContext;
+    private int jsListenerCount = 0;
     private Intent mForegroundServiceIntent;
 
     LocationModule(@Nonnull ReactApplicationContext reactContext) {
@@ -55,6 +71,44 @@ public class LocationModule extends ReactContextBaseJavaModule {
     }
 
     // JS Interface Methods
+
+    // Called by NativeEventEmitter. Logs are only batched for JS while someone listens.
+    @ReactMethod
+    public void addListener(String eventName) {
+        jsListenerCount++;
+        FitLog.setJsSink(LocationModule::sendLogBatch);
+    }
+
+    @ReactMethod
+    public void removeListeners(Integer count) {
+        jsListenerCount = Math.max(0, jsListenerCount - count);
+        if (jsListenerCount == 0) {
+            FitLog.setJsSink(null);
+        }
+    }
+
+    @ReactMethod
+    public void setLogLevel(String level) {
+        try {
+            FitLog.setLevel(LogLevel.valueOf(level));
+        }
+        catch (IllegalArgumentException e) {
+            JsLog("Unknown log level: " + level);
+        }
+    }
+
+    @ReactMethod
+    public void setLogFileEnabled(boolean enabled) {
+        SettingsManager.getInstance(rContext).saveItem(SettingsManager.LOG_TO_FILE, enabled);
+        if (enabled) FitLog.enableFile(rContext);
+        else FitLog.disableFile();
+    }
+
+    @ReactMethod
+    public void getPersistedLog(Callback cb) {
+        cb.invoke(FitLog.readFile());
+    }
+
     @ReactMethod
     public void startBackgroundLocation() {
         Log.i("******FIT", "startBackgroundLocation");
@@ -86,9 +140,188 @@ public class LocationModule extends ReactContextBaseJavaModule {
          LocationLoopManager.getInstance().onUsedCheat();
     }
 
+    @ReactMethod
+    public void getRestaurantCacheStats(Callback cb) {
+        RestaurantCache cache = LocationLoopManager.getInstance().getRestaurantCache();
+        cb.invoke(cache == null ? null : gson.toJson(cache.getStats()));
+    }
+
+    @ReactMethod
+    public void getLocalResolverStats(Callback cb) {
+        cb.invoke(gson.toJson(LocationLoopManager.getInstance().getLocalResolver().getStats()));
+    }
+
+    @ReactMethod
+    public void clearRestaurantCache() {
+        RestaurantCache cache = LocationLoopManager.getInstance().getRestaurantCache();
+        if (cache != null) cache.clear();
+    }
+
+    @ReactMethod
+    public void setApiPrewarmEnabled(boolean enabled) {
+        ApiService.prewarmEnabled = enabled;
+    }
+
+    @ReactMethod
+    public void setWireFormatEnabled(boolean enabled) {
+        ApiService.wireFormatEnabled = enabled;
+    }
+
+    @ReactMethod
+    public void setIntervalPolicy(String name) {
+        LocationLoopManager manager = LocationLoopManager.getInstance();
+        if (name.equals("fixed")) manager.setIntervalPolicy(new FixedIntervalPolicy());
+        else if (name.equals("adaptive")) manager.setIntervalPolicy(new AdaptiveIntervalPolicy());
+        else JsLog("Unknown interval policy: " + name);
+    }
+
+    @ReactMethod
+    public void setAdaptiveIntervalBounds(double minIval, double maxIval) {
+        IntervalPolicy policy = LocationLoopManager.getInstance().getIntervalPolicy();
+        if (policy instanceof AdaptiveIntervalPolicy) {
+            ((AdaptiveIntervalPolicy) policy).setBounds((long) minIval, (long) maxIval);
+        }
+    }
+
+    /**
+     * Switches between the battery-saver, balanced and precise loop timings.
+     * Takes effect from the next tick and is kept across restarts.
+     */
+    @ReactMethod
+    public void setLoopProfile(String key) {
+        LoopProfile profile = LoopProfile.fromKey(key);
+        if (profile == null) {
+            JsLog("Unknown loop profile: " + key);
+            return;
+        }
+        LocationLoopManager.getInstance().setLoopProfile(rContext, profile);
+    }
+
+    /**
+     * Calls back with the chosen profile's key, or null if none was chosen.
+     */
+    @ReactMethod
+    public void getLoopProfile(Callback cb) {
+        LoopProfile profile = SettingsManager.getInstance(rContext).getItem(SettingsManager.LOOP_PROFILE);
+        cb.invoke(profile == null ? null : profile.key);
+    }
+
+    @ReactMethod
+    public void getIntervalDecisions(Callback cb) {
+        cb.invoke(gson.toJson(LocationLoopManager.getInstance().getIntervalPolicy().getRecentDecisions()));
+    }
+
+    @ReactMethod
+    public void setTickSchedulerMode(String mode) {
+        LocationLoopManager.getInstance().setTickSchedulerMode(rContext, mode);
+    }
+
+    @ReactMethod
+    public void getTickDriftStats(Callback cb) {
+        LocationLoopManager manager = LocationLoopManager.getInstance();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put(LocationLoopManager.SCHEDULER_WORK_MANAGER, manager.getWorkManagerScheduler().getDriftStats().snapshot());
+        stats.put(LocationLoopManager.SCHEDULER_SERVICE, manager.getServiceScheduler().getDriftStats().snapshot());
+        stats.put(LocationLoopManager.SCHEDULER_BATCHED, manager.getBatchedScheduler().getDriftStats().snapshot());
+        cb.invoke(gson.toJson(stats));
+    }
+
+    @ReactMethod
+    public void setDetectionMode(String mode) {
+        LocationLoopManager.getInstance().setDetectionMode(rContext, mode);
+    }
+
+    @ReactMethod
+    public void getGeofenceStats(Callback cb) {
+        cb.invoke(gson.toJson(LocationLoopManager.getInstance().getGeofenceDetector().getStats()));
+    }
+
+    @ReactMethod
+    public void startLiveLocation(double maxRate, boolean requireAck) {
+        LiveLocationStream.getInstance().start(rContext, maxRate, requireAck);
+    }
+
+    @ReactMethod
+    public void stopLiveLocation() {
+        LiveLocationStream.getInstance().stop();
+    }
+
+    @ReactMethod
+    public void ackLiveLocation() {
+        LiveLocationStream.getInstance().acknowledge();
+    }
+
+    @ReactMethod
+    public void getLiveLocationStats(Callback cb) {
+        cb.invoke(gson.toJson(LiveLocationStream.getInstance().getStats()));
+    }
+
+    @ReactMethod
+    public void getSnitchOutboxStats(Callback cb) {
+        cb.invoke(gson.toJson(SnitchOutbox.getInstance(rContext).getStats()));
+    }
+
+    @ReactMethod
+    public void setTraceRecordingEnabled(boolean enabled) {
+        SettingsManager.getInstance(rContext).saveItem(SettingsManager.TRACE_RECORDING, enabled);
+        if (enabled) TraceRecorder.getInstance().enable(rContext);
+        else TraceRecorder.getInstance().disable();
+    }
+
+    /**
+     * Writes the recorded trace to a file for sharing.
+     * Calls back with the file's path, or null if nothing was recorded.
+     */
+    @ReactMethod
+    public void exportTrace(Callback cb) {
+        cb.invoke(TraceRecorder.getInstance().export(rContext));
+    }
+
+    @ReactMethod
+    public void getTraceStats(Callback cb) {
+        cb.invoke(gson.toJson(TraceRecorder.getInstance().getStats()));
+    }
+
+    /**
+     * Calls back with the energy budget's use over the last hour, the
+     * battery state it is scaled by, and the level the loop runs at.
+     */
+    @ReactMethod
+    public void getEnergyBudget(Callback cb) {
+        EnergyGovernor governor = LocationLoopManager.getInstance().getEnergyGovernor();
+        cb.invoke(gson.toJson(governor.snapshot(System.currentTimeMillis())));
+    }
+
+    /**
+     * When disabled, every tick uses a high-accuracy fix instead of
+     * starting with a cheap one.
+     */
+    @ReactMethod
+    public void setTieredAccuracyEnabled(boolean enabled) {
+        LocationLoopManager.getInstance().getAccuracyTiers().setEnabled(enabled);
+    }
+
+    /**
+     * Calls back with how many fixes of each priority were requested, how
+     * accurate they were and how long they took, and how often a tick
+     * escalated to high accuracy.
+     */
+    @ReactMethod
+    public void getAccuracyTierStats(Callback cb) {
+        cb.invoke(gson.toJson(LocationLoopManager.getInstance().getAccuracyTiers().snapshot()));
+    }
+
+    /**
+     * @param reset Start aggregating from zero again, after the snapshot has been uploaded
+     */
+    @ReactMethod
+    public void getLoopMetrics(boolean reset, Callback cb) {
+        cb.invoke(gson.toJson(LoopMetrics.snapshot(reset)));
+    }
+
     @ReactMethod
     public void saveUserId(String id) {
-         new SettingsManager(rContext).saveItem(SettingsManager.USER_ID, id);
+         SettingsManager.getInstance(rContext).saveItem(SettingsManager.USER_ID, id);
     }
 
 
@@ -107,6 +340,7 @@ public class LocationModule extends ReactContextBaseJavaModule {
         constants.put(JS_EVENT_LOG, JS_EVENT_LOG);
         constants.put(JS_EVENT_LOG_MESSAGE, JS_EVENT_LOG_MESSAGE);
         constants.put(JS_EVENT_LOG_EXTRAS, JS_EVENT_LOG_EXTRAS);
+        constants.put(JS_EVENT_LOG_BATCH, JS_EVENT_LOG_BATCH);
         return constants;
     }
 
@@ -135,49 +369,62 @@ public class LocationModule extends ReactContextBaseJavaModule {
 
     private static WritableMap bundleToMap(Bundle bundle) {
         WritableMap map = Arguments.createMap();
-        Set<String> keys = bundle.keySet();
-        for (String key : keys) {
+        for (String key : bundle.keySet()) {
             Object val = bundle.get(key);
             if (val == null) {
                 map.putNull(key);
-                continue;
             }
-            String type = val.getClass().getSimpleName();
-            if (type.equals("String")) {
+            else if (val instanceof String) {
                 map.putString(key, (String) val);
             }
-            if (type.equals("Integer")) {
+            else if (val instanceof Integer) {
                 map.putInt(key, (Integer) val);
             }
-            if (type.equals("Double")) {
+            else if (val instanceof Double) {
                 map.putDouble(key, (Double) val);
             }
-            if (type.equals("Long")) {
-                map.putDouble(key, ((Long)val).doubleValue());
+            else if (val instanceof Long) {
+                map.putDouble(key, ((Long) val).doubleValue());
             }
-            if (type.equals("Boolean")) {
+            else if (val instanceof Boolean) {
                 map.putBoolean(key, (Boolean) val);
             }
-            if (type.equals("Bundle")) {
+            else if (val instanceof Bundle) {
                 map.putMap(key, bundleToMap((Bundle) val));
             }
         }
         return map;
     }
 
+    /**
+     * Logs at INFO level through FitLog. Kept for existing callers; prefer
+     * FitLog with format arguments on hot paths.
+     */
     public static void JsLog(String message, Bundle extras) {
-        Log.i("***FIT_LOC", message);
-        if (extras != null) {
-            Log.i("***FIT_LOC", new Gson().toJson(extras));
+        if (extras == null) {
+            FitLog.i(message);
+        }
+        else {
+            FitLog.i("%s %s", message, extras);
         }
-        Bundle bundle = new Bundle();
-        bundle.putLong("timestamp", System.currentTimeMillis());
-        bundle.putString("message", message);
-        bundle.putBundle("extras", extras);
-        sendEventToJS(JS_EVENT_LOG, bundle);
     }
 
     public static void JsLog(String message) {
         JsLog(message, null);
     }
+
+    private static void sendLogBatch(List<LogRecord> records) {
+        WritableArray entries = Arguments.createArray();
+        for (LogRecord record : records) {
+            WritableMap entry = Arguments.createMap();
+            entry.putDouble("timestamp", record.timestamp);
+            entry.putString("level", record.level.name());
+            entry.putString("message", record.getMessage());
+            entries.pushMap(entry);
+        }
+        WritableMap batch = Arguments.createMap();
+        batch.putArray("entries", entries);
+        batch.putDouble("dropped", FitLog.getDroppedCount());
+        sendEventToJS(JS_EVENT_LOG_BATCH, batch);
+    }
 }
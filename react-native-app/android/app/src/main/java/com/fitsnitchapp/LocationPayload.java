@@ -0,0 +1,26 @@
+package com.fitsnitchapp;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.fitsnitchapp.location_loop.Fix;
+
+/**
+ * Builds the JS payload for live location events, using the keys exposed
+ * to JS through LocationModule.getConstants.
+ */
+public class LocationPayload {
+    public static final String ACCURACY_KEY = "accuracy";
+    public static final String SPEED_KEY = "speed";
+
+    private LocationPayload() {}
+
+    public static WritableMap fromFix(Fix fix) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble(LocationForegroundService.JS_LOCATION_LAT_KEY, fix.lat);
+        map.putDouble(LocationForegroundService.JS_LOCATION_LON_KEY, fix.lon);
+        map.putDouble(LocationForegroundService.JS_LOCATION_TIME_KEY, fix.time);
+        if (fix.hasAccuracy()) map.putDouble(ACCURACY_KEY, fix.accuracy);
+        if (fix.hasSpeed()) map.putDouble(SPEED_KEY, fix.speed);
+        return map;
+    }
+}
@@ -2,47 +2,162 @@ package com.fitsnitchapp;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.Build;
 
-import androidx.annotation.RequiresApi;
+import com.fitsnitchapp.location_loop.LoopProfile;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typed settings backed by SharedPreferences.
+ *
+ * Every setting is read once into memory, so reads on hot paths never touch
+ * the preferences. Writes update memory right away and are flushed together
+ * shortly after, so a burst of changes results in a single commit.
+ * Settings that must not be lost to the process dying in that window,
+ * like the user's identity, are written through right away instead.
+ */
 public class SettingsManager {
+    private static final String PREFS_NAME = "FITSNITCHAPP_SETTINGS";
+    /** How long writes are held back so that they can be batched */
+    public static final long FLUSH_DELAY = 500;
+
+    private static SettingsManager _instance;
+
+    public static final SettingItem<String> USER_ID = new SettingItem<>("USER_ID", String.class, null, true);
+    public static final SettingItem<String> TICK_SCHEDULER = new SettingItem<>("TICK_SCHEDULER", String.class, null);
+    public static final SettingItem<String> DETECTION_MODE = new SettingItem<>("DETECTION_MODE", String.class, null);
+    public static final SettingItem<Boolean> LOG_TO_FILE = new SettingItem<>("LOG_TO_FILE", Boolean.class, false, true);
+    public static final SettingItem<Boolean> TRACE_RECORDING = new SettingItem<>("TRACE_RECORDING", Boolean.class, false, true);
+    /** Null until the user picks one, meaning the build's default timings */
+    public static final SettingItem<LoopProfile> LOOP_PROFILE = new SettingItem<>("LOOP_PROFILE", LoopProfile.class, null);
+
+    /** Marks a setting removed in pending, since the maps can't hold null */
+    private static final Object REMOVED = new Object();
+
     private final SharedPreferences settings;
+    private final Map<String, Object> cache;
+    private final Map<String, Object> pending = new HashMap<>();
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor();
+    private boolean flushScheduled = false;
 
-    public SettingsManager(Context ctx) {
-        settings = ctx.getSharedPreferences(PREFS_NAME, 0);
+    private SettingsManager(Context context) {
+        settings = context.getSharedPreferences(PREFS_NAME, 0);
+        cache = new HashMap<>(settings.getAll());
     }
 
-    private final String PREFS_NAME = "FITSNITCHAPP_SETTINGS";
+    public static synchronized SettingsManager getInstance(Context context) {
+        if (_instance == null) {
+            _instance = new SettingsManager(context.getApplicationContext());
+        }
+        return _instance;
+    }
 
-    public static SettingItem USER_ID = new SettingItem("USER_ID", String.class.getTypeName());
+    /**
+     * @param value Null removes the setting
+     */
+    public synchronized <T> void saveItem(SettingItem<T> setting, T value) {
+        if (value == null) cache.remove(setting.name);
+        else cache.put(setting.name, value);
+        pending.put(setting.name, value == null ? REMOVED : value);
+        if (setting.writeThrough) {
+            // Along with anything pending, which is no reason to wait any more
+            flush(true);
+        }
+        else if (!flushScheduled) {
+            flushScheduled = true;
+            flushExecutor.schedule(() -> flush(), FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
 
-    public void saveItem(SettingItem setting, Object value) {
-        SharedPreferences.Editor editor = settings.edit();
-        if (setting.type.equals(String.class.getTypeName()))
-            editor.putString(setting.name, (String) value);
-        // TODO support more types....
+    /**
+     * @return The saved value, or the setting's default if it was never
+     * saved or can't be read as its type
+     */
+    public synchronized <T> T getItem(SettingItem<T> setting) {
+        T value = setting.fromStored(cache.get(setting.name));
+        return value == null ? setting.defaultValue : value;
+    }
 
-        // Apply the edits!
-        editor.apply();
+    /**
+     * Writes every pending change in one edit.
+     */
+    public void flush() {
+        flush(false);
     }
 
+    /**
+     * @param sync Whether to commit to disk before returning, rather than
+     * in the background
+     */
+    private synchronized void flush(boolean sync) {
+        flushScheduled = false;
+        if (pending.isEmpty()) return;
+        SharedPreferences.Editor editor = settings.edit();
+        for (Map.Entry<String, Object> change : pending.entrySet()) {
+            put(editor, change.getKey(), change.getValue());
+        }
+        pending.clear();
+        // Still under the lock, so edits reach the preferences in the order they were drained
+        if (sync) editor.commit();
+        else editor.apply();
+    }
 
-    // Get from the SharedPreferences
-    public <T> T getItem(SettingItem setting) {
-        T value = null;
-        if (setting.type.equals(String.class.getTypeName())) value = (T) settings.getString(setting.name, null);
-        return value;
+    private static void put(SharedPreferences.Editor editor, String name, Object value) {
+        if (value == REMOVED) editor.remove(name);
+        else if (value instanceof Boolean) editor.putBoolean(name, (Boolean) value);
+        else if (value instanceof Long) editor.putLong(name, (Long) value);
+        // SharedPreferences has no double, and a float would lose precision
+        else if (value instanceof Double) editor.putLong(name, Double.doubleToLongBits((Double) value));
+        else if (value instanceof Enum) editor.putString(name, ((Enum<?>) value).name());
+        else editor.putString(name, String.valueOf(value));
     }
 
 
-    public static class SettingItem {
+    public static class SettingItem<T> {
         public final String name;
-        public final String type;
+        public final Class<T> type;
+        public final T defaultValue;
+        /** Whether saving commits right away instead of waiting out FLUSH_DELAY */
+        public final boolean writeThrough;
 
-        private SettingItem(String name, String type) {
+        private SettingItem(String name, Class<T> type, T defaultValue) {
+            this(name, type, defaultValue, false);
+        }
+
+        private SettingItem(String name, Class<T> type, T defaultValue, boolean writeThrough) {
             this.name = name;
             this.type = type;
+            this.defaultValue = defaultValue;
+            this.writeThrough = writeThrough;
+        }
+
+        /**
+         * Converts what the cache holds: either a value saved in this process,
+         * or what SharedPreferences loaded. Settings saved as strings by older
+         * versions are parsed.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        T fromStored(Object stored) {
+            if (stored == null || type.isInstance(stored)) return (T) stored;
+            try {
+                if (type == Double.class && stored instanceof Long) {
+                    return (T) Double.valueOf(Double.longBitsToDouble((Long) stored));
+                }
+                if (!(stored instanceof String)) return null;
+                String text = (String) stored;
+                if (type == Boolean.class) return (T) Boolean.valueOf(text);
+                if (type == Long.class) return (T) Long.valueOf(text);
+                if (type == Double.class) return (T) Double.valueOf(text);
+                if (type.isEnum()) return (T) Enum.valueOf((Class<? extends Enum>) type, text);
+            }
+            catch (IllegalArgumentException e) {
+                // Saved by a version with different values - use the default
+            }
+            return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package com.fitsnitchapp.api;
+
+import com.fitsnitchapp.codec.ApiTypeAdapters;
+import com.fitsnitchapp.codec.WireCodec;
+import com.fitsnitchapp.location_loop.LoopMetrics;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Converts API bodies to and from the compact wire format, falling back to
+ * JSON through the streaming type adapters.
+ *
+ * Every request says it accepts the wire format. Requests are only sent
+ * in it once the server has answered in it, so an older server only ever
+ * sees JSON.
+ */
+public class ApiConverter implements Converter {
+    private static final String JSON_MIME_TYPE = "application/json; charset=UTF-8";
+
+    private final Gson gson = ApiTypeAdapters.createGson();
+    private volatile boolean serverSpeaksWire = false;
+
+    public String acceptHeader() {
+        return ApiService.wireFormatEnabled
+                ? WireCodec.MIME_TYPE + ", application/json"
+                : "application/json";
+    }
+
+    @Override
+    public Object fromBody(TypedInput body, Type type) throws ConversionException {
+        if (body == null) return null;
+        byte[] bytes;
+        try (InputStream in = body.in()) {
+            bytes = readAll(in);
+        }
+        catch (IOException e) {
+            throw new ConversionException(e);
+        }
+        LoopMetrics.BYTES_RECEIVED.add(bytes.length);
+
+        long start = System.nanoTime();
+        try {
+            String mimeType = body.mimeType();
+            if (mimeType != null && mimeType.startsWith(WireCodec.MIME_TYPE)) {
+                serverSpeaksWire = true;
+                return WireCodec.decode(type, bytes);
+            }
+            return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), type);
+        }
+        catch (IllegalArgumentException | JsonParseException e) {
+            throw new ConversionException(e);
+        }
+        finally {
+            LoopMetrics.DECODE_TIME.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    @Override
+    public TypedOutput toBody(Object object) {
+        TypedByteArray body;
+        if (ApiService.wireFormatEnabled && serverSpeaksWire && WireCodec.supports(object.getClass())) {
+            body = new TypedByteArray(WireCodec.MIME_TYPE, WireCodec.encode(object));
+        }
+        else {
+            body = new TypedByteArray(JSON_MIME_TYPE, gson.toJson(object).getBytes(StandardCharsets.UTF_8));
+        }
+        LoopMetrics.BYTES_SENT.add(body.length());
+        return body;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
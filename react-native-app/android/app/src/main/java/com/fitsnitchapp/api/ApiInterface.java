@@ -16,9 +16,27 @@ public interface ApiInterface {
             Callback<CheckLocationResponse> callback
     );
 
+    @POST("/lambda/check-trajectory")
+    public void checkTrajectory(
+            @Body TrajectoryCheckRequest request,
+            Callback<TrajectoryCheckResponse> callback
+    );
+
+    @POST("/lambda/restaurants-in-area")
+    public void getRestaurantsInArea(
+            @Body RestaurantsInAreaRequest request,
+            Callback<RestaurantsInAreaResponse> callback
+    );
+
     @POST("/snitch/publishNewSnitch") // specify the sub url for our base url
     public void publishSnitch(
             @Body CreateSnitchRequest snitch,
             Callback<Object> callback
     );
+
+    /** Synchronous, for use from SnitchDeliveryWorker */
+    @POST("/snitch/publishSnitchBatch")
+    public SnitchBatchResponse publishSnitchBatch(
+            @Body SnitchBatchRequest batch
+    );
 }
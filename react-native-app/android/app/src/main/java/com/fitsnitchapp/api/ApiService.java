@@ -3,17 +3,91 @@ package com.fitsnitchapp.api;
 import android.util.Log;
 
 import com.fitsnitchapp.BuildConfig;
+import com.fitsnitchapp.location_loop.LoopMetrics;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import retrofit.RestAdapter;
 
+/**
+ * Process-wide API client. A single OkHttp client is shared by every call so
+ * that connections (and their TLS sessions) are kept alive and reused between
+ * loop ticks. OkHttp handles gzip transparently.
+ */
 public class ApiService {
+    /** Idle connections are kept a bit longer than the longest regular loop interval */
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT = 10;
+    private static final long READ_TIMEOUT = 15;
+    private static final long CALL_TIMEOUT = 20;
 
-    public static ApiInterface getClient() {
-        RestAdapter adapter = new RestAdapter.Builder()
+    public static volatile boolean prewarmEnabled = true;
+    /** Whether to offer the compact wire format to the server */
+    public static volatile boolean wireFormatEnabled = true;
+
+    /**
+     * Lazily built so that the Conscrypt provider installed in
+     * MainApplication is in place before the first TLS connection.
+     */
+    private static class Holder {
+        static final OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(2, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .writeTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .callTimeout(CALL_TIMEOUT, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        static final ApiConverter converter = new ApiConverter();
+
+        static final ApiInterface api = new RestAdapter.Builder()
                 .setEndpoint(BuildConfig.API_URL) //Setting the Root URL
-                .build(); //Finally building the adapter
+                .setClient(new Ok3Client(httpClient))
+                .setConverter(converter)
+                .setRequestInterceptor((request) -> request.addHeader("Accept", converter.acceptHeader()))
+                .build() //Finally building the adapter
+                .create(ApiInterface.class);
+    }
+
+    public static ApiInterface getClient() {
+        return Holder.api;
+    }
+
+    public static OkHttpClient getHttpClient() {
+        return Holder.httpClient;
+    }
+
+    /**
+     * Opens a connection to the API ahead of an upcoming request, so the
+     * request itself doesn't pay for DNS, TCP and TLS handshakes.
+     * Does nothing if an idle connection is already pooled.
+     */
+    public static void prewarm() {
+        if (!prewarmEnabled) return;
+        OkHttpClient client = getHttpClient();
+        if (client.connectionPool().idleConnectionCount() > 0) return;
+        LoopMetrics.recordRadioRequest(System.currentTimeMillis());
+
+        Request request = new Request.Builder()
+                .url(BuildConfig.API_URL)
+                .head()
+                .build();
+        client.newCall(request).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.i("***FIT_LOC", "API prewarm failed: " + e.getMessage());
+            }
 
-        ApiInterface api = adapter.create(ApiInterface.class);
-        return api;
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                response.close();
+            }
+        });
     }
 }
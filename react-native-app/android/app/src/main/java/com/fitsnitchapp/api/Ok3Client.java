@@ -0,0 +1,112 @@
+package com.fitsnitchapp.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Retrofit 1.x client backed by OkHttp 3, which React Native already ships.
+ * Retrofit's bundled OkClient only supports the old com.squareup.okhttp API.
+ */
+public class Ok3Client implements Client {
+    private final OkHttpClient client;
+
+    public Ok3Client(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        okhttp3.Response response = client.newCall(createRequest(request)).execute();
+        return parseResponse(response);
+    }
+
+    private static okhttp3.Request createRequest(Request request) {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+                .url(request.getUrl())
+                .method(request.getMethod(), createRequestBody(request.getBody()));
+        for (Header header : request.getHeaders()) {
+            builder.addHeader(header.getName(), header.getValue() != null ? header.getValue() : "");
+        }
+        return builder.build();
+    }
+
+    private static RequestBody createRequestBody(TypedOutput body) {
+        if (body == null) return null;
+        MediaType mediaType = MediaType.parse(body.mimeType());
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return body.length();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+
+    private static Response parseResponse(okhttp3.Response response) {
+        return new Response(
+                response.request().url().toString(),
+                response.code(),
+                response.message(),
+                createHeaders(response.headers()),
+                createResponseBody(response.body())
+        );
+    }
+
+    private static TypedInput createResponseBody(ResponseBody body) {
+        if (body == null) return null;
+        if (body.contentLength() == 0) {
+            body.close();
+            return null;
+        }
+        return new TypedInput() {
+            @Override
+            public String mimeType() {
+                MediaType mediaType = body.contentType();
+                return mediaType == null ? null : mediaType.toString();
+            }
+
+            @Override
+            public long length() {
+                return body.contentLength();
+            }
+
+            @Override
+            public InputStream in() {
+                // Retrofit closes this stream after reading, which releases the connection
+                return body.byteStream();
+            }
+        };
+    }
+
+    private static List<Header> createHeaders(Headers headers) {
+        List<Header> list = new ArrayList<>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            list.add(new Header(headers.name(i), headers.value(i)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,191 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.ApiService;
+import com.fitsnitchapp.api.CheckLocationRequest;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.api.TrajectoryPoint;
+import com.fitsnitchapp.logging.FitLog;
+import com.fitsnitchapp.trace.TraceFormat;
+import com.fitsnitchapp.trace.TraceRecorder;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+/**
+ * Answers restaurant checks on the device.
+ * Resolves locally when the restaurants around the location have been
+ * fetched, or came as candidates with an earlier check, then tries the
+ * restaurant cache, and only then the network.
+ */
+public class ApiRestaurantResolver implements RestaurantResolver {
+    private final LocalRestaurantResolver localResolver;
+    private RestaurantCache restaurantCache;
+
+    public ApiRestaurantResolver(LocalRestaurantResolver localResolver) {
+        this.localResolver = localResolver;
+    }
+
+    public void setRestaurantCache(RestaurantCache restaurantCache) {
+        this.restaurantCache = restaurantCache;
+    }
+
+    public RestaurantCache getRestaurantCache() {
+        return restaurantCache;
+    }
+
+    @Override
+    public double nearestRestaurantMeters(LatLonPair location) {
+        return localResolver.nearestRestaurantMeters(location);
+    }
+
+    /**
+     * Handles the API request for restaurants.
+     * Returns null for any error.
+     */
+    @Override
+    public void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb) {
+        long start = System.currentTimeMillis();
+        if (localResolver.covers(location)) {
+            Restaurant restaurant = localResolver.resolve(location);
+            FitLog.d("Local restaurant check: %s", restaurant == null ? "none" : restaurant.name);
+            trace(location, start, TraceFormat.SOURCE_LOCAL, restaurant);
+            cb.accept(restaurant);
+            return;
+        }
+        if (restaurantCache != null) {
+            RestaurantCache.Entry cached = restaurantCache.get(location);
+            if (cached != null) {
+                FitLog.d("Cached restaurant check: %s", cached.restaurant == null ? "none" : cached.restaurant.name);
+                trace(location, start, TraceFormat.SOURCE_CACHE, cached.restaurant);
+                cb.accept(cached.restaurant);
+                return;
+            }
+        }
+        localResolver.refreshArea(location);
+        ApiService.getClient().checkLocation(new CheckLocationRequest(location), new Callback<CheckLocationResponse>() {
+            @Override
+            public void success(CheckLocationResponse responseData, Response response) {
+                LoopMetrics.recordApiCall(LoopMetrics.CHECK_RTT, start, false);
+                Restaurant restaurant = responseData.isRestaurant ? responseData.restaurant : null;
+                localResolver.useCandidates(responseData.candidates);
+                if (restaurantCache != null) {
+                    restaurantCache.put(location, restaurant);
+                }
+                if (restaurant != null) {
+                    JsLog("Is at restaurant: " + restaurant.name);
+                }
+                else {
+                    JsLog("Found no restaurant");
+                }
+                trace(location, start, TraceFormat.SOURCE_NETWORK, restaurant);
+                cb.accept(restaurant);
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                LoopMetrics.recordApiCall(LoopMetrics.CHECK_RTT, start, true);
+                JsLog("RetroFit error:" + error.getMessage());
+                trace(location, start, TraceFormat.SOURCE_ERROR, null);
+                cb.accept(null);
+            }
+        });
+    }
+
+    /**
+     * Checks the whole trajectory locally if the fetched area covers it,
+     * from the cache if every point is cached, and otherwise in a single
+     * request. A network answer fills the cache for every point, and its
+     * candidates let the next batches nearby be checked locally.
+     */
+    @Override
+    public void checkTrajectory(TrajectoryCheckRequest request, Consumer<TrajectoryCheckResponse> cb) {
+        long start = System.currentTimeMillis();
+        LatLonPair last = request.points.get(request.points.size() - 1).location;
+        if (coversAll(request)) {
+            TrajectoryCheckResponse verdict = TrajectoryRules.attribute(request, localResolver::resolve);
+            FitLog.d("Local trajectory check: %s", describe(verdict));
+            trace(last, start, TraceFormat.SOURCE_LOCAL, verdict.dwellRestaurant());
+            cb.accept(verdict);
+            return;
+        }
+        TrajectoryCheckResponse cached = fromCache(request);
+        if (cached != null) {
+            FitLog.d("Cached trajectory check: %s", describe(cached));
+            trace(last, start, TraceFormat.SOURCE_CACHE, cached.dwellRestaurant());
+            cb.accept(cached);
+            return;
+        }
+        localResolver.refreshArea(last);
+        LoopMetrics.TRAJECTORY_POINTS.add(request.points.size());
+        ApiService.getClient().checkTrajectory(request, new Callback<TrajectoryCheckResponse>() {
+            @Override
+            public void success(TrajectoryCheckResponse verdict, Response response) {
+                LoopMetrics.recordApiCall(LoopMetrics.TRAJECTORY_RTT, start, false);
+                localResolver.useCandidates(verdict.candidates);
+                if (restaurantCache != null) {
+                    for (int i = 0; i < verdict.attribution.length && i < request.points.size(); i++) {
+                        int index = verdict.attribution[i];
+                        if (index == TrajectoryRules.SKIPPED) continue;
+                        restaurantCache.put(request.points.get(i).location,
+                                index == TrajectoryRules.NONE ? null : verdict.restaurants.get(index));
+                    }
+                }
+                JsLog("Trajectory check: " + describe(verdict));
+                trace(last, start, TraceFormat.SOURCE_NETWORK, verdict.dwellRestaurant());
+                cb.accept(verdict);
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                LoopMetrics.recordApiCall(LoopMetrics.TRAJECTORY_RTT, start, true);
+                JsLog("RetroFit error:" + error.getMessage());
+                trace(last, start, TraceFormat.SOURCE_ERROR, null);
+                cb.accept(TrajectoryRules.fromLastPoint(request, null));
+            }
+        });
+    }
+
+    private boolean coversAll(TrajectoryCheckRequest request) {
+        for (TrajectoryPoint point : request.points) {
+            if (TrajectoryRules.isReliable(point) && !localResolver.covers(point.location)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The answer from cached cells, or null unless every reliable point is cached
+     */
+    private TrajectoryCheckResponse fromCache(TrajectoryCheckRequest request) {
+        if (restaurantCache == null) return null;
+        Map<LatLonPair, Restaurant> cached = new IdentityHashMap<>();
+        for (TrajectoryPoint point : request.points) {
+            if (!TrajectoryRules.isReliable(point)) continue;
+            RestaurantCache.Entry entry = restaurantCache.get(point.location);
+            if (entry == null) return null;
+            cached.put(point.location, entry.restaurant);
+        }
+        return TrajectoryRules.attribute(request, cached::get);
+    }
+
+    private static String describe(TrajectoryCheckResponse verdict) {
+        Restaurant restaurant = verdict.dwellRestaurant();
+        if (restaurant == null) return "no restaurant";
+        return restaurant.name + " for " + verdict.dwell.points + " points";
+    }
+
+    private static void trace(LatLonPair location, long start, int source, Restaurant restaurant) {
+        TraceRecorder.getInstance().check(location, System.currentTimeMillis() - start, source,
+                restaurant == null ? null : restaurant.name);
+    }
+}
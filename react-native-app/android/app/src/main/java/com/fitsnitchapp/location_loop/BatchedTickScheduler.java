@@ -0,0 +1,134 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives ticks from a single subscription to batched location updates
+ * instead of cold-starting a fresh fix every tick.
+ *
+ * Fixes are collected by the OS every (delay / FIXES_PER_BATCH) and handed
+ * over together once the tick's delay has passed, so each wake-up gives
+ * the loop several fixes. Deliveries can come sooner than asked, when the
+ * device doesn't batch or another app wants locations, so fixes are kept
+ * until the first delivery after the tick is due, including those that
+ * arrive while a tick is still being handled. The subscription is sized
+ * by the delay rounded down to a power of two, so the small changes the
+ * interval policy makes between ticks don't resubscribe.
+ *
+ * The subscription's priority follows what the energy budget allows. Each
+ * batch counts as one fix against the budget: the subscription keeps the
+ * GPS warm, so most of the cost is in waking up to deliver it.
+ */
+public class BatchedTickScheduler implements TickScheduler {
+    public static final int FIXES_PER_BATCH = 6;
+    public static final long MIN_FIX_INTERVAL = 5000; // 5 seconds
+    /** Cap on buffered fixes, in case ticks stop being requested */
+    private static final int MAX_PENDING_FIXES = 120;
+
+    private final DriftStats driftStats = new DriftStats();
+    private final List<Location> pendingFixes = new ArrayList<>();
+    private FusedLocationProviderClient client;
+    private long subscribedDelay = -1;
+    private FixPriority subscribedPriority;
+    private long scheduledAt = 0;
+    private boolean awaitingTick = false;
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            onBatch(result.getLocations());
+        }
+    };
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public synchronized void schedule(Context context, long delay, String stateName) {
+        scheduledAt = System.currentTimeMillis() + delay;
+        awaitingTick = true;
+        FixPriority priority = LocationLoopManager.getInstance().getFixPriority();
+        long bucket = bucket(delay);
+        if (bucket == subscribedDelay && priority == subscribedPriority) return;
+
+        if (!LocationRequester.hasLocationPermission(context)) {
+            JsLog("Insufficient location permission!");
+            return;
+        }
+        if (client == null) {
+            client = LocationServices.getFusedLocationProviderClient(context.getApplicationContext());
+        }
+        else {
+            client.removeLocationUpdates(callback);
+        }
+        long fixInterval = Math.max(MIN_FIX_INTERVAL, bucket / FIXES_PER_BATCH);
+        LocationRequest request = LocationRequest.create()
+                .setPriority(LocationRequester.toProviderPriority(priority))
+                .setInterval(fixInterval)
+                .setFastestInterval(fixInterval / 2)
+                .setMaxWaitTime(bucket);
+        JsLog("Subscribing to batched " + priority + " locations every " + fixInterval + "ms, delivered every " + bucket + "ms");
+        client.requestLocationUpdates(request, callback, Looper.getMainLooper());
+        subscribedDelay = bucket;
+        subscribedPriority = priority;
+    }
+
+    @Override
+    public synchronized void cancel(Context context) {
+        awaitingTick = false;
+        pendingFixes.clear();
+        if (client != null) {
+            client.removeLocationUpdates(callback);
+        }
+        subscribedDelay = -1;
+    }
+
+    @Override
+    public DriftStats getDriftStats() {
+        return driftStats;
+    }
+
+    /**
+     * @return The delay rounded down to a power of two times MIN_FIX_INTERVAL,
+     * so deliveries still come at least as often as ticks are due
+     */
+    static long bucket(long delay) {
+        long bucket = MIN_FIX_INTERVAL;
+        while (bucket * 2 <= delay) bucket *= 2;
+        return bucket;
+    }
+
+    private void onBatch(List<Location> locations) {
+        List<Location> batch;
+        synchronized (this) {
+            pendingFixes.addAll(locations);
+            while (pendingFixes.size() > MAX_PENDING_FIXES) {
+                pendingFixes.remove(0);
+            }
+            long now = System.currentTimeMillis();
+            if (!awaitingTick || now < scheduledAt) return;
+            awaitingTick = false;
+            LocationLoopManager.getInstance().getEnergyGovernor().recordFix(now, subscribedPriority);
+            driftStats.record(scheduledAt, now);
+            LoopMetrics.recordTickStart(scheduledAt, now);
+            batch = new ArrayList<>(pendingFixes);
+            pendingFixes.clear();
+        }
+        if (!LocationLoopManager.getInstance().isDoingLoop) {
+            JsLog("Loop was stopped - skipping batch");
+            return;
+        }
+        LocationLoopManager.getInstance().handleNewLocations(batch);
+    }
+}
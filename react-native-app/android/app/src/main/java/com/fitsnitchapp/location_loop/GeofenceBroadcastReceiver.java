@@ -0,0 +1,31 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+/**
+ * Receives geofence transitions registered by GeofenceDetector.
+ */
+public class GeofenceBroadcastReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        GeofencingEvent event = GeofencingEvent.fromIntent(intent);
+        if (event == null || event.hasError()) {
+            JsLog("Geofence error: " + (event == null ? "no event" : event.getErrorCode()));
+            return;
+        }
+        int transition = event.getGeofenceTransition();
+        if (transition == Geofence.GEOFENCE_TRANSITION_ENTER
+                || transition == Geofence.GEOFENCE_TRANSITION_DWELL
+                || transition == Geofence.GEOFENCE_TRANSITION_EXIT) {
+            JsLog("Geofence transition " + transition + " - waking location loop");
+            LocationLoopManager.getInstance().getGeofenceDetector().wake(context);
+        }
+    }
+}
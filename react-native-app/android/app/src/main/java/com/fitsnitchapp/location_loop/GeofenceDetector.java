@@ -0,0 +1,185 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.annotation.SuppressLint;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.RestaurantDetails;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets the loop sleep between restaurants. Instead of polling, OS geofences
+ * are registered around the indexed restaurants near the user, plus one
+ * larger "coverage" fence around the user. The loop is woken when a
+ * restaurant fence is entered or dwelled in, or when the user leaves the
+ * coverage fence and the fences need to be moved.
+ */
+public class GeofenceDetector {
+    public static final String COVERAGE_FENCE_ID = "FIT_COVERAGE";
+    private static final String RESTAURANT_FENCE_PREFIX = "FIT_R_";
+    /** The OS allows 100 fences per app, one is used for coverage */
+    public static final int MAX_RESTAURANT_FENCES = 90;
+    /** Smallest radius the OS reliably detects */
+    public static final float RESTAURANT_FENCE_RADIUS = 100;
+    public static final float COVERAGE_FENCE_RADIUS = 800;
+    public static final int DWELL_DELAY = 60000; // 1 minute
+    /** Polling fallback in case no fence ever fires */
+    public static final long MAX_DORMANT_TIME = 30 * 60000; // 30 minutes
+
+    private GeofencingClient client;
+    private PendingIntent pendingIntent;
+    private boolean isDormant = false;
+    private long registrations = 0;
+    private long wakes = 0;
+    private long fallbacks = 0;
+
+    public boolean isDormant() {
+        return isDormant;
+    }
+
+    /**
+     * Registers fences around the restaurants near this location and puts
+     * the loop to sleep until one fires. Not while the user may already be
+     * inside one of them, since entering it would never fire.
+     * @return false if fences can't be used here, in which case the caller should keep polling
+     */
+    @SuppressLint("MissingPermission")
+    public synchronized boolean sleepUntilGeofence(Context context, Fix location, LocalRestaurantResolver resolver) {
+        LatLonPair center = new LatLonPair(location.lat, location.lon);
+        RestaurantIndex index = resolver.getIndex();
+        double coverageDegrees = COVERAGE_FENCE_RADIUS / GeoMath.METERS_PER_DEGREE_LAT;
+        if (index == null || !resolver.covers(center) || !index.covers(center, coverageDegrees)) {
+            return false;
+        }
+        if (!LocationRequester.hasLocationPermission(context)) {
+            return false;
+        }
+
+        List<RestaurantDetails> places = nearest(index.query(center, coverageDegrees), center);
+        if (isInsideFence(location, places)) {
+            // A fence that starts out around the user never sees them enter it
+            return false;
+        }
+
+        List<Geofence> fences = new ArrayList<>();
+        fences.add(new Geofence.Builder()
+                .setRequestId(COVERAGE_FENCE_ID)
+                .setCircularRegion(center.lat, center.lon, COVERAGE_FENCE_RADIUS)
+                .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_EXIT)
+                .build());
+        for (RestaurantDetails place : places) {
+            LatLonPair pin = RestaurantRules.pinOf(place);
+            fences.add(new Geofence.Builder()
+                    .setRequestId(RESTAURANT_FENCE_PREFIX + fences.size())
+                    .setCircularRegion(pin.lat, pin.lon, RESTAURANT_FENCE_RADIUS)
+                    .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                    .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_DWELL)
+                    .setLoiteringDelay(DWELL_DELAY)
+                    .build());
+        }
+
+        GeofencingRequest request = new GeofencingRequest.Builder()
+                // Not ENTER: that fires straight away when the fix missed a fence the
+                // user is in, and the tick it wakes would just sleep again. DWELL
+                // wakes the loop a minute in instead of at the polling fallback.
+                .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_DWELL)
+                .addGeofences(fences)
+                .build();
+        getClient(context).removeGeofences(getPendingIntent(context));
+        getClient(context).addGeofences(request, getPendingIntent(context))
+                .addOnFailureListener((e) -> {
+                    JsLog("Could not register geofences: " + e.getMessage());
+                    fallbacks++;
+                    wake(context);
+                });
+        registrations++;
+        isDormant = true;
+        JsLog("Sleeping until geofence: " + (fences.size() - 1) + " restaurants");
+        return true;
+    }
+
+    /**
+     * Ends a dormant period and runs a tick right away.
+     */
+    public void wake(Context context) {
+        synchronized (this) {
+            if (!isDormant) return;
+            isDormant = false;
+            wakes++;
+        }
+        getClient(context).removeGeofences(getPendingIntent(context));
+        LocationLoopManager.getInstance().wakeFromDormant(context);
+    }
+
+    public synchronized void stop(Context context) {
+        isDormant = false;
+        if (client != null) client.removeGeofences(getPendingIntent(context));
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dormant", isDormant);
+        stats.put("registrations", registrations);
+        stats.put("wakes", wakes);
+        stats.put("fallbacks", fallbacks);
+        return stats;
+    }
+
+
+    /**
+     * Whether the fix could be inside one of the restaurants' fences, allowing
+     * for its accuracy up to the fence radius.
+     */
+    private static boolean isInsideFence(Fix location, List<RestaurantDetails> places) {
+        LatLonPair center = new LatLonPair(location.lat, location.lon);
+        double margin = location.hasAccuracy() ? Math.min(location.accuracy, RESTAURANT_FENCE_RADIUS) : RESTAURANT_FENCE_RADIUS;
+        for (RestaurantDetails place : places) {
+            if (GeoMath.metersBetween(center, RestaurantRules.pinOf(place)) <= RESTAURANT_FENCE_RADIUS + margin) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<RestaurantDetails> nearest(List<RestaurantDetails> places, LatLonPair center) {
+        List<RestaurantDetails> withPins = new ArrayList<>();
+        for (RestaurantDetails place : places) {
+            if (RestaurantRules.pinOf(place) != null) withPins.add(place);
+        }
+        if (withPins.size() <= MAX_RESTAURANT_FENCES) return withPins;
+        Collections.sort(withPins, (a, b) -> Double.compare(
+                GeoMath.metersBetween(center, RestaurantRules.pinOf(a)),
+                GeoMath.metersBetween(center, RestaurantRules.pinOf(b))));
+        return withPins.subList(0, MAX_RESTAURANT_FENCES);
+    }
+
+    private GeofencingClient getClient(Context context) {
+        if (client == null) {
+            client = LocationServices.getGeofencingClient(context.getApplicationContext());
+        }
+        return client;
+    }
+
+    private PendingIntent getPendingIntent(Context context) {
+        if (pendingIntent == null) {
+            Intent intent = new Intent(context.getApplicationContext(), GeofenceBroadcastReceiver.class);
+            // Geofence events are added to the intent by the OS, so it must be mutable
+            pendingIntent = PendingIntent.getBroadcast(context.getApplicationContext(), 0, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+        }
+        return pendingIntent;
+    }
+}
@@ -0,0 +1,111 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Runs ticks on a dedicated thread inside the foreground service instead
+ * of going through WorkManager. A partial wake lock is held only from the
+ * start of a tick until the loop has scheduled the next one.
+ *
+ * Each tick is woken by an exact elapsed-realtime alarm that is allowed
+ * while idle, so ticks keep coming with the screen off and in Doze. Doze
+ * still spaces such alarms several minutes apart, and without the exact
+ * alarm permission the alarm may come late. Drift stats make that visible.
+ */
+public class HandlerTickScheduler implements TickScheduler {
+    private static final String WAKE_LOCK_TAG = "FitSnitch:LocationTick";
+    /** Upper bound on how long one tick may keep the CPU awake */
+    private static final long TICK_WAKE_LOCK_TIMEOUT = 30000;
+
+    private final DriftStats driftStats = new DriftStats();
+    private HandlerThread thread;
+    private Handler handler;
+    private PowerManager.WakeLock wakeLock;
+    private AlarmManager alarmManager;
+    private PendingIntent alarmIntent;
+    /** When the pending tick is due, in wall clock time */
+    private long scheduledAt;
+
+    @Override
+    public synchronized void schedule(Context context, long delay, String stateName) {
+        ensureStarted(context);
+        scheduledAt = System.currentTimeMillis() + delay;
+        handler.removeCallbacksAndMessages(null);
+        long triggerAt = SystemClock.elapsedRealtime() + delay;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, alarmIntent);
+        }
+        else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, alarmIntent);
+        }
+    }
+
+    @Override
+    public synchronized void cancel(Context context) {
+        if (handler != null) {
+            alarmManager.cancel(alarmIntent);
+            handler.removeCallbacksAndMessages(null);
+        }
+    }
+
+    @Override
+    public DriftStats getDriftStats() {
+        return driftStats;
+    }
+
+    /**
+     * Called by TickAlarmReceiver when the alarm goes off. The alarm only
+     * keeps the device awake until this returns, so the wake lock is taken
+     * here and the tick itself runs on the scheduler's thread.
+     */
+    synchronized void onAlarm(Context context) {
+        ensureStarted(context);
+        wakeLock.acquire(TICK_WAKE_LOCK_TIMEOUT);
+        long due = scheduledAt;
+        handler.post(() -> runTick(due));
+    }
+
+    private void ensureStarted(Context context) {
+        if (thread != null) return;
+        thread = new HandlerThread("FitSnitchTicks", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        Context app = context.getApplicationContext();
+        PowerManager powerManager = (PowerManager) app.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        wakeLock.setReferenceCounted(false);
+        alarmManager = (AlarmManager) app.getSystemService(Context.ALARM_SERVICE);
+        alarmIntent = PendingIntent.getBroadcast(app, 0, new Intent(app, TickAlarmReceiver.class),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void runTick(long scheduledAt) {
+        long now = System.currentTimeMillis();
+        if (scheduledAt > 0) {
+            driftStats.record(scheduledAt, now);
+            LoopMetrics.recordTickStart(scheduledAt, now);
+        }
+        if (!LocationLoopManager.getInstance().isDoingLoop) {
+            JsLog("Loop was stopped - skipping tick");
+            releaseWakeLock();
+            return;
+        }
+        // The loop picks the fix's accuracy, and is done once it has decided on the next tick
+        LocationLoopManager.getInstance().runTick(this::releaseWakeLock);
+    }
+
+    private void releaseWakeLock() {
+        if (wakeLock.isHeld()) wakeLock.release();
+    }
+}
@@ -0,0 +1,152 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.ApiService;
+import com.fitsnitchapp.api.RestaurantsInAreaRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.logging.FitLog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+/**
+ * Resolves locations to restaurants on the device, using restaurant pins
+ * and boundaries fetched in bulk for the area around the user, or else the
+ * candidates sent with the latest check-location answer.
+ * The resolution itself follows RestaurantRules.
+ */
+public class LocalRestaurantResolver {
+    public static final double SEARCH_RADIUS = RestaurantRules.SEARCH_RADIUS;
+    /** About 1km around the user */
+    public static final double AREA_RADIUS = 0.01;
+    public static final long AREA_TTL = 24 * 60 * 60000; // 1 day
+    /** Wait after a failed area fetch, doubled for each failure in a row */
+    public static final long MIN_REFRESH_BACKOFF = 60000; // 1 minute
+    public static final long MAX_REFRESH_BACKOFF = 60 * 60000; // 1 hour
+
+    private volatile RestaurantIndex index;
+    /** The much smaller area around the last location checked with the server */
+    private volatile RestaurantIndex candidates;
+    private boolean isFetching = false;
+    /** Area fetches that failed in a row, and when the next may be tried */
+    private int refreshFailures = 0;
+    private long nextRefreshAt = 0;
+    private long localResolutions = 0;
+    private long candidateResolutions = 0;
+    private long areaFetches = 0;
+
+    /**
+     * @return Whether this location can be answered locally right now.
+     */
+    public boolean covers(LatLonPair location) {
+        return isUsable(index, location) || isUsable(candidates, location);
+    }
+
+    public RestaurantIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Finds the restaurant the location is inside of or closest to.
+     * Only valid if {@link #covers(LatLonPair)} is true.
+     */
+    public Restaurant resolve(LatLonPair location) {
+        localResolutions++;
+        RestaurantIndex current = index;
+        if (!isUsable(current, location)) {
+            current = candidates;
+            candidateResolutions++;
+        }
+        return RestaurantRules.resolve(current.query(location, SEARCH_RADIUS), location);
+    }
+
+    /**
+     * Keeps the candidates of a check-location answer, replacing the ones
+     * before, so later checks around that location can be answered locally.
+     * Answers from servers that don't send candidates are ignored.
+     */
+    public void useCandidates(RestaurantsInAreaResponse response) {
+        if (response == null || response.center == null || response.restaurants == null) return;
+        candidates = new RestaurantIndex(response.center, response.radius, response.restaurants,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * @return Meters to the closest restaurant pin, NaN if the area isn't indexed,
+     * or the search radius if there is nothing within it.
+     */
+    public double nearestRestaurantMeters(LatLonPair location) {
+        return RestaurantRules.nearestRestaurantMeters(index, location);
+    }
+
+    /**
+     * Requests the restaurants around this location and swaps in a new index
+     * once they arrive. Only one request is in flight at a time, and after a
+     * failure, such as being offline or a server without the route, the
+     * next waits out an exponential backoff.
+     */
+    public void refreshArea(LatLonPair location) {
+        synchronized (this) {
+            if (isFetching || System.currentTimeMillis() < nextRefreshAt) return;
+            isFetching = true;
+        }
+        FitLog.d("Fetching restaurants for area around %f, %f", location.lat, location.lon);
+        LoopMetrics.recordRadioRequest(System.currentTimeMillis());
+        ApiService.getClient().getRestaurantsInArea(new RestaurantsInAreaRequest(location, AREA_RADIUS), new Callback<RestaurantsInAreaResponse>() {
+            @Override
+            public void success(RestaurantsInAreaResponse responseData, Response response) {
+                if (responseData.restaurants == null) {
+                    FitLog.w("Area restaurants response had no restaurants");
+                    fetchDone(false);
+                    return;
+                }
+                LatLonPair center = responseData.center != null ? responseData.center : location;
+                index = new RestaurantIndex(center, responseData.radius, responseData.restaurants, System.currentTimeMillis());
+                areaFetches++;
+                FitLog.i("Indexed %d restaurants for local checks", index.size());
+                fetchDone(true);
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                FitLog.w("Could not fetch area restaurants: %s", error.getMessage());
+                fetchDone(false);
+            }
+        });
+    }
+
+    private synchronized void fetchDone(boolean succeeded) {
+        isFetching = false;
+        if (succeeded) {
+            refreshFailures = 0;
+            nextRefreshAt = 0;
+            return;
+        }
+        long backoff = MIN_REFRESH_BACKOFF << Math.min(refreshFailures, 6);
+        refreshFailures++;
+        nextRefreshAt = System.currentTimeMillis() + Math.min(backoff, MAX_REFRESH_BACKOFF);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        RestaurantIndex current = index;
+        stats.put("indexedRestaurants", current == null ? 0 : current.size());
+        stats.put("localResolutions", localResolutions);
+        RestaurantIndex currentCandidates = candidates;
+        stats.put("candidateRestaurants", currentCandidates == null ? 0 : currentCandidates.size());
+        stats.put("candidateResolutions", candidateResolutions);
+        stats.put("areaFetches", areaFetches);
+        return stats;
+    }
+
+    private static boolean isUsable(RestaurantIndex index, LatLonPair location) {
+        return index != null
+                && System.currentTimeMillis() - index.fetchedAt < AREA_TTL
+                && index.covers(location, SEARCH_RADIUS);
+    }
+}
@@ -10,305 +10,469 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.location.Location;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 
 import androidx.core.app.NotificationCompat;
-import androidx.core.util.Consumer;
-import androidx.work.OneTimeWorkRequest;
-import androidx.work.WorkManager;
-import androidx.work.WorkRequest;
 
 import com.fitsnitchapp.BuildConfig;
-import com.fitsnitchapp.CheckLocationResponse;
 import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.LiveLocationStream;
 import com.fitsnitchapp.LocationForegroundService;
 import com.fitsnitchapp.R;
-import com.fitsnitchapp.Restaurant;
 import com.fitsnitchapp.SettingsManager;
 import com.fitsnitchapp.SnitchActivity;
 import com.fitsnitchapp.SnitchTrigger;
 import com.fitsnitchapp.api.ApiService;
-import com.fitsnitchapp.api.CheckLocationRequest;
 import com.fitsnitchapp.api.CreateSnitchRequest;
-
-import java.util.concurrent.TimeUnit;
-
-import retrofit.Callback;
-import retrofit.RetrofitError;
-import retrofit.client.Response;
-
+import com.fitsnitchapp.logging.FitLog;
+import com.fitsnitchapp.logging.LogLevel;
+import com.fitsnitchapp.outbox.SnitchDeliveryWorker;
+import com.fitsnitchapp.outbox.SnitchOutbox;
+import com.fitsnitchapp.trace.TraceRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs the LocationLoop on the device. Provides it with Android backed
+ * scheduling, fixes and restaurant lookups, and turns its decisions into
+ * notifications, snitch deliveries and geofences.
+ */
 public class LocationLoopManager {
     private static final LocationLoopManager _instance = new LocationLoopManager();
     private static final String CHANNEL_ID = "FITSNITCH_SNITCHES";
     private static final String CHANNEL_NAME = "Active Snitch Warnings";
 
-    public static final String WORKER_TAG = "FIT_LOC_WORKER";
+    public static final String SCHEDULER_WORK_MANAGER = "workmanager";
+    public static final String SCHEDULER_SERVICE = "service";
+    public static final String SCHEDULER_BATCHED = "batched";
+    public static final String DETECTION_POLLING = "polling";
+    public static final String DETECTION_GEOFENCE = "geofence";
 
-    public boolean isDoingLoop = false;
-    private LoopState loopState;
+    public volatile boolean isDoingLoop = false;
     private Notification warningNotification;
     private Notification snitchedNotification;
     private SettingsManager settingsManager;
     private NotificationChannel mNotificationChannel;
     private NotificationManager notificationManager;
+    private final Handler prewarmHandler = new Handler(Looper.getMainLooper());
+    private static final LocalRestaurantResolver localResolver = new LocalRestaurantResolver();
+    private static final ApiRestaurantResolver restaurantResolver = new ApiRestaurantResolver(localResolver);
     private final int NOTIF_ID_WARNING = 0;
     private final int NOTIF_ID_SNITCHED = 1;
 
+    /** How long before a tick to open the API connection */
+    public static final long PREWARM_LEAD = 5000;
+
+    private final WorkManagerTickScheduler workManagerScheduler = new WorkManagerTickScheduler();
+    private final HandlerTickScheduler serviceScheduler = new HandlerTickScheduler();
+    private final BatchedTickScheduler batchedScheduler = new BatchedTickScheduler();
+    private volatile TickScheduler tickScheduler = workManagerScheduler;
+    private final GeofenceDetector geofenceDetector = new GeofenceDetector();
+    private volatile String detectionMode = DETECTION_POLLING;
+    private volatile LoopCheckpointStore checkpointStore;
+
+    private final LoopScheduler loopScheduler = new LoopScheduler() {
+        @Override
+        public void schedule(long delay, String stateName) {
+            TraceRecorder.getInstance().schedule(delay, stateName);
+            tickScheduler.schedule(getApplicationContext(), delay, stateName);
+            schedulePrewarm(delay);
+        }
 
+        @Override
+        public void cancel() {
+            tickScheduler.cancel(getApplicationContext());
+        }
+    };
 
+    /** The tick that fixes are requested for. Only used on the loop's thread */
+    private RunningTick currentTick;
 
-    // Default values for PROD (overwritten for DEV below)
-    public static long IVAL_WARNING = 30000; // 30 seconds
-    public static long IVAL_LOOP_SHORT = 60000; // 1 minute
-    // public static long IVAL_LOOP_LONG = 30000;
-    public static long IVAL_WILL_LEAVE = 30000;
-    public static long IVAL_WILL_STAY = 10 * 60000; // 10 minutes
+    private final LocationSource locationSource = new LocationSource() {
+        @Override
+        public void requestFix(Consumer<Fix> onFix) {
+            requestFix(FixPriority.HIGH_ACCURACY, onFix);
+        }
 
-    public static final double SIGNIFICANT_RADIUS = 0.00001f;
+        @Override
+        public void requestFix(FixPriority priority, Consumer<Fix> onFix) {
+            LocationRequester.FixRequest request = LocationRequester.requestFix(getApplicationContext(), priority,
+                    (location) -> onFix.accept(location == null ? null : toFix(location)));
+            if (request == null) {
+                onFix.accept(null);
+            }
+            else if (currentTick != null) {
+                currentTick.add(request);
+            }
+        }
+    };
+
+    /** For timing how long the loop stays in each state */
+    private String currentStateName;
+    private long stateEnteredAt;
+
+    private final LoopListener loopListener = new LoopListener() {
+        @Override
+        public void onStateEntered(LoopState state, long ival) {
+            String stateName = state.getClass().getSimpleName();
+            long now = System.currentTimeMillis();
+            if (currentStateName != null) {
+                LoopMetrics.recordStateTime(currentStateName, now - stateEnteredAt);
+            }
+            currentStateName = stateName;
+            stateEnteredAt = now;
+            TraceRecorder.getInstance().state(stateName);
+        }
 
+        @Override
+        public void onFixes(List<Fix> fixes) {
+            TraceRecorder trace = TraceRecorder.getInstance();
+            if (trace.isEnabled()) {
+                for (Fix fix : fixes) trace.fix(fix);
+            }
+            if (geofenceDetector.isDormant()) {
+                // Fallback tick while sleeping - fences are registered again if still idle
+                geofenceDetector.stop(getApplicationContext());
+            }
+            LiveLocationStream.getInstance().publish(fixes.get(fixes.size() - 1));
+        }
 
+        @Override
+        public void onMovementDecided(boolean moved, boolean rawMoved) {
+            if (moved) LoopMetrics.MOVES.inc();
+            else if (rawMoved) LoopMetrics.JITTER_SUPPRESSED.inc();
+        }
 
+        @Override
+        public void onSnitchWarning(SnitchTrigger snitch) {
+            sendWarningNotification();
+        }
 
-    private Location lastLocation;
-    private SnitchTrigger activeSnitch;
-//    private Long lastWillLeaveTime;
-    private Long lastUsedCheatTime;
+        /**
+         * Stores the snitch in the outbox before telling the user, so it is
+         * delivered eventually even if the network is down or the app dies.
+         */
+        @Override
+        public void onSnitchPublished(SnitchTrigger snitch) {
+            String userId = settingsManager.getItem(SettingsManager.USER_ID);
+            JsLog("SENDING SNITCH!! " + userId);
+            CreateSnitchRequest request = new CreateSnitchRequest(snitch.id, userId, snitch.originCoords, snitch.restaurantData);
+            SnitchOutbox.getInstance(getApplicationContext()).add(request);
+            SnitchDeliveryWorker.enqueue(getApplicationContext(), true);
+
+            notificationManager.cancel(NOTIF_ID_WARNING);
+            sendSnitchedNotification();
+        }
+
+        /**
+         * In geofence mode the loop sleeps until a fence fires, with a long
+         * polling fallback.
+         */
+        @Override
+        public long onIdle(Fix fix) {
+            if (DETECTION_GEOFENCE.equals(detectionMode)
+                    && geofenceDetector.sleepUntilGeofence(getApplicationContext(), fix, localResolver)) {
+                return GeofenceDetector.MAX_DORMANT_TIME;
+            }
+            return -1;
+        }
+
+        @Override
+        public void onCheckpoint(LoopCheckpoint checkpoint) {
+            LoopCheckpointStore store = checkpointStore;
+            if (store == null) return;
+            if (checkpoint == null) store.clear();
+            else store.save(checkpoint);
+        }
+
+        @Override
+        public void log(String message) {
+            JsLog(message);
+        }
+
+        @Override
+        public void debug(String format, Object... args) {
+            if (FitLog.isEnabled(LogLevel.DEBUG)) FitLog.d(format, args);
+        }
+    };
+
+    /**
+     * Every loop event runs here, one at a time, so ticks, API callbacks and
+     * calls from JS never race each other or block the UI thread.
+     */
+    private final HandlerThread loopThread = startLoopThread();
+    private final Handler loopHandler = new Handler(loopThread.getLooper());
+
+    private final LocationLoop loop = new LocationLoop(LoopClock.SYSTEM, loopScheduler, locationSource, restaurantResolver, loopListener, this::runOnLoopThread);
+    private final PowerStateReceiver powerStateReceiver = new PowerStateReceiver(loop.getEnergyGovernor());
 
     private LocationLoopManager() {
         if (BuildConfig.BUILD_TYPE.equals("debug")) {
             JsLog("Setting short loop times for debug");
-            IVAL_WARNING = 30000; // 30 seconds
-            IVAL_LOOP_SHORT = 30000; // 30 seconds
-            IVAL_WILL_LEAVE = 30000; // 30 seconds
-            IVAL_WILL_STAY = 60000; // 1 minute
+            loop.setTimings(LoopTimings.DEBUG);
         }
     }
 
+    /**
+     * Posts the task to the loop's thread, counting the CPU time it takes
+     * against the energy budget.
+     */
+    private void runOnLoopThread(Runnable task) {
+        loopHandler.post(() -> {
+            long start = Debug.threadCpuTimeNanos();
+            task.run();
+            if (start >= 0) {
+                long micros = (Debug.threadCpuTimeNanos() - start) / 1000;
+                loop.getEnergyGovernor().recordCpu(System.currentTimeMillis(), micros);
+            }
+        });
+    }
+
+    private static HandlerThread startLoopThread() {
+        HandlerThread thread = new HandlerThread("FitSnitchLoop");
+        thread.start();
+        return thread;
+    }
+
     public static LocationLoopManager getInstance() {
         return _instance;
     }
 
+    public static Fix toFix(Location location) {
+        return new Fix(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getTime(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN);
+    }
+
+    /**
+     * Carries on from the checkpoint left by a previous process if there is
+     * a recent one, for example after a reboot or a START_STICKY restart.
+     */
     public void startLoop(Context context) {
         if (isDoingLoop) {
             JsLog("Location loop already running");
             return;
         }
         setup(context);
-        enterLoopState(new BaseState());
+        LoopCheckpoint checkpoint = checkpointStore.load();
+        if (checkpoint != null && checkpoint.isResumable(System.currentTimeMillis())) {
+            LoopMetrics.WARM_RESUMES.inc();
+            loop.resume(checkpoint);
+        }
+        else {
+            loop.start();
+        }
         isDoingLoop = true;
     }
 
     public void stopLoop() {
         JsLog("Stopping location loop");
         isDoingLoop = false;
+        loop.stop();
+        if (LocationForegroundService.mContext != null) {
+            geofenceDetector.stop(LocationForegroundService.mContext);
+            powerStateReceiver.unregister(LocationForegroundService.mContext);
+        }
     }
 
-    public SnitchTrigger getActiveSnitch() {
-        JsLog(String.valueOf(activeSnitch));
-        return activeSnitch;
+    public GeofenceDetector getGeofenceDetector() {
+        return geofenceDetector;
     }
 
     /**
-     * Creates a new loop (alarm) with a new state. This method handles setting
-     * a new alarm, so the previous loop should not do that if it plan to
-     * use this method to change state.
-     *
-     * Uses the new state to determine the interval for the new loop.
-     * Defaults to IVAL_LOOP_SHORT
+     * Chooses between polling on every tick and sleeping between
+     * restaurants until a geofence fires. Takes effect on the next idle tick.
      */
-    public void enterLoopState(LoopState newState) {
-        JsLog("Entering loop state: " + newState.getClass().getSimpleName());
-        loopState = newState;
-        long ival = newState.getInitialLoopIval();
-        if (ival == 0) {
-            ival = IVAL_LOOP_SHORT;
+    public void setDetectionMode(Context context, String mode) {
+        detectionMode = DETECTION_GEOFENCE.equals(mode) ? DETECTION_GEOFENCE : DETECTION_POLLING;
+        SettingsManager.getInstance(context).saveItem(SettingsManager.DETECTION_MODE, detectionMode);
+        JsLog("Detection mode: " + detectionMode);
+        if (detectionMode.equals(DETECTION_POLLING) && geofenceDetector.isDormant()) {
+            geofenceDetector.wake(context);
         }
-        requestNextJob(getApplicationContext(), ival);
     }
 
+    public WorkManagerTickScheduler getWorkManagerScheduler() {
+        return workManagerScheduler;
+    }
 
-    private void setup(Context context) {
-        settingsManager = new SettingsManager(context);
-
-
-        notificationManager = LocationForegroundService.mContext.getSystemService(NotificationManager.class);
-        mNotificationChannel = new NotificationChannel(
-                CHANNEL_ID,
-                CHANNEL_NAME,
-                NotificationManager.IMPORTANCE_HIGH
-        );
-        notificationManager.createNotificationChannel(mNotificationChannel);
+    public HandlerTickScheduler getServiceScheduler() {
+        return serviceScheduler;
+    }
 
-        createWarningNotification();
-        createSnitchedNotification();
+    public BatchedTickScheduler getBatchedScheduler() {
+        return batchedScheduler;
     }
 
+    private TickScheduler schedulerFor(String mode) {
+        if (SCHEDULER_SERVICE.equals(mode)) return serviceScheduler;
+        if (SCHEDULER_BATCHED.equals(mode)) return batchedScheduler;
+        return workManagerScheduler;
+    }
 
     /**
-     * Ends one iteration of the loop by setting the alarm
-     * that will trigger the next.
-     * Only call this once per iteration!
-     *
-     * @param ival How long to wait before the next iteration.
+     * Switches between running ticks through WorkManager, inside the
+     * foreground service, or from batched location updates. A pending tick
+     * is moved over to the new scheduler. The choice is saved and used on
+     * the next start.
      */
-    void setNextAlarm(long ival) {
-        requestNextJob(getApplicationContext(), ival);
+    public void setTickSchedulerMode(Context context, String mode) {
+        TickScheduler next = schedulerFor(mode);
+        SettingsManager.getInstance(context).saveItem(SettingsManager.TICK_SCHEDULER, mode);
+        if (next == tickScheduler) return;
+        JsLog("Switching tick scheduler to " + next.getClass().getSimpleName());
+        tickScheduler.cancel(context);
+        tickScheduler = next;
+        if (isDoingLoop) {
+            loop.reschedule(loop.getTimings().loopShort);
+        }
     }
 
-
-    void requestNextJob(Context context, long delay) {
-        JsLog("Requesting location worker," + " " + loopState.getClass().getSimpleName() + ", " + delay);
-        WorkRequest locationWorkRequest =
-                new OneTimeWorkRequest.Builder(LocationWorker.class)
-                        .setInitialDelay(delay, TimeUnit.MILLISECONDS)
-                        .addTag(WORKER_TAG)
-                        .addTag(loopState.getClass().getSimpleName())
-                        .build();
-        WorkManager
-                .getInstance(context)
-                .enqueue(locationWorkRequest);
+    /**
+     * Switches the loop's timings. The tick already scheduled keeps its time,
+     * the ones after it use the new profile. Saved and used on the next start.
+     */
+    public void setLoopProfile(Context context, LoopProfile profile) {
+        SettingsManager.getInstance(context).saveItem(SettingsManager.LOOP_PROFILE, profile);
+        JsLog("Loop profile: " + profile.key);
+        loop.setTimings(profile.timings);
     }
 
+    /**
+     * Safe to use from any thread.
+     */
+    public EnergyGovernor getEnergyGovernor() {
+        return loop.getEnergyGovernor();
+    }
 
     /**
-     * The main body of logic for each loop.
-     * Determines what to do based on current location and variables.
-     * All paths MUST terminate with a call to setNextAlarm to keep
-     * the loop going.
+     * The priority the energy budget allows for the next fix.
      */
-    void handleNewLocation(Location newLocation) {
-        try {
-            if (loopState == null) {
-                loopState = new BaseState();
-            }
-            JsLog("Handling new location: " + loopState.getClass().getSimpleName());
-            if (newLocation == null) {
-                JsLog("Got null location! Retrying loop.");
-                requestNextJob(LocationForegroundService.mContext, IVAL_LOOP_SHORT);
-                return;
-            }
-            boolean didChange = didLocationChange(newLocation, true);
+    public FixPriority getFixPriority() {
+        return loop.getFixPriority();
+    }
 
-            loopState.handleNewLocation(newLocation);
+    public AccuracyTiers getAccuracyTiers() {
+        return loop.getAccuracyTiers();
+    }
 
-            // Save new location if change is significant
-            if (didChange) {
-                lastLocation = newLocation;
-            }
-            else if (lastLocation == null) {
-                lastLocation = newLocation;
-            }
-        }
-        catch (Exception e) {
-            JsLog("Error found in location loop");
-            JsLog(e.getLocalizedMessage());
-            requestNextJob(LocationForegroundService.mContext, IVAL_LOOP_SHORT);
-        }
+    public SnitchTrigger getActiveSnitch() {
+        SnitchTrigger activeSnitch = loop.getSnapshot().activeSnitch;
+        FitLog.v("Active snitch: %s", activeSnitch);
+        return activeSnitch;
+    }
 
+    public IntervalPolicy getIntervalPolicy() {
+        return loop.getIntervalPolicy();
     }
 
+    public void setIntervalPolicy(IntervalPolicy policy) {
+        loop.setIntervalPolicy(policy);
+    }
 
-    boolean didLocationChange(Location newLocation) {
-        return didLocationChange(newLocation, SIGNIFICANT_RADIUS, false);
+    public RestaurantCache getRestaurantCache() {
+        return restaurantResolver.getRestaurantCache();
     }
-    boolean didLocationChange(Location newLocation, boolean printLogs) {
-        return didLocationChange(newLocation, SIGNIFICANT_RADIUS, printLogs);
+
+    public LocalRestaurantResolver getLocalResolver() {
+        return localResolver;
     }
 
+    public void onUsedCheat() {
+        loop.onUsedCheat();
+    }
 
 
-    boolean didLocationChange(Location newLocation, double sig_radius, boolean printLogs) {
-        if (lastLocation == null) {
-            JsLog("No previous location");
-            return false;
+    private void setup(Context context) {
+        settingsManager = SettingsManager.getInstance(context);
+        if (checkpointStore == null) {
+            checkpointStore = new LoopCheckpointStore(context);
         }
-        double newLat = newLocation.getLatitude();
-        double newLon = newLocation.getLongitude();
-        double oldLat = lastLocation.getLatitude();
-        double oldLon = lastLocation.getLongitude();
-
-        double distance = Math.sqrt(Math.pow(newLon - oldLon, 2) + Math.pow(newLat - oldLat, 2));
-        boolean didChange = distance >= sig_radius;
-
-        if (printLogs) {
-            JsLog("Handling new location: " + loopState.getClass().getSimpleName());
-            JsLog("Loc: " + newLocation.getLatitude() + ", " + newLocation.getLongitude() + ". Speed: " + newLocation.getSpeed() + "m/s");
-            JsLog("Distance moved: " + String.format("%.6f",distance) + ". Significant: " + didChange);
+        if (restaurantResolver.getRestaurantCache() == null) {
+            restaurantResolver.setRestaurantCache(new RestaurantCache(context));
+        }
+        powerStateReceiver.register(context);
+        String schedulerMode = settingsManager.getItem(SettingsManager.TICK_SCHEDULER);
+        tickScheduler = schedulerFor(schedulerMode);
+        if (DETECTION_GEOFENCE.equals(settingsManager.getItem(SettingsManager.DETECTION_MODE))) {
+            detectionMode = DETECTION_GEOFENCE;
+        }
+        LoopProfile profile = settingsManager.getItem(SettingsManager.LOOP_PROFILE);
+        if (profile != null) {
+            loop.setTimings(profile.timings);
         }
 
-        return didChange;
+
+        notificationManager = LocationForegroundService.mContext.getSystemService(NotificationManager.class);
+        mNotificationChannel = new NotificationChannel(
+                CHANNEL_ID,
+                CHANNEL_NAME,
+                NotificationManager.IMPORTANCE_HIGH
+        );
+        notificationManager.createNotificationChannel(mNotificationChannel);
+
+        createWarningNotification();
+        createSnitchedNotification();
     }
 
 
     /**
-     * Handles the API request for restaurants.
-     * Returns null for any error.
+     * Called by the geofence detector to run a tick right away.
      */
-    public static void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb) {
-        ApiService.getClient().checkLocation(new CheckLocationRequest(location), new Callback<CheckLocationResponse>() {
-            @Override
-            public void success(CheckLocationResponse responseData, Response response) {
-                if (responseData.isRestaurant) {
-                    JsLog("Is at restaurant: " + responseData.restaurant.name);
-                    cb.accept(responseData.restaurant);
-                }
-                else {
-                    JsLog("Found no restaurant");
-                    cb.accept(null);
-                }
-            }
-
-            @Override
-            public void failure(RetrofitError error) {
-                JsLog("RetroFit error:" + error.getMessage());
-                cb.accept(null);
-            }
-        });
+    void wakeFromDormant(Context context) {
+        if (!isDoingLoop) return;
+        loop.wake();
     }
 
     /**
-     * HANDLES ENTERING NEW STATE!
-     * Do not call enterLoopState when using this method.
-     *
-     * Handles all setup for snitch warning state.
+     * Only done when the next tick is expected to go to the network, and
+     * the energy budget is untouched, since a prewarm is a radio wake-up
+     * that a tick answered locally doesn't need. A dormant loop's next tick
+     * is only a fallback, and one near the last fix is most likely answered
+     * from the local index.
      */
-    void beginSnitchWarning(SnitchTrigger snitch) {
-        JsLog("Entering Snitch State!");
-        activeSnitch = snitch;
-        sendWarningNotification();
-        enterLoopState(new ActiveSnitchState());
+    private void schedulePrewarm(long delay) {
+        prewarmHandler.removeCallbacksAndMessages(null);
+        if (loop.getEnergyGovernor().getLevel(System.currentTimeMillis()) != EnergyGovernor.Level.NORMAL) return;
+        if (geofenceDetector.isDormant()) return;
+        Fix latest = loop.getSnapshot().latestFix;
+        if (latest != null && localResolver.covers(new LatLonPair(latest.lat, latest.lon))) return;
+        prewarmHandler.postDelayed(ApiService::prewarm, Math.max(0, delay - PREWARM_LEAD));
     }
 
 
-    public void onUsedCheat() {
-        lastUsedCheatTime = System.currentTimeMillis();
-        JsLog("SET USED CHEAT" + lastUsedCheatTime);
-    }
-
-    public boolean usedCheatForActiveSnitch() {
-        return lastUsedCheatTime != null && activeSnitch != null && lastUsedCheatTime > activeSnitch.created_at;
+    /**
+     * Runs one tick: fetches the current location and hands it to the loop.
+     * @param onDone Called once the tick has decided on the next one, or was
+     * overtaken by a newer tick
+     * @return The tick, for cancelling its fix requests
+     */
+    RunningTick runTick(Runnable onDone) {
+        RunningTick tick = new RunningTick();
+        // Posted in order, so this runs right before the tick itself
+        runOnLoopThread(() -> currentTick = tick);
+        loop.tick(onDone);
+        return tick;
     }
 
-    void publishActiveSnitch() {
-        String userId = settingsManager.getItem(SettingsManager.USER_ID);
-        JsLog("SENDING SNITCH!! " + userId);
-        CreateSnitchRequest request = new CreateSnitchRequest(userId, activeSnitch.originCoords, activeSnitch.restaurantData);
-        ApiService.getClient().publishSnitch(request, new Callback<Object>() {
-            @Override
-            public void success(Object obj, Response response) {
-                JsLog("SUCCESS");
-            }
-
-            @Override
-            public void failure(RetrofitError error) {
-                JsLog("ERROR Could not send snitch");
-                JsLog(error.getLocalizedMessage());
-            }
-        });
-
-        notificationManager.cancel(NOTIF_ID_WARNING);
-        sendSnitchedNotification();
-        activeSnitch = null;
-        lastUsedCheatTime = null;
+    /**
+     * Hands the loop the fixes a tick received from outside of it, oldest
+     * first, as a new tick.
+     */
+    void handleNewLocations(List<Location> newLocations) {
+        List<Fix> fixes = new ArrayList<>(newLocations.size());
+        for (Location location : newLocations) {
+            fixes.add(toFix(location));
+        }
+        loop.handleNewFixes(fixes);
     }
 
 
@@ -355,4 +519,27 @@ public class LocationLoopManager {
         notificationManager.notify(NOTIF_ID_SNITCHED, snitchedNotification);
     }
 
+    /**
+     * The fix requests made for one tick, so whoever ran the tick can drop
+     * them without touching those of a newer tick.
+     */
+    static class RunningTick {
+        private final List<LocationRequester.FixRequest> requests = new ArrayList<>();
+        private boolean cancelled = false;
+
+        private synchronized void add(LocationRequester.FixRequest request) {
+            if (cancelled) request.cancel();
+            else requests.add(request);
+        }
+
+        /**
+         * Drops the tick's outstanding fix requests without handing anything
+         * to the loop. Whoever stopped the tick is responsible for the next one.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            for (LocationRequester.FixRequest request : requests) request.cancel();
+            requests.clear();
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_LOW_POWER;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_NO_POWER;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.util.Consumer;
+
+import com.fitsnitchapp.logging.FitLog;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches a single location fix for a loop tick.
+ */
+public class LocationRequester {
+    /** A fix that takes longer than this is given up on, and the tick gets null */
+    public static final long FIX_TIMEOUT = 30000;
+
+    private static final Handler timeoutHandler = new Handler(Looper.getMainLooper());
+
+    private LocationRequester() {}
+
+    /**
+     * Handles getting the location and passing it on to the callback.
+     * The callback is called exactly once, with null if the fix failed or
+     * timed out, unless the request is cancelled first.
+     * @return The request, or null if the location couldn't be requested at all
+     */
+    public static FixRequest requestFix(Context context, FixPriority priority, Consumer<Location> onFix) {
+        FitLog.d("requesting current location, %s", priority);
+        if (!hasLocationPermission(context)) {
+            JsLog("Insufficient location permission!");
+            return null;
+        }
+        FixRequest request = new FixRequest();
+        long start = System.currentTimeMillis();
+        Runnable timeout = () -> {
+            if (!request.finish()) return;
+            JsLog("Location request timed out");
+            LoopMetrics.FIX_TIMEOUTS.inc();
+            request.cancellation.cancel();
+            onFix.accept(null);
+        };
+        request.timeout = timeout;
+        timeoutHandler.postDelayed(timeout, FIX_TIMEOUT);
+
+        LocationServices.getFusedLocationProviderClient(context.getApplicationContext())
+                .getCurrentLocation(toProviderPriority(priority), request.cancellation.getToken())
+                .addOnCompleteListener((task) -> {
+                    if (!request.finish()) return;
+                    if (task.isSuccessful()) {
+                        Location location = task.getResult();
+                        LoopMetrics.TIME_TO_FIX.record(System.currentTimeMillis() - start);
+                        if (location == null) LoopMetrics.FIX_NULLS.inc();
+                        onFix.accept(location);
+                    }
+                    else {
+                        JsLog("Location request failed: " + task.getException());
+                        LoopMetrics.FIX_FAILURES.inc();
+                        onFix.accept(null);
+                    }
+                });
+        return request;
+    }
+
+    /**
+     * @return The fused location provider's priority for this one
+     */
+    public static int toProviderPriority(FixPriority priority) {
+        switch (priority) {
+            case BALANCED_POWER: return PRIORITY_BALANCED_POWER_ACCURACY;
+            case LOW_POWER: return PRIORITY_LOW_POWER;
+            case PASSIVE: return PRIORITY_NO_POWER;
+            default: return PRIORITY_HIGH_ACCURACY;
+        }
+    }
+
+    public static boolean hasLocationPermission(Context context) {
+        return ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * An outstanding fix request.
+     */
+    public static class FixRequest {
+        private final CancellationTokenSource cancellation = new CancellationTokenSource();
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private Runnable timeout;
+
+        /**
+         * Stops the request without calling back. Does nothing once the
+         * request has called back.
+         */
+        public void cancel() {
+            if (!finish()) return;
+            FitLog.d("Location request cancelled");
+            cancellation.cancel();
+        }
+
+        /** @return true for the first caller only */
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) return false;
+            timeoutHandler.removeCallbacks(timeout);
+            return true;
+        }
+    }
+}
@@ -1,78 +1,58 @@
 package com.fitsnitchapp.location_loop;
 
 import static com.fitsnitchapp.LocationModule.JsLog;
-import static com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY;
 
-import android.Manifest;
 import android.content.Context;
-import android.content.pm.PackageManager;
-import android.location.Location;
 
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
-import androidx.work.Worker;
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+import androidx.work.ListenableWorker;
 import androidx.work.WorkerParameters;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.tasks.CancellationToken;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.OnTokenCanceledListener;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import java.util.Set;
-
-public class LocationWorker extends Worker {
-    private final FusedLocationProviderClient mFusedLocationClient;
-    Context mContext;
-    Set<String> tags;
+/**
+ * Runs one loop tick for WorkManagerTickScheduler. The work only finishes
+ * once the tick has handled its fix and decided on the next tick, so
+ * WorkManager keeps the process alive for the whole tick.
+ */
+public class LocationWorker extends ListenableWorker {
+    private volatile LocationLoopManager.RunningTick tick;
 
     public LocationWorker(
             @NonNull Context context,
             @NonNull WorkerParameters params) {
         super(context, params);
-        mContext = context;
-        tags = params.getTags();
-        mFusedLocationClient = LocationServices.getFusedLocationProviderClient(getApplicationContext());
     }
 
     @NonNull
     @Override
-    public Result doWork() {
-        if (!LocationLoopManager.getInstance().isDoingLoop) {
-            JsLog("Loop was stopped - skipping worker");
-            return Result.failure();
-        }
-        inspectLocation();
-
-        return Result.success();
+    public ListenableFuture<Result> startWork() {
+        return CallbackToFutureAdapter.getFuture((completer) -> {
+            long scheduledAt = getInputData().getLong(WorkManagerTickScheduler.KEY_SCHEDULED_AT, 0);
+            if (scheduledAt > 0) {
+                long now = System.currentTimeMillis();
+                LocationLoopManager.getInstance().getWorkManagerScheduler().getDriftStats().record(scheduledAt, now);
+                LoopMetrics.recordTickStart(scheduledAt, now);
+            }
+            if (!LocationLoopManager.getInstance().isDoingLoop) {
+                JsLog("Loop was stopped - skipping worker");
+                completer.set(Result.failure());
+                return "skipped tick";
+            }
+            tick = LocationLoopManager.getInstance().runTick(() -> completer.set(Result.success()));
+            return "location loop tick";
+        });
     }
 
-
     /**
-     * Handles getting the location and passing it on to the main handler
+     * The tick was cancelled before it finished, by stop, a wake or a
+     * scheduler switch, or the system stopped the work. Only this tick's own
+     * fix requests are dropped, a newer tick's are left alone.
      */
-    private void inspectLocation() {
-        JsLog("requesting current location");
-        if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED && ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-            JsLog("Insufficient location permission!");
-            return;
-        }
-        mFusedLocationClient.getCurrentLocation(PRIORITY_HIGH_ACCURACY, new CancellationToken() {
-            @NonNull
-            @Override
-            public CancellationToken onCanceledRequested(@NonNull OnTokenCanceledListener onTokenCanceledListener) {
-                return null;
-            }
-
-            @Override
-            public boolean isCancellationRequested() {
-                return false;
-            }
-        }).addOnSuccessListener(new OnSuccessListener<Location>() {
-            @Override
-            public void onSuccess(Location location) {
-                LocationLoopManager.getInstance().handleNewLocation(location);
-            }
-        });
+    @Override
+    public void onStopped() {
+        LocationLoopManager.RunningTick running = tick;
+        if (running != null) running.cancel();
     }
 }
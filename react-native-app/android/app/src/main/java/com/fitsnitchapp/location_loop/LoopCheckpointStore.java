@@ -0,0 +1,83 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the loop's latest checkpoint in a small binary file, so a process
+ * started after a reboot or a START_STICKY restart can resume the loop.
+ *
+ * Saves happen on the loop's thread at the end of every tick, so they are
+ * kept cheap: no fsync, just a write to a temp file swapped in with a
+ * rename. A file damaged by a crash fails its checksum and the loop
+ * starts from scratch instead.
+ */
+public class LoopCheckpointStore {
+    private static final String FILE_NAME = "loop_checkpoint.bin";
+
+    private final File file;
+
+    public LoopCheckpointStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Whether the loop was running when the last process ended, rather
+     * than stopped by the user.
+     */
+    public static boolean hasCheckpoint(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME).exists();
+    }
+
+    public void save(LoopCheckpoint checkpoint) {
+        long start = System.nanoTime();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(checkpoint.encode());
+        }
+        catch (IOException e) {
+            JsLog("Could not save loop checkpoint: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            JsLog("Could not replace loop checkpoint file");
+            return;
+        }
+        LoopMetrics.CHECKPOINT_SAVE_TIME.record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * @return The saved checkpoint, or null if there is none or it can't be read
+     */
+    public LoopCheckpoint load() {
+        if (!file.exists()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            if (read < bytes.length) throw new IOException("short read");
+            return LoopCheckpoint.decode(bytes);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            JsLog("Could not load loop checkpoint: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void clear() {
+        if (file.exists() && !file.delete()) {
+            JsLog("Could not delete loop checkpoint file");
+        }
+    }
+}
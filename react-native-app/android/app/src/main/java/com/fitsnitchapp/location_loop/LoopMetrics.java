@@ -0,0 +1,89 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.metrics.Counter;
+import com.fitsnitchapp.metrics.Histogram;
+import com.fitsnitchapp.metrics.MetricsRegistry;
+
+import java.util.Map;
+
+/**
+ * Performance numbers for the location loop on this device, aggregated
+ * in process until JS takes a snapshot.
+ */
+public final class LoopMetrics {
+    /** Upper bounds for time spent in a loop state, from 1 second to 2 hours */
+    private static final long[] STATE_BOUNDS = {
+            1000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000, 3600000, 7200000
+    };
+
+    /** Upper bounds for decoding times in micros, from 10us to 50ms */
+    private static final long[] MICROS_BOUNDS = {
+            10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 50000
+    };
+
+    private static final MetricsRegistry registry = new MetricsRegistry();
+
+    public static final Counter TICKS = registry.counter("loop.ticks");
+    /** How late a tick started compared to when it was requested. Early ticks count as 0 */
+    public static final Histogram TICK_LATENESS = registry.histogram("tick.latenessMs");
+    public static final Histogram TIME_TO_FIX = registry.histogram("fix.timeToFixMs");
+    public static final Counter FIX_NULLS = registry.counter("fix.nulls");
+    public static final Counter FIX_FAILURES = registry.counter("fix.failures");
+    public static final Counter FIX_TIMEOUTS = registry.counter("fix.timeouts");
+    public static final Histogram CHECK_RTT = registry.histogram("api.checkLocation.rttMs");
+    public static final Histogram TRAJECTORY_RTT = registry.histogram("api.checkTrajectory.rttMs");
+    /** Points sent in trajectory checks, each of which would otherwise be its own check */
+    public static final Counter TRAJECTORY_POINTS = registry.counter("api.checkTrajectory.points");
+    public static final Histogram SNITCH_BATCH_RTT = registry.histogram("api.publishSnitchBatch.rttMs");
+    public static final Counter API_CALLS = registry.counter("api.calls");
+    public static final Counter API_FAILURES = registry.counter("api.failures");
+    public static final Counter BYTES_SENT = registry.counter("api.bytesSent");
+    public static final Counter BYTES_RECEIVED = registry.counter("api.bytesReceived");
+    /** Time to decode a response body, in micros */
+    public static final Histogram DECODE_TIME = registry.histogram("api.decodeMicros", MICROS_BOUNDS);
+    /** Ticks the movement filter decided the user moved */
+    public static final Counter MOVES = registry.counter("movement.moves");
+    /**
+     * Ticks the old 1m raw-degree check would have called movement but the
+     * filter didn't. Each one in StayingState is a restaurant check saved.
+     */
+    public static final Counter JITTER_SUPPRESSED = registry.counter("movement.jitterSuppressed");
+    /** Time to write the loop checkpoint file, in micros */
+    public static final Histogram CHECKPOINT_SAVE_TIME = registry.histogram("loop.checkpointSaveMicros", MICROS_BOUNDS);
+    /** Loop starts that carried on from a checkpoint instead of from scratch */
+    public static final Counter WARM_RESUMES = registry.counter("loop.warmResumes");
+
+    private LoopMetrics() {}
+
+    public static void recordTickStart(long scheduledAt, long startedAt) {
+        TICKS.inc();
+        TICK_LATENESS.record(Math.max(0, startedAt - scheduledAt));
+    }
+
+    /**
+     * Also counts the call against the energy budget, since every call
+     * wakes the radio.
+     */
+    public static void recordApiCall(Histogram rtt, long start, boolean failed) {
+        recordRadioRequest(start);
+        API_CALLS.inc();
+        if (failed) API_FAILURES.inc();
+        rtt.record(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Counts a request that isn't timed as an API call, like an area fetch
+     * or a prewarm, against the energy budget.
+     */
+    public static void recordRadioRequest(long time) {
+        LocationLoopManager.getInstance().getEnergyGovernor().recordRadioRequest(time);
+    }
+
+    public static void recordStateTime(String stateName, long millis) {
+        registry.histogram("state." + stateName + ".ms", STATE_BOUNDS).record(millis);
+    }
+
+    public static Map<String, Object> snapshot(boolean reset) {
+        return registry.snapshot(reset);
+    }
+}
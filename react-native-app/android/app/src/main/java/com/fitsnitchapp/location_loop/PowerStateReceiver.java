@@ -0,0 +1,65 @@
+package com.fitsnitchapp.location_loop;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+/**
+ * Keeps the energy governor up to date with the battery level, charging
+ * and power save mode while the loop runs.
+ */
+public class PowerStateReceiver extends BroadcastReceiver {
+    private final EnergyGovernor governor;
+    private boolean registered = false;
+
+    public PowerStateReceiver(EnergyGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Starts listening, and applies the current state right away from the
+     * sticky battery broadcast.
+     */
+    public synchronized void register(Context context) {
+        if (registered) return;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        Intent battery = context.getApplicationContext().registerReceiver(this, filter);
+        registered = true;
+        update(context, battery);
+    }
+
+    public synchronized void unregister(Context context) {
+        if (!registered) return;
+        context.getApplicationContext().unregisterReceiver(this);
+        registered = false;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+            update(context, intent);
+        }
+        else {
+            // Power save changed - the battery state is still in the sticky broadcast
+            update(context, context.getApplicationContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED)));
+        }
+    }
+
+    private void update(Context context, Intent battery) {
+        PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        boolean powerSave = powerManager != null && powerManager.isPowerSaveMode();
+        int percent = 100;
+        boolean charging = false;
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) percent = level * 100 / scale;
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        governor.setPowerState(percent, charging, powerSave);
+    }
+}
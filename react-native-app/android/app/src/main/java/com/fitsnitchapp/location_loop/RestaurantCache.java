@@ -0,0 +1,202 @@
+package com.fitsnitchapp.location_loop;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.Context;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.codec.ApiTypeAdapters;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches check-location answers by geohash cell so that repeated checks
+ * from the same spot don't need a network round trip.
+ *
+ * Both positive ("restaurant X is here") and negative ("no restaurant here")
+ * answers are stored, each with their own TTL. Negative answers are kept in
+ * smaller cells, since they only hold for the spot that was checked, and the
+ * newer answer wins where both cover a location. The least recently used cell
+ * is evicted once the cache is full. Entries are persisted to a file so they
+ * survive process restarts.
+ */
+public class RestaurantCache {
+    private static final String FILE_NAME = "restaurant_cache.json";
+
+    public static final int CELL_PRECISION = Geohash.CELL_PRECISION;
+    public static final int NEGATIVE_CELL_PRECISION = Geohash.NEGATIVE_CELL_PRECISION;
+    public static final int MAX_ENTRIES = 2000;
+    public static final long TTL_POSITIVE = 24 * 60 * 60000; // 1 day
+    public static final long TTL_NEGATIVE = 6 * 60 * 60000; // 6 hours
+
+    private final File file;
+    private final Gson gson = ApiTypeAdapters.createGson();
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private boolean saveScheduled = false;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    public RestaurantCache(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    public static String cellFor(LatLonPair location, Restaurant restaurant) {
+        int precision = restaurant == null ? NEGATIVE_CELL_PRECISION : CELL_PRECISION;
+        return Geohash.encode(location.lat, location.lon, precision);
+    }
+
+    /**
+     * @return The cached entry for the cell containing this location, or null on a miss.
+     * A hit may still hold a null restaurant, meaning "no restaurant here".
+     */
+    public synchronized Entry get(LatLonPair location) {
+        long now = System.currentTimeMillis();
+        Entry found = lookup(Geohash.encode(location.lat, location.lon, CELL_PRECISION), now);
+        Entry notFound = lookup(Geohash.encode(location.lat, location.lon, NEGATIVE_CELL_PRECISION), now);
+        Entry entry = found == null || (notFound != null && notFound.storedAt > found.storedAt) ? notFound : found;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    public synchronized void put(LatLonPair location, Restaurant restaurant) {
+        entries.put(cellFor(location, restaurant), new Entry(restaurant, System.currentTimeMillis()));
+        scheduleSave();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        scheduleSave();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        long lookups = hits + misses;
+        stats.put("hitRate", lookups == 0 ? 0 : (double) hits / lookups);
+        return stats;
+    }
+
+
+    private Entry lookup(String cell, long now) {
+        Entry entry = entries.get(cell);
+        if (entry != null && entry.isExpired(now)) {
+            entries.remove(cell);
+            expirations++;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Writes are coalesced onto a background thread so that a burst of
+     * puts only results in a single file write.
+     */
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        saveExecutor.execute(this::save);
+    }
+
+    private void save() {
+        List<PersistedEntry> snapshot = new ArrayList<>();
+        synchronized (this) {
+            saveScheduled = false;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                snapshot.add(new PersistedEntry(e.getKey(), e.getValue()));
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            gson.toJson(snapshot, writer);
+        }
+        catch (Exception e) {
+            JsLog("Could not save restaurant cache: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            JsLog("Could not replace restaurant cache file");
+        }
+    }
+
+    private synchronized void load() {
+        if (!file.exists()) return;
+        try (Reader reader = new FileReader(file)) {
+            List<PersistedEntry> persisted = gson.fromJson(reader, new TypeToken<List<PersistedEntry>>(){}.getType());
+            if (persisted == null) return;
+            long now = System.currentTimeMillis();
+            for (PersistedEntry p : persisted) {
+                Entry entry = new Entry(p.restaurant, p.storedAt);
+                if (!entry.isExpired(now)) entries.put(p.cell, entry);
+            }
+            JsLog("Loaded " + entries.size() + " cached restaurant cells");
+        }
+        catch (Exception e) {
+            JsLog("Could not load restaurant cache: " + e.getMessage());
+        }
+    }
+
+
+    public static class Entry {
+        public final Restaurant restaurant;
+        public final long storedAt;
+
+        Entry(Restaurant restaurant, long storedAt) {
+            this.restaurant = restaurant;
+            this.storedAt = storedAt;
+        }
+
+        boolean isExpired(long now) {
+            long ttl = restaurant == null ? TTL_NEGATIVE : TTL_POSITIVE;
+            return now - storedAt > ttl;
+        }
+    }
+
+    private static class PersistedEntry {
+        String cell;
+        Restaurant restaurant;
+        long storedAt;
+
+        PersistedEntry(String cell, Entry entry) {
+            this.cell = cell;
+            this.restaurant = entry.restaurant;
+            this.storedAt = entry.storedAt;
+        }
+    }
+}
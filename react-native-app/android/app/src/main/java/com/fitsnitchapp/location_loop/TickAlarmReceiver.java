@@ -0,0 +1,15 @@
+package com.fitsnitchapp.location_loop;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives the alarms HandlerTickScheduler wakes its ticks with.
+ */
+public class TickAlarmReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        LocationLoopManager.getInstance().getServiceScheduler().onAlarm(context);
+    }
+}
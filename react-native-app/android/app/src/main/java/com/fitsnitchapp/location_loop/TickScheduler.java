@@ -0,0 +1,23 @@
+package com.fitsnitchapp.location_loop;
+
+import android.content.Context;
+
+/**
+ * Schedules the next iteration of the location loop.
+ */
+public interface TickScheduler {
+    /**
+     * Requests a single tick after the given delay. A tick fetches the
+     * current location and passes it to LocationLoopManager.handleNewLocation.
+     *
+     * @param stateName Name of the loop state the tick will run in, for logging
+     */
+    void schedule(Context context, long delay, String stateName);
+
+    /**
+     * Drops any pending tick.
+     */
+    void cancel(Context context);
+
+    DriftStats getDriftStats();
+}
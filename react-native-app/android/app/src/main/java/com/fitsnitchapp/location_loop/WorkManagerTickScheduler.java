@@ -0,0 +1,58 @@
+package com.fitsnitchapp.location_loop;
+
+import android.content.Context;
+
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each tick as a OneTimeWorkRequest for LocationWorker.
+ * Survives the foreground service being killed, at the cost of a
+ * WorkManager database write and some scheduling jitter per tick.
+ *
+ * Ticks are unique work, so scheduling one replaces any pending tick and
+ * there is never more than one chain of ticks, even after the service
+ * restarts. The loop finishes a tick's work before scheduling the next, so
+ * the tick that does the scheduling isn't replaced (and cancelled) itself.
+ */
+public class WorkManagerTickScheduler implements TickScheduler {
+    public static final String WORKER_TAG = "FIT_LOC_WORKER";
+    public static final String UNIQUE_WORK_NAME = "FIT_LOC_TICK";
+    static final String KEY_SCHEDULED_AT = "SCHEDULED_AT";
+
+    private final DriftStats driftStats = new DriftStats();
+
+    @Override
+    public void schedule(Context context, long delay, String stateName) {
+        Data input = new Data.Builder()
+                .putLong(KEY_SCHEDULED_AT, System.currentTimeMillis() + delay)
+                .build();
+        OneTimeWorkRequest locationWorkRequest =
+                new OneTimeWorkRequest.Builder(LocationWorker.class)
+                        .setInitialDelay(delay, TimeUnit.MILLISECONDS)
+                        .setInputData(input)
+                        .addTag(WORKER_TAG)
+                        .addTag(stateName)
+                        .build();
+        WorkManager
+                .getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.REPLACE, locationWorkRequest);
+    }
+
+    @Override
+    public void cancel(Context context) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.cancelUniqueWork(UNIQUE_WORK_NAME);
+        // Ticks enqueued before they were unique work
+        workManager.cancelAllWorkByTag(WORKER_TAG);
+    }
+
+    @Override
+    public DriftStats getDriftStats() {
+        return driftStats;
+    }
+}
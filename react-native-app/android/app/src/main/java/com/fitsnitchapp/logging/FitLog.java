@@ -0,0 +1,174 @@
+package com.fitsnitchapp.logging;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.core.util.Consumer;
+
+import com.fitsnitchapp.BuildConfig;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Structured logger for the native side of the app.
+ *
+ * Logging a message only checks the level and drops a record into a
+ * lock-free ring buffer. Formatting, logcat, the persisted log file and
+ * delivery to JS all happen later on a single background thread, in
+ * batches. Records below the current level are dropped after a single
+ * comparison:
+ *
+ *     FitLog.d("Distance moved: %.6f", distance);
+ *
+ * Pass values as arguments instead of concatenating them, otherwise the
+ * string is built even when the level is off. On very hot paths, guard
+ * calls with isEnabled to also skip the varargs array and boxing.
+ */
+public final class FitLog {
+    public static final String TAG = "***FIT_LOC";
+    private static final int RING_CAPACITY = 1024;
+    private static final long FLUSH_DELAY = 250;
+    private static final int MAX_DRAIN = 256;
+    /** At most this many records reach JS per flush, the rest are counted as dropped */
+    private static final int MAX_JS_BATCH = 25;
+    private static final String FILE_NAME = "native_log.txt";
+
+    private static volatile LogLevel minLevel = BuildConfig.DEBUG ? LogLevel.DEBUG : LogLevel.INFO;
+    private static volatile Consumer<List<LogRecord>> jsSink;
+    private static volatile MappedLogFile file;
+
+    private static final LogRing ring = new LogRing(RING_CAPACITY);
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "FitLog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicLong jsDropped = new AtomicLong();
+
+    private FitLog() {}
+
+    public static boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= minLevel.ordinal();
+    }
+
+    public static void setLevel(LogLevel level) {
+        minLevel = level;
+    }
+
+    public static LogLevel getLevel() {
+        return minLevel;
+    }
+
+    /**
+     * Receives batches of records to forward to JS. Pass null when JS is
+     * not listening, so records aren't batched for nobody.
+     */
+    public static void setJsSink(Consumer<List<LogRecord>> sink) {
+        jsSink = sink;
+    }
+
+    /**
+     * Starts persisting records to a memory-mapped file in the app's files dir.
+     */
+    public static synchronized void enableFile(Context context) {
+        if (file != null) return;
+        try {
+            file = new MappedLogFile(new File(context.getFilesDir(), FILE_NAME));
+        }
+        catch (Exception e) {
+            Log.w(TAG, "Could not open log file: " + e.getMessage());
+        }
+    }
+
+    public static synchronized void disableFile() {
+        file = null;
+    }
+
+    /**
+     * @return The persisted log, or null if file logging isn't enabled
+     */
+    public static String readFile() {
+        MappedLogFile current = file;
+        return current == null ? null : current.read();
+    }
+
+    public static long getDroppedCount() {
+        return ring.getDropped() + jsDropped.get();
+    }
+
+    public static void v(String format, Object... args) {
+        if (isEnabled(LogLevel.VERBOSE)) log(LogLevel.VERBOSE, format, args);
+    }
+
+    public static void d(String format, Object... args) {
+        if (isEnabled(LogLevel.DEBUG)) log(LogLevel.DEBUG, format, args);
+    }
+
+    public static void i(String format, Object... args) {
+        if (isEnabled(LogLevel.INFO)) log(LogLevel.INFO, format, args);
+    }
+
+    public static void w(String format, Object... args) {
+        if (isEnabled(LogLevel.WARN)) log(LogLevel.WARN, format, args);
+    }
+
+    public static void e(String format, Object... args) {
+        if (isEnabled(LogLevel.ERROR)) log(LogLevel.ERROR, format, args);
+    }
+
+    public static void log(LogLevel level, String format, Object[] args) {
+        if (!isEnabled(level)) return;
+        long seq = ring.nextSeq();
+        ring.publish(new LogRecord(seq, System.currentTimeMillis(), level, format, args));
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(FitLog::flush, level == LogLevel.ERROR ? 0 : FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private static void flush() {
+        flushScheduled.set(false);
+        List<LogRecord> records = new ArrayList<>();
+        while (ring.drain(records, MAX_DRAIN) > 0) {
+            write(records);
+            records.clear();
+        }
+        // Records published while draining schedule their own flush
+    }
+
+    private static void write(List<LogRecord> records) {
+        MappedLogFile currentFile = file;
+        SimpleDateFormat timeFormat = currentFile == null ? null : new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        for (LogRecord record : records) {
+            Log.println(record.level.priority, TAG, record.getMessage());
+            if (currentFile != null) {
+                currentFile.append(timeFormat.format(new Date(record.timestamp)) + " " + record.level.name().charAt(0) + " " + record.getMessage());
+            }
+        }
+
+        Consumer<List<LogRecord>> sink = jsSink;
+        if (sink != null) {
+            if (records.size() > MAX_JS_BATCH) {
+                jsDropped.addAndGet(records.size() - MAX_JS_BATCH);
+                records = records.subList(records.size() - MAX_JS_BATCH, records.size());
+            }
+            try {
+                sink.accept(new ArrayList<>(records));
+            }
+            catch (Exception e) {
+                Log.w(TAG, "Could not send logs to JS: " + e.getMessage());
+            }
+        }
+    }
+}
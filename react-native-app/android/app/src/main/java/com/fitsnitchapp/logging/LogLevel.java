@@ -0,0 +1,18 @@
+package com.fitsnitchapp.logging;
+
+import android.util.Log;
+
+public enum LogLevel {
+    VERBOSE(Log.VERBOSE),
+    DEBUG(Log.DEBUG),
+    INFO(Log.INFO),
+    WARN(Log.WARN),
+    ERROR(Log.ERROR);
+
+    /** Matching android.util.Log priority */
+    public final int priority;
+
+    LogLevel(int priority) {
+        this.priority = priority;
+    }
+}
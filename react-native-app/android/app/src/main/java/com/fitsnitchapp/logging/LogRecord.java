@@ -0,0 +1,41 @@
+package com.fitsnitchapp.logging;
+
+import java.util.Locale;
+
+/**
+ * One log call. The message is only formatted when the record is drained,
+ * off the thread that logged it.
+ */
+public final class LogRecord {
+    final long seq;
+    public final long timestamp;
+    public final LogLevel level;
+    private final String format;
+    private final Object[] args;
+    private String message;
+
+    LogRecord(long seq, long timestamp, LogLevel level, String format, Object[] args) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.level = level;
+        this.format = format;
+        this.args = args;
+    }
+
+    public String getMessage() {
+        if (message == null) {
+            if (args == null || args.length == 0) {
+                message = format;
+            }
+            else {
+                try {
+                    message = String.format(Locale.US, format, args);
+                }
+                catch (Exception e) {
+                    message = format;
+                }
+            }
+        }
+        return message;
+    }
+}
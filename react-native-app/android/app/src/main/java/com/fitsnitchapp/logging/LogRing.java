@@ -0,0 +1,74 @@
+package com.fitsnitchapp.logging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of log records. Any number of threads may write without
+ * locking; a single thread drains. When writers lap the reader, the oldest
+ * records are dropped and counted.
+ */
+final class LogRing {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<LogRecord> slots;
+    private final AtomicLong head = new AtomicLong();
+    // Only touched by the draining thread
+    private long tail = 0;
+    private long dropped = 0;
+
+    /**
+     * @param capacity Must be a power of two
+     */
+    LogRing(int capacity) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    long nextSeq() {
+        return head.getAndIncrement();
+    }
+
+    void publish(LogRecord record) {
+        slots.set((int) (record.seq & mask), record);
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail;
+    }
+
+    /**
+     * Moves up to max published records into out, oldest first.
+     */
+    int drain(List<LogRecord> out, int max) {
+        long h = head.get();
+        if (h - tail > capacity) {
+            dropped += h - capacity - tail;
+            tail = h - capacity;
+        }
+        int count = 0;
+        while (tail < h && count < max) {
+            LogRecord record = slots.get((int) (tail & mask));
+            if (record == null || record.seq < tail) {
+                // Claimed but not yet published
+                break;
+            }
+            if (record.seq > tail) {
+                // Overwritten by a newer lap while draining
+                dropped++;
+                tail++;
+                continue;
+            }
+            out.add(record);
+            tail++;
+            count++;
+        }
+        return count;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+}
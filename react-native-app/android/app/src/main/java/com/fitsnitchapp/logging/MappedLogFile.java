@@ -0,0 +1,72 @@
+package com.fitsnitchapp.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Circular log file written through a memory mapping. Writes go straight
+ * to the page cache, so the tail of the log survives the process being
+ * killed without any explicit flush.
+ *
+ * Layout: [int write position][int wrapped flag][text...]
+ */
+final class MappedLogFile {
+    static final int SIZE = 256 * 1024;
+    private static final int HEADER = 8;
+
+    private final MappedByteBuffer buffer;
+    private int position;
+    private boolean wrapped;
+
+    MappedLogFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // The mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        }
+        position = buffer.getInt(0);
+        wrapped = buffer.getInt(4) == 1;
+        if (position < HEADER || position > SIZE) {
+            position = HEADER;
+            wrapped = false;
+        }
+    }
+
+    synchronized void append(String line) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, SIZE - HEADER);
+        if (position + length > SIZE) {
+            for (int i = position; i < SIZE; i++) buffer.put(i, (byte) 0);
+            position = HEADER;
+            wrapped = true;
+        }
+        buffer.position(position);
+        buffer.put(bytes, 0, length);
+        position += length;
+        buffer.putInt(0, position);
+        buffer.putInt(4, wrapped ? 1 : 0);
+    }
+
+    /**
+     * @return The whole retained log, oldest line first
+     */
+    synchronized String read() {
+        StringBuilder text = new StringBuilder();
+        if (wrapped) {
+            int end = SIZE;
+            while (end > position && buffer.get(end - 1) == 0) end--;
+            text.append(decode(position, end));
+        }
+        text.append(decode(HEADER, position));
+        return text.toString();
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(from + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package com.fitsnitchapp.outbox;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.fitsnitchapp.api.ApiService;
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.api.SnitchBatchRequest;
+import com.fitsnitchapp.api.SnitchBatchResponse;
+import com.fitsnitchapp.location_loop.LoopMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.RetrofitError;
+
+/**
+ * Drains the SnitchOutbox in batches once the device has a network.
+ * Failed batches are retried by WorkManager with exponential backoff.
+ *
+ * A snitch the server keeps refusing is dropped after MAX_ATTEMPTS, so it
+ * can't hold up the ones queued behind it. A batch the server rejects as
+ * malformed (400 or 422) is sent again one snitch at a time, and the
+ * snitches rejected on their own are dropped straight away. Network
+ * errors, and answers that say nothing about the snitches themselves,
+ * like an expired login or a server without the route yet, are retried
+ * without counting as attempts.
+ */
+public class SnitchDeliveryWorker extends Worker {
+    private static final String WORK_NAME = "FIT_SNITCH_DELIVERY";
+    private static final int MAX_BATCH = 25;
+    private static final long INITIAL_BACKOFF = 30; // seconds
+    /** Answers from the server a snitch may fail to be accepted in before it is dropped */
+    public static final int MAX_ATTEMPTS = 10;
+
+    public SnitchDeliveryWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules delivery of whatever is in the outbox.
+     * @param immediate Replace any pending (possibly backed off) delivery with a new one.
+     * Safe even if a delivery is in flight, since snitches are deduplicated by id.
+     */
+    public static void enqueue(Context context, boolean immediate) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SnitchDeliveryWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                WORK_NAME,
+                immediate ? ExistingWorkPolicy.REPLACE : ExistingWorkPolicy.KEEP,
+                request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SnitchOutbox outbox = SnitchOutbox.getInstance(getApplicationContext());
+        List<CreateSnitchRequest> batch;
+        int batchSize = MAX_BATCH;
+        while (!(batch = outbox.peekBatch(batchSize)).isEmpty()) {
+            if (isStopped()) return Result.retry();
+
+            SnitchBatchResponse response;
+            long start = System.currentTimeMillis();
+            try {
+                response = ApiService.getClient().publishSnitchBatch(new SnitchBatchRequest(batch));
+                LoopMetrics.recordApiCall(LoopMetrics.SNITCH_BATCH_RTT, start, false);
+            }
+            catch (RetrofitError e) {
+                LoopMetrics.recordApiCall(LoopMetrics.SNITCH_BATCH_RTT, start, true);
+                JsLog("Could not deliver " + batch.size() + " snitches: " + e.getMessage());
+                if (isRejected(e)) {
+                    if (batch.size() > 1) {
+                        // Find the snitches the server refuses by sending them alone
+                        batchSize = 1;
+                    }
+                    else {
+                        outbox.drop(batch);
+                        batchSize = MAX_BATCH;
+                    }
+                    continue;
+                }
+                if (!e.isNetworkError() && !isUnavailable(e)) outbox.markFailed(batch, MAX_ATTEMPTS);
+                return Result.retry();
+            }
+
+            if (response == null || response.accepted == null) {
+                outbox.markFailed(batch, MAX_ATTEMPTS);
+                return Result.retry();
+            }
+            outbox.markDelivered(response.accepted);
+            JsLog("Delivered " + response.accepted.size() + " of " + batch.size() + " snitches");
+            if (response.accepted.size() < batch.size()) {
+                outbox.markFailed(notAccepted(batch, response.accepted), MAX_ATTEMPTS);
+                return Result.retry();
+            }
+        }
+        return Result.success();
+    }
+
+    /**
+     * Whether the server refused the payload itself, so sending it again
+     * as it is can't help.
+     */
+    private static boolean isRejected(RetrofitError e) {
+        int status = httpStatus(e);
+        return status == 400 || status == 422;
+    }
+
+    /**
+     * Whether the request couldn't be handled for reasons unrelated to the
+     * snitches, which go away once the login or the server is fixed.
+     */
+    private static boolean isUnavailable(RetrofitError e) {
+        int status = httpStatus(e);
+        return status == 401 || status == 403 || status == 404 || status == 405;
+    }
+
+    /** @return The HTTP status of the error, or 0 if there was no answer */
+    private static int httpStatus(RetrofitError e) {
+        if (e.getKind() != RetrofitError.Kind.HTTP || e.getResponse() == null) return 0;
+        return e.getResponse().getStatus();
+    }
+
+    private static List<CreateSnitchRequest> notAccepted(List<CreateSnitchRequest> batch, Collection<String> accepted) {
+        Set<String> ids = new HashSet<>(accepted);
+        List<CreateSnitchRequest> rest = new ArrayList<>();
+        for (CreateSnitchRequest snitch : batch) {
+            if (!ids.contains(snitch.snitchId)) rest.add(snitch);
+        }
+        return rest;
+    }
+}
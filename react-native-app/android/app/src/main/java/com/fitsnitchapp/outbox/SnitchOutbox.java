@@ -0,0 +1,190 @@
+package com.fitsnitchapp.outbox;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.Context;
+
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.codec.ApiTypeAdapters;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable on-device queue of snitches that still need to reach the server.
+ *
+ * A snitch is written (and synced to disk) here before the user is told they
+ * were snitched on, and is only removed once the server has acknowledged its
+ * id. SnitchDeliveryWorker drains the outbox in batches.
+ */
+public class SnitchOutbox {
+    private static final String FILE_NAME = "snitch_outbox.json";
+
+    private static SnitchOutbox _instance;
+
+    private final File file;
+    private final Gson gson = ApiTypeAdapters.createGson();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private long delivered = 0;
+    private long failedAttempts = 0;
+    private long dropped = 0;
+
+    private SnitchOutbox(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    public static synchronized SnitchOutbox getInstance(Context context) {
+        if (_instance == null) {
+            _instance = new SnitchOutbox(context.getApplicationContext());
+        }
+        return _instance;
+    }
+
+    /**
+     * Adds a snitch and blocks until it is on disk.
+     * Adding the same snitch id twice has no effect.
+     */
+    public synchronized void add(CreateSnitchRequest snitch) {
+        if (entries.containsKey(snitch.snitchId)) return;
+        entries.put(snitch.snitchId, new Entry(snitch, System.currentTimeMillis()));
+        save();
+    }
+
+    /**
+     * @return Up to max of the oldest queued snitches
+     */
+    public synchronized List<CreateSnitchRequest> peekBatch(int max) {
+        List<CreateSnitchRequest> batch = new ArrayList<>(Math.min(max, entries.size()));
+        for (Entry entry : entries.values()) {
+            if (batch.size() >= max) break;
+            batch.add(entry.snitch);
+        }
+        return batch;
+    }
+
+    public synchronized void markDelivered(Collection<String> ids) {
+        int before = entries.size();
+        for (String id : ids) {
+            entries.remove(id);
+        }
+        delivered += before - entries.size();
+        if (entries.size() != before) save();
+    }
+
+    /**
+     * Counts a failed attempt for each snitch, and drops those that have
+     * now failed maxAttempts times.
+     */
+    public synchronized void markFailed(Collection<CreateSnitchRequest> batch, int maxAttempts) {
+        failedAttempts++;
+        List<CreateSnitchRequest> exhausted = new ArrayList<>();
+        for (CreateSnitchRequest snitch : batch) {
+            Entry entry = entries.get(snitch.snitchId);
+            if (entry != null && ++entry.attempts >= maxAttempts) exhausted.add(snitch);
+        }
+        if (!exhausted.isEmpty()) drop(exhausted);
+        else save();
+    }
+
+    /**
+     * Removes snitches the server will never accept, so they stop holding
+     * up the rest of the queue.
+     */
+    public synchronized void drop(Collection<CreateSnitchRequest> snitches) {
+        for (CreateSnitchRequest snitch : snitches) {
+            Entry entry = entries.remove(snitch.snitchId);
+            if (entry == null) continue;
+            dropped++;
+            JsLog("Dropping undeliverable snitch " + snitch.snitchId + " after " + entry.attempts + " attempts");
+        }
+        save();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", entries.size());
+        stats.put("delivered", delivered);
+        stats.put("failedAttempts", failedAttempts);
+        stats.put("dropped", dropped);
+        long oldest = 0;
+        for (Entry entry : entries.values()) {
+            oldest = entry.enqueuedAt;
+            break;
+        }
+        stats.put("oldestEnqueuedAt", oldest);
+        return stats;
+    }
+
+
+    /**
+     * Writes to a temp file, syncs it, then swaps it in, so a crash mid-write
+     * never leaves a truncated outbox behind.
+     */
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(new ArrayList<>(entries.values()), writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        catch (IOException e) {
+            JsLog("Could not save snitch outbox: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            JsLog("Could not replace snitch outbox file");
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (Reader reader = new FileReader(file)) {
+            List<Entry> persisted = gson.fromJson(reader, new TypeToken<List<Entry>>(){}.getType());
+            if (persisted == null) return;
+            Set<String> seen = new HashSet<>();
+            for (Entry entry : persisted) {
+                if (entry.snitch == null || !seen.add(entry.snitch.snitchId)) continue;
+                entries.put(entry.snitch.snitchId, entry);
+            }
+            JsLog("Loaded " + entries.size() + " undelivered snitches");
+        }
+        catch (Exception e) {
+            JsLog("Could not load snitch outbox: " + e.getMessage());
+        }
+    }
+
+
+    private static class Entry {
+        CreateSnitchRequest snitch;
+        long enqueuedAt;
+        int attempts;
+
+        Entry(CreateSnitchRequest snitch, long enqueuedAt) {
+            this.snitch = snitch;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
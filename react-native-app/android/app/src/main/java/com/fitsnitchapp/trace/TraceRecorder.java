@@ -0,0 +1,225 @@
+package com.fitsnitchapp.trace;
+
+import static com.fitsnitchapp.LocationModule.JsLog;
+
+import android.content.Context;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.location_loop.Fix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in recorder of everything the location loop sees and decides: fixes,
+ * state changes, restaurant checks and scheduled ticks.
+ *
+ * Records are appended to a ring of memory-mapped segment files, so the
+ * trace survives the process being killed and never grows past
+ * SEGMENTS * SEGMENT_SIZE. When a segment fills up the oldest one is
+ * started over. Recording does no I/O of its own and allocates nothing
+ * for fixes, so it can be left on.
+ *
+ * An exported trace can be replayed by the loop simulator.
+ */
+public class TraceRecorder {
+    private static final TraceRecorder _instance = new TraceRecorder();
+    private static final String DIR_NAME = "trace";
+    public static final int SEGMENTS = 4;
+    public static final int SEGMENT_SIZE = 128 * 1024;
+
+    private volatile boolean enabled = false;
+    private MappedByteBuffer[] segments;
+    private int current;
+    private TraceEncoder encoder;
+    private long records = 0;
+    private long rotations = 0;
+
+    private TraceRecorder() {}
+
+    public static TraceRecorder getInstance() {
+        return _instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Maps the segment files and starts a new segment over the oldest one.
+     * Segments from earlier runs are kept until they are rotated over.
+     */
+    public synchronized void enable(Context context) {
+        if (enabled) return;
+        File dir = new File(context.getFilesDir(), DIR_NAME);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            JsLog("Could not create trace directory");
+            return;
+        }
+        try {
+            segments = new MappedByteBuffer[SEGMENTS];
+            for (int i = 0; i < SEGMENTS; i++) {
+                try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "seg" + i + ".bin"), "rw")) {
+                    segments[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+                }
+            }
+        }
+        catch (IOException e) {
+            JsLog("Could not map trace segments: " + e.getMessage());
+            segments = null;
+            return;
+        }
+        current = oldestSegment();
+        encoder = new TraceEncoder(segments[current], System.currentTimeMillis());
+        enabled = true;
+        JsLog("Trace recording enabled");
+    }
+
+    public synchronized void disable() {
+        if (!enabled) return;
+        enabled = false;
+        for (MappedByteBuffer segment : segments) segment.force();
+        JsLog("Trace recording disabled");
+    }
+
+    public void fix(Fix fix) {
+        if (!enabled) return;
+        synchronized (this) {
+            if (!encoder.fix(fix.time, fix.lat, fix.lon, fix.accuracy, fix.speed)) {
+                rotate(fix.time);
+                encoder.fix(fix.time, fix.lat, fix.lon, fix.accuracy, fix.speed);
+            }
+            records++;
+        }
+    }
+
+    public void state(String name) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!encoder.state(now, name)) {
+                rotate(now);
+                encoder.state(now, name);
+            }
+            records++;
+        }
+    }
+
+    /**
+     * @param source One of the TraceFormat.SOURCE_ constants
+     */
+    public void check(LatLonPair location, long latency, int source, String restaurant) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!encoder.check(now, location.lat, location.lon, latency, source, restaurant)) {
+                rotate(now);
+                encoder.check(now, location.lat, location.lon, latency, source, restaurant);
+            }
+            records++;
+        }
+    }
+
+    public void schedule(long delay, String stateName) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!encoder.schedule(now, delay, stateName)) {
+                rotate(now);
+                encoder.schedule(now, delay, stateName);
+            }
+            records++;
+        }
+    }
+
+    /**
+     * Writes every retained segment, oldest first, to a single file in the
+     * cache directory.
+     * @return The file's path, or null if there is nothing to export
+     */
+    public synchronized String export(Context context) {
+        File dir = new File(context.getFilesDir(), DIR_NAME);
+        List<MappedByteBuffer> retained = new ArrayList<>();
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) retained.add(segment);
+        }
+        else {
+            // Not recording - read what an earlier run left behind
+            for (int i = 0; i < SEGMENTS; i++) {
+                File file = new File(dir, "seg" + i + ".bin");
+                if (!file.exists()) continue;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    retained.add(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+                }
+                catch (IOException e) {
+                    JsLog("Could not read trace segment: " + e.getMessage());
+                }
+            }
+        }
+        retained.removeIf(segment -> TraceFormat.usedLength(segment) <= TraceFormat.HEADER_SIZE);
+        if (retained.isEmpty()) return null;
+        retained.sort((a, b) -> Long.compare(TraceFormat.baseTime(a), TraceFormat.baseTime(b)));
+
+        File out = new File(context.getCacheDir(), "trace-" + System.currentTimeMillis() + ".fstr");
+        try (OutputStream stream = new FileOutputStream(out)) {
+            for (MappedByteBuffer segment : retained) {
+                byte[] bytes = new byte[TraceFormat.usedLength(segment)];
+                ByteBuffer view = segment.duplicate();
+                view.clear();
+                view.get(bytes);
+                stream.write(bytes);
+            }
+        }
+        catch (IOException e) {
+            JsLog("Could not export trace: " + e.getMessage());
+            return null;
+        }
+        return out.getPath();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("records", records);
+        stats.put("rotations", rotations);
+        stats.put("capacityBytes", SEGMENTS * SEGMENT_SIZE);
+        int used = 0;
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) used += TraceFormat.usedLength(segment);
+        }
+        stats.put("usedBytes", used);
+        stats.put("segmentBytes", encoder == null ? 0 : encoder.usedBytes());
+        stats.put("segmentRecords", encoder == null ? 0 : encoder.getRecords());
+        return stats;
+    }
+
+
+    /**
+     * Starts over the next segment in the ring. Records are bounded in
+     * size, so the record that didn't fit always fits in a new segment.
+     */
+    private void rotate(long time) {
+        current = (current + 1) % SEGMENTS;
+        encoder = new TraceEncoder(segments[current], time);
+        rotations++;
+    }
+
+    private int oldestSegment() {
+        int oldest = 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            if (TraceFormat.usedLength(segments[i]) == 0) return i;
+            if (TraceFormat.baseTime(segments[i]) < TraceFormat.baseTime(segments[oldest])) oldest = i;
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,78 @@
+package com.fitsnitchapp.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the recorded traces and API responses in src/jmh/resources/fixtures.
+ *
+ * Traces are CSV with a header row: time,lat,lon,accuracy,speed
+ */
+public final class Fixtures {
+    public static final String TRACE_WALK = "trace_walk.csv";
+    public static final String TRACE_DRIVE = "trace_drive.csv";
+    public static final String RESTAURANTS_IN_AREA = "restaurants_in_area.json";
+    public static final String CHECK_LOCATION_HIT = "check_location_hit.json";
+
+    private Fixtures() {}
+
+    public static final class Fix {
+        public final long time;
+        public final double lat;
+        public final double lon;
+        public final float accuracy;
+        public final float speed;
+
+        Fix(long time, double lat, double lon, float accuracy, float speed) {
+            this.time = time;
+            this.lat = lat;
+            this.lon = lon;
+            this.accuracy = accuracy;
+            this.speed = speed;
+        }
+    }
+
+    public static List<Fix> loadTrace(String name) {
+        List<Fix> fixes = new ArrayList<>();
+        try (BufferedReader reader = open(name)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] cols = line.split(",");
+                fixes.add(new Fix(
+                        Long.parseLong(cols[0]),
+                        Double.parseDouble(cols[1]),
+                        Double.parseDouble(cols[2]),
+                        Float.parseFloat(cols[3]),
+                        Float.parseFloat(cols[4])));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fixes;
+    }
+
+    public static String loadText(String name) {
+        try (BufferedReader reader = open(name)) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BufferedReader open(String name) {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) throw new IllegalArgumentException("No fixture named " + name);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package com.fitsnitchapp.benchmarks;
+
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.GeoMath;
+import com.fitsnitchapp.location_loop.MovementFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The movement checks run on every fix: the old raw-degree check, the
+ * MovementFilter that replaced it, and the meter distances used by the
+ * interval policy and snitch warning.
+ * Each invocation walks a whole trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationChangeBenchmark {
+    /** Same as LocationLoop.SIGNIFICANT_RADIUS */
+    private static final double SIGNIFICANT_RADIUS = 0.00001f;
+
+    @Param({Fixtures.TRACE_WALK, Fixtures.TRACE_DRIVE})
+    public String trace;
+
+    private double[] lats;
+    private double[] lons;
+    private Fix[] fixes;
+
+    @Setup
+    public void setup() {
+        List<Fixtures.Fix> fixes = Fixtures.loadTrace(trace);
+        lats = new double[fixes.size()];
+        lons = new double[fixes.size()];
+        this.fixes = new Fix[fixes.size()];
+        for (int i = 0; i < fixes.size(); i++) {
+            Fixtures.Fix fix = fixes.get(i);
+            lats[i] = fix.lat;
+            lons[i] = fix.lon;
+            this.fixes[i] = new Fix(fix.lat, fix.lon, fix.time, fix.accuracy, fix.speed);
+        }
+    }
+
+    /** Mirrors the loop: the saved location only moves on a significant change */
+    @Benchmark
+    public int didLocationChange() {
+        int changes = 0;
+        int saved = 0;
+        for (int i = 1; i < lats.length; i++) {
+            if (GeoMath.degreesBetween(lats[saved], lons[saved], lats[i], lons[i]) >= SIGNIFICANT_RADIUS) {
+                saved = i;
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /** One decision per fix, as when every fix is its own tick */
+    @Benchmark
+    public int movementFilter() {
+        MovementFilter filter = new MovementFilter();
+        int changes = 0;
+        for (Fix fix : fixes) {
+            filter.add(fix);
+            if (filter.decide()) changes++;
+        }
+        return changes;
+    }
+
+    @Benchmark
+    public double metersBetween() {
+        double total = 0;
+        for (int i = 1; i < lats.length; i++) {
+            total += GeoMath.metersBetween(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+        return total;
+    }
+}
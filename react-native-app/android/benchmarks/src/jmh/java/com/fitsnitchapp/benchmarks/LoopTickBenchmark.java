@@ -0,0 +1,92 @@
+package com.fitsnitchapp.benchmarks;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.LocationLoop;
+import com.fitsnitchapp.location_loop.LoopClock;
+import com.fitsnitchapp.location_loop.LoopListener;
+import com.fitsnitchapp.location_loop.LoopScheduler;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.fitsnitchapp.location_loop.RestaurantResolver;
+import com.fitsnitchapp.location_loop.RestaurantRules;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One full tick of the state machine: movement check, state handling,
+ * restaurant resolution, state transitions and the interval decision.
+ * Fixes cycle through the walking trace, which visits a restaurant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoopTickBenchmark {
+    private Fix[] fixes;
+    private int next;
+    private LocationLoop loop;
+
+    @Setup
+    public void setup() {
+        List<Fixtures.Fix> trace = Fixtures.loadTrace(Fixtures.TRACE_WALK);
+        fixes = new Fix[trace.size()];
+        for (int i = 0; i < fixes.length; i++) {
+            Fixtures.Fix f = trace.get(i);
+            fixes[i] = new Fix(f.lat, f.lon, f.time, f.accuracy, f.speed);
+        }
+        RestaurantsInAreaResponse area = new Gson().fromJson(Fixtures.loadText(Fixtures.RESTAURANTS_IN_AREA), RestaurantsInAreaResponse.class);
+        RestaurantIndex index = new RestaurantIndex(area.center, area.radius, area.restaurants, 0);
+
+        RestaurantResolver resolver = new RestaurantResolver() {
+            @Override
+            public void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb) {
+                cb.accept(RestaurantRules.resolve(index.query(location, RestaurantRules.SEARCH_RADIUS), location));
+            }
+
+            @Override
+            public double nearestRestaurantMeters(LatLonPair location) {
+                return RestaurantRules.nearestRestaurantMeters(index, location);
+            }
+        };
+        LoopScheduler scheduler = new LoopScheduler() {
+            @Override
+            public void schedule(long delay, String stateName) {}
+
+            @Override
+            public void cancel() {}
+        };
+        LoopClock clock = new LoopClock() {
+            @Override
+            public long currentTimeMillis() {
+                return fixes[Math.max(0, next - 1)].time;
+            }
+
+            @Override
+            public int hourOfDay() {
+                return 12;
+            }
+        };
+        loop = new LocationLoop(clock, scheduler, onFix -> onFix.accept(fixes[next]), resolver, new LoopListener() {});
+        loop.start();
+    }
+
+    @Benchmark
+    public Object tick() {
+        Fix fix = fixes[next];
+        next = (next + 1) % fixes.length;
+        loop.handleNewFix(fix);
+        return loop.getLoopState();
+    }
+}
@@ -0,0 +1,58 @@
+package com.fitsnitchapp.benchmarks;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the local restaurant index from a restaurants-in-area response,
+ * and querying it for every fix of a trace as local checks do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RestaurantIndexBenchmark {
+    /** Same as LocalRestaurantResolver.SEARCH_RADIUS */
+    private static final double SEARCH_RADIUS = 0.00015;
+
+    private RestaurantsInAreaResponse area;
+    private RestaurantIndex index;
+    private LatLonPair[] points;
+
+    @Setup
+    public void setup() {
+        area = new Gson().fromJson(Fixtures.loadText(Fixtures.RESTAURANTS_IN_AREA), RestaurantsInAreaResponse.class);
+        index = buildIndex();
+        List<Fixtures.Fix> fixes = Fixtures.loadTrace(Fixtures.TRACE_WALK);
+        points = new LatLonPair[fixes.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new LatLonPair(fixes.get(i).lat, fixes.get(i).lon);
+        }
+    }
+
+    @Benchmark
+    public RestaurantIndex buildIndex() {
+        return new RestaurantIndex(area.center, area.radius, area.restaurants, 0);
+    }
+
+    @Benchmark
+    public int queryTrace() {
+        int found = 0;
+        for (LatLonPair point : points) {
+            found += index.query(point, SEARCH_RADIUS).size();
+        }
+        return found;
+    }
+}
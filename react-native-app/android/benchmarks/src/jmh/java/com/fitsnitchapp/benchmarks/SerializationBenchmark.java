@@ -0,0 +1,123 @@
+package com.fitsnitchapp.benchmarks;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.CheckLocationRequest;
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.api.SnitchBatchRequest;
+import com.fitsnitchapp.codec.ApiTypeAdapters;
+import com.fitsnitchapp.codec.WireCodec;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the request bodies Retrofit sends each tick, and decoding of
+ * the responses it gets back: reflective Gson, Gson with the streaming type
+ * adapters the app now uses, and the wire format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+    private final Gson gson = new Gson();
+    private final Gson adapterGson = ApiTypeAdapters.createGson();
+
+    private CheckLocationRequest checkRequest;
+    private CreateSnitchRequest snitchRequest;
+    private SnitchBatchRequest snitchBatch;
+    private String checkResponseJson;
+    private String areaResponseJson;
+    private byte[] checkResponseWire;
+
+    @Setup
+    public void setup() {
+        LatLonPair location = new LatLonPair(34.0612, -118.2317);
+        Restaurant restaurant = new Restaurant("Burger Barn", new LatLonPair(34.0612, -118.2317));
+        checkRequest = new CheckLocationRequest(location);
+        snitchRequest = new CreateSnitchRequest(UUID.randomUUID().toString(), "user-1", location, restaurant);
+
+        List<CreateSnitchRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(new CreateSnitchRequest(UUID.randomUUID().toString(), "user-1", location, restaurant));
+        }
+        snitchBatch = new SnitchBatchRequest(batch);
+
+        checkResponseJson = Fixtures.loadText(Fixtures.CHECK_LOCATION_HIT);
+        areaResponseJson = Fixtures.loadText(Fixtures.RESTAURANTS_IN_AREA);
+        checkResponseWire = WireCodec.encode(gson.fromJson(checkResponseJson, CheckLocationResponse.class));
+    }
+
+    @Benchmark
+    public String encodeCheckLocationRequest() {
+        return gson.toJson(checkRequest);
+    }
+
+    @Benchmark
+    public String encodeCreateSnitchRequest() {
+        return gson.toJson(snitchRequest);
+    }
+
+    @Benchmark
+    public String encodeSnitchBatch() {
+        return gson.toJson(snitchBatch);
+    }
+
+    @Benchmark
+    public CheckLocationResponse decodeCheckLocationResponse() {
+        return gson.fromJson(checkResponseJson, CheckLocationResponse.class);
+    }
+
+    @Benchmark
+    public RestaurantsInAreaResponse decodeRestaurantsInArea() {
+        return gson.fromJson(areaResponseJson, RestaurantsInAreaResponse.class);
+    }
+
+    @Benchmark
+    public String encodeCheckLocationRequestAdapters() {
+        return adapterGson.toJson(checkRequest);
+    }
+
+    @Benchmark
+    public byte[] encodeCheckLocationRequestWire() {
+        return WireCodec.encode(checkRequest);
+    }
+
+    @Benchmark
+    public String encodeSnitchBatchAdapters() {
+        return adapterGson.toJson(snitchBatch);
+    }
+
+    @Benchmark
+    public byte[] encodeSnitchBatchWire() {
+        return WireCodec.encode(snitchBatch);
+    }
+
+    @Benchmark
+    public CheckLocationResponse decodeCheckLocationResponseAdapters() {
+        return adapterGson.fromJson(checkResponseJson, CheckLocationResponse.class);
+    }
+
+    @Benchmark
+    public Object decodeCheckLocationResponseWire() {
+        return WireCodec.decode(CheckLocationResponse.class, checkResponseWire);
+    }
+
+    @Benchmark
+    public RestaurantsInAreaResponse decodeRestaurantsInAreaAdapters() {
+        return adapterGson.fromJson(areaResponseJson, RestaurantsInAreaResponse.class);
+    }
+}
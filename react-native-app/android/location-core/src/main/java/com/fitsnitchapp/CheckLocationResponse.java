@@ -0,0 +1,25 @@
+package com.fitsnitchapp;
+
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+
+public class CheckLocationResponse {
+    public Restaurant restaurant;
+    public boolean isRestaurant;
+    /**
+     * Every restaurant around the location, best match first, and the area
+     * in which they are all there is. Any location whose check falls inside
+     * that area resolves the same from these as on the server. Null from
+     * servers that don't send them.
+     */
+    public RestaurantsInAreaResponse candidates;
+
+    public CheckLocationResponse (Restaurant restaurant, boolean isRestaurant) {
+        this(restaurant, isRestaurant, null);
+    }
+
+    public CheckLocationResponse (Restaurant restaurant, boolean isRestaurant, RestaurantsInAreaResponse candidates) {
+        this.restaurant = restaurant;
+        this.isRestaurant = isRestaurant;
+        this.candidates = candidates;
+    }
+}
@@ -1,7 +1,5 @@
 package com.fitsnitchapp;
 
-import android.location.Location;
-
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,8 +11,4 @@ public class LatLonPair {
         this.lat = lat;
         this.lon = lon;
     }
-
-    public static LatLonPair fromLocation(Location loc) {
-        return new LatLonPair(loc.getLatitude(), loc.getLongitude());
-    }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.fitsnitchapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Restaurant {
+    /** Degrees two locations may differ by and still be the same place, about 10cm */
+    private static final double SAME_LOCATION = 1e-6;
+
+    /** Stable id of the place, like "way/123456", or null if the server didn't send one */
+    public String id;
+    public String name;
+    public LatLonPair location;
+
+    public Restaurant(String name, LatLonPair location) {
+        this(null, name, location);
+    }
+
+    public Restaurant(String id, String name, LatLonPair location) {
+        this.id = id;
+        this.name = name;
+        this.location = location;
+    }
+
+    /**
+     * Compares ids when both restaurants have one. Otherwise they must share
+     * a name and location, so two branches of a chain next to each other are
+     * still told apart.
+     */
+    public boolean isSamePlace(Restaurant other) {
+        if (other == null) return false;
+        if (id != null && other.id != null) return id.equals(other.id);
+        if (name == null ? other.name != null : !name.equals(other.name)) return false;
+        if (location == null || other.location == null) return location == other.location;
+        return Math.abs(location.lat - other.location.lat) <= SAME_LOCATION
+                && Math.abs(location.lon - other.location.lon) <= SAME_LOCATION;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.fitsnitchapp;
+
+import java.util.List;
+
+/**
+ * Restaurant data as returned by the places API, before it has been
+ * resolved to a single pin. Either the pin or the boundary may be missing.
+ */
+public class RestaurantDetails {
+    /** Stable id of the place, or null if the server didn't send one */
+    public String id;
+    public String name;
+    public LatLonPair pinLocation;
+    public List<LatLonPair> boundary;
+
+    public RestaurantDetails(String name, LatLonPair pinLocation, List<LatLonPair> boundary) {
+        this(null, name, pinLocation, boundary);
+    }
+
+    public RestaurantDetails(String id, String name, LatLonPair pinLocation, List<LatLonPair> boundary) {
+        this.id = id;
+        this.name = name;
+        this.pinLocation = pinLocation;
+        this.boundary = boundary;
+    }
+
+    public boolean hasBoundary() {
+        return boundary != null && boundary.size() > 2;
+    }
+}
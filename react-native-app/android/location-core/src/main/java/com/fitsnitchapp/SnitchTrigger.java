@@ -1,11 +1,16 @@
 package com.fitsnitchapp;
 
+import java.util.UUID;
+
 public class SnitchTrigger {
+    /** Idempotency key, so a snitch retried by the outbox is only created once */
+    public String id;
     public long created_at;
     public LatLonPair originCoords;
     public Restaurant restaurantData;
 
     public SnitchTrigger(long created_at, LatLonPair coords, Restaurant restaurantData) {
+        this.id = UUID.randomUUID().toString();
         this.created_at = created_at;
         this.originCoords = coords;
         this.restaurantData = restaurantData;
@@ -4,11 +4,13 @@ import com.fitsnitchapp.LatLonPair;
 import com.fitsnitchapp.Restaurant;
 
 public class CreateSnitchRequest {
+    public String snitchId;
     public String userId;
     public LatLonPair originCoords;
     public Restaurant restaurantData;
 
-    public CreateSnitchRequest(String userId, LatLonPair coords, Restaurant restaurantData) {
+    public CreateSnitchRequest(String snitchId, String userId, LatLonPair coords, Restaurant restaurantData) {
+        this.snitchId = snitchId;
         this.userId = userId;
         this.originCoords = coords;
         this.restaurantData = restaurantData;
@@ -0,0 +1,13 @@
+package com.fitsnitchapp.api;
+
+import com.fitsnitchapp.LatLonPair;
+
+public class RestaurantsInAreaRequest {
+    public LatLonPair location;
+    public double radius;
+
+    public RestaurantsInAreaRequest(LatLonPair location, double radius) {
+        this.location = location;
+        this.radius = radius;
+    }
+}
@@ -0,0 +1,18 @@
+package com.fitsnitchapp.api;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.RestaurantDetails;
+
+import java.util.List;
+
+public class RestaurantsInAreaResponse {
+    public LatLonPair center;
+    public double radius;
+    public List<RestaurantDetails> restaurants;
+
+    public RestaurantsInAreaResponse(LatLonPair center, double radius, List<RestaurantDetails> restaurants) {
+        this.center = center;
+        this.radius = radius;
+        this.restaurants = restaurants;
+    }
+}
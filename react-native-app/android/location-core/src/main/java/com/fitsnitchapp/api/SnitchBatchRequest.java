@@ -0,0 +1,11 @@
+package com.fitsnitchapp.api;
+
+import java.util.List;
+
+public class SnitchBatchRequest {
+    public List<CreateSnitchRequest> snitches;
+
+    public SnitchBatchRequest(List<CreateSnitchRequest> snitches) {
+        this.snitches = snitches;
+    }
+}
@@ -0,0 +1,8 @@
+package com.fitsnitchapp.api;
+
+import java.util.List;
+
+public class SnitchBatchResponse {
+    /** Ids of the snitches the server has stored, including ones it already had */
+    public List<String> accepted;
+}
@@ -0,0 +1,15 @@
+package com.fitsnitchapp.api;
+
+import java.util.List;
+
+public class TrajectoryCheckRequest {
+    /** Oldest first */
+    public List<TrajectoryPoint> points;
+    /** How long the trailing run must last to count as dwelling */
+    public long minDwellMillis;
+
+    public TrajectoryCheckRequest(List<TrajectoryPoint> points, long minDwellMillis) {
+        this.points = points;
+        this.minDwellMillis = minDwellMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.fitsnitchapp.api;
+
+import com.fitsnitchapp.Restaurant;
+
+import java.util.List;
+
+public class TrajectoryCheckResponse {
+    /** Every restaurant any point was attributed to */
+    public List<Restaurant> restaurants;
+    /**
+     * For each point, an index into restaurants, or one of
+     * TrajectoryRules.NONE and TrajectoryRules.SKIPPED
+     */
+    public int[] attribution;
+    public Dwell dwell;
+    /**
+     * Every restaurant around the last reliable point, like the candidates
+     * of a check-location there. Null from servers that don't send them.
+     */
+    public RestaurantsInAreaResponse candidates;
+
+    public TrajectoryCheckResponse(List<Restaurant> restaurants, int[] attribution, Dwell dwell) {
+        this.restaurants = restaurants;
+        this.attribution = attribution;
+        this.dwell = dwell;
+    }
+
+    /**
+     * @return The restaurant the trajectory ends at, or null
+     */
+    public Restaurant dwellRestaurant() {
+        if (dwell == null || restaurants == null || dwell.restaurant < 0 || dwell.restaurant >= restaurants.size()) return null;
+        return restaurants.get(dwell.restaurant);
+    }
+
+    /**
+     * The trailing run of points that share an attribution, ignoring skipped points.
+     */
+    public static class Dwell {
+        /** Index into restaurants, or TrajectoryRules.NONE */
+        public int restaurant;
+        /** Time of the run's first point */
+        public long since;
+        /** Time of the run's last point */
+        public long until;
+        /** Attributed points in the run */
+        public int points;
+        /** Whether the run is at a restaurant and lasted at least minDwellMillis */
+        public boolean dwelling;
+
+        public Dwell(int restaurant, long since, long until, int points, boolean dwelling) {
+            this.restaurant = restaurant;
+            this.since = since;
+            this.until = until;
+            this.points = points;
+            this.dwelling = dwelling;
+        }
+    }
+}
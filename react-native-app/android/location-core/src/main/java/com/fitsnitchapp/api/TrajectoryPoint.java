@@ -0,0 +1,17 @@
+package com.fitsnitchapp.api;
+
+import com.fitsnitchapp.LatLonPair;
+
+public class TrajectoryPoint {
+    /** Epoch millis */
+    public long time;
+    public LatLonPair location;
+    /** Meters, or null if unknown */
+    public Float accuracy;
+
+    public TrajectoryPoint(long time, LatLonPair location, Float accuracy) {
+        this.time = time;
+        this.location = location;
+        this.accuracy = accuracy;
+    }
+}
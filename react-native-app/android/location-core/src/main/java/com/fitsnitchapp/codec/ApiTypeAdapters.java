@@ -0,0 +1,540 @@
+package com.fitsnitchapp.codec;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.RestaurantDetails;
+import com.fitsnitchapp.api.CheckLocationRequest;
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.api.SnitchBatchRequest;
+import com.fitsnitchapp.api.SnitchBatchResponse;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.api.TrajectoryPoint;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written streaming Gson adapters for the API bodies, so that the
+ * JSON endpoints don't go through reflection. They read and write the same
+ * JSON as Gson's reflective adapters, and skip fields they don't know.
+ * Every adapter accepts null.
+ */
+public final class ApiTypeAdapters {
+    private ApiTypeAdapters() {}
+
+    public static Gson createGson() {
+        return register(new GsonBuilder()).create();
+    }
+
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(LatLonPair.class, LAT_LON)
+                .registerTypeAdapter(Restaurant.class, RESTAURANT)
+                .registerTypeAdapter(RestaurantDetails.class, RESTAURANT_DETAILS)
+                .registerTypeAdapter(CheckLocationRequest.class, CHECK_LOCATION_REQUEST)
+                .registerTypeAdapter(CheckLocationResponse.class, CHECK_LOCATION_RESPONSE)
+                .registerTypeAdapter(CreateSnitchRequest.class, CREATE_SNITCH_REQUEST)
+                .registerTypeAdapter(SnitchBatchRequest.class, SNITCH_BATCH_REQUEST)
+                .registerTypeAdapter(SnitchBatchResponse.class, SNITCH_BATCH_RESPONSE)
+                .registerTypeAdapter(RestaurantsInAreaRequest.class, AREA_REQUEST)
+                .registerTypeAdapter(RestaurantsInAreaResponse.class, AREA_RESPONSE)
+                .registerTypeAdapter(TrajectoryPoint.class, TRAJECTORY_POINT)
+                .registerTypeAdapter(TrajectoryCheckRequest.class, TRAJECTORY_REQUEST)
+                .registerTypeAdapter(TrajectoryCheckResponse.class, TRAJECTORY_RESPONSE);
+    }
+
+    static final TypeAdapter<LatLonPair> LAT_LON = new TypeAdapter<LatLonPair>() {
+        @Override
+        public void write(JsonWriter out, LatLonPair value) throws IOException {
+            out.beginObject();
+            out.name("lat").value(value.lat);
+            out.name("lon").value(value.lon);
+            out.endObject();
+        }
+
+        @Override
+        public LatLonPair read(JsonReader in) throws IOException {
+            double lat = 0, lon = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "lat": lat = in.nextDouble(); break;
+                    case "lon": lon = in.nextDouble(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new LatLonPair(lat, lon);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<Restaurant> RESTAURANT = new TypeAdapter<Restaurant>() {
+        @Override
+        public void write(JsonWriter out, Restaurant value) throws IOException {
+            out.beginObject();
+            writeString(out, "id", value.id);
+            writeString(out, "name", value.name);
+            writeLatLon(out, "location", value.location);
+            out.endObject();
+        }
+
+        @Override
+        public Restaurant read(JsonReader in) throws IOException {
+            String id = null, name = null;
+            LatLonPair location = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": id = readString(in); break;
+                    case "name": name = readString(in); break;
+                    case "location": location = readLatLon(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Restaurant(id, name, location);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<RestaurantDetails> RESTAURANT_DETAILS = new TypeAdapter<RestaurantDetails>() {
+        @Override
+        public void write(JsonWriter out, RestaurantDetails value) throws IOException {
+            out.beginObject();
+            writeString(out, "id", value.id);
+            writeString(out, "name", value.name);
+            writeLatLon(out, "pinLocation", value.pinLocation);
+            if (value.boundary != null) {
+                out.name("boundary").beginArray();
+                for (LatLonPair point : value.boundary) LAT_LON.write(out, point);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public RestaurantDetails read(JsonReader in) throws IOException {
+            String id = null, name = null;
+            LatLonPair pin = null;
+            List<LatLonPair> boundary = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": id = readString(in); break;
+                    case "name": name = readString(in); break;
+                    case "pinLocation": pin = readLatLon(in); break;
+                    case "boundary": boundary = readList(in, LAT_LON); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new RestaurantDetails(id, name, pin, boundary);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<CheckLocationRequest> CHECK_LOCATION_REQUEST = new TypeAdapter<CheckLocationRequest>() {
+        @Override
+        public void write(JsonWriter out, CheckLocationRequest value) throws IOException {
+            out.beginObject();
+            writeLatLon(out, "location", value.location);
+            out.endObject();
+        }
+
+        @Override
+        public CheckLocationRequest read(JsonReader in) throws IOException {
+            LatLonPair location = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("location")) location = readLatLon(in);
+                else in.skipValue();
+            }
+            in.endObject();
+            return new CheckLocationRequest(location);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<CheckLocationResponse> CHECK_LOCATION_RESPONSE = new TypeAdapter<CheckLocationResponse>() {
+        @Override
+        public void write(JsonWriter out, CheckLocationResponse value) throws IOException {
+            out.beginObject();
+            if (value.restaurant != null) {
+                out.name("restaurant");
+                RESTAURANT.write(out, value.restaurant);
+            }
+            out.name("isRestaurant").value(value.isRestaurant);
+            if (value.candidates != null) {
+                out.name("candidates");
+                AREA_RESPONSE.write(out, value.candidates);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public CheckLocationResponse read(JsonReader in) throws IOException {
+            Restaurant restaurant = null;
+            boolean isRestaurant = false;
+            RestaurantsInAreaResponse candidates = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "restaurant": restaurant = RESTAURANT.read(in); break;
+                    case "isRestaurant": isRestaurant = in.nextBoolean(); break;
+                    case "candidates": candidates = AREA_RESPONSE.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new CheckLocationResponse(restaurant, isRestaurant, candidates);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<CreateSnitchRequest> CREATE_SNITCH_REQUEST = new TypeAdapter<CreateSnitchRequest>() {
+        @Override
+        public void write(JsonWriter out, CreateSnitchRequest value) throws IOException {
+            out.beginObject();
+            writeString(out, "snitchId", value.snitchId);
+            writeString(out, "userId", value.userId);
+            writeLatLon(out, "originCoords", value.originCoords);
+            if (value.restaurantData != null) {
+                out.name("restaurantData");
+                RESTAURANT.write(out, value.restaurantData);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public CreateSnitchRequest read(JsonReader in) throws IOException {
+            String snitchId = null, userId = null;
+            LatLonPair origin = null;
+            Restaurant restaurant = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "snitchId": snitchId = readString(in); break;
+                    case "userId": userId = readString(in); break;
+                    case "originCoords": origin = readLatLon(in); break;
+                    case "restaurantData": restaurant = RESTAURANT.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new CreateSnitchRequest(snitchId, userId, origin, restaurant);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<SnitchBatchRequest> SNITCH_BATCH_REQUEST = new TypeAdapter<SnitchBatchRequest>() {
+        @Override
+        public void write(JsonWriter out, SnitchBatchRequest value) throws IOException {
+            out.beginObject();
+            if (value.snitches != null) {
+                out.name("snitches").beginArray();
+                for (CreateSnitchRequest snitch : value.snitches) CREATE_SNITCH_REQUEST.write(out, snitch);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public SnitchBatchRequest read(JsonReader in) throws IOException {
+            List<CreateSnitchRequest> snitches = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("snitches")) snitches = readList(in, CREATE_SNITCH_REQUEST);
+                else in.skipValue();
+            }
+            in.endObject();
+            return new SnitchBatchRequest(snitches);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<SnitchBatchResponse> SNITCH_BATCH_RESPONSE = new TypeAdapter<SnitchBatchResponse>() {
+        @Override
+        public void write(JsonWriter out, SnitchBatchResponse value) throws IOException {
+            out.beginObject();
+            if (value.accepted != null) {
+                out.name("accepted").beginArray();
+                for (String id : value.accepted) out.value(id);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public SnitchBatchResponse read(JsonReader in) throws IOException {
+            SnitchBatchResponse response = new SnitchBatchResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("accepted") && in.peek() != JsonToken.NULL) {
+                    response.accepted = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) response.accepted.add(readString(in));
+                    in.endArray();
+                }
+                else in.skipValue();
+            }
+            in.endObject();
+            return response;
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<RestaurantsInAreaRequest> AREA_REQUEST = new TypeAdapter<RestaurantsInAreaRequest>() {
+        @Override
+        public void write(JsonWriter out, RestaurantsInAreaRequest value) throws IOException {
+            out.beginObject();
+            writeLatLon(out, "location", value.location);
+            out.name("radius").value(value.radius);
+            out.endObject();
+        }
+
+        @Override
+        public RestaurantsInAreaRequest read(JsonReader in) throws IOException {
+            LatLonPair location = null;
+            double radius = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "location": location = readLatLon(in); break;
+                    case "radius": radius = in.nextDouble(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new RestaurantsInAreaRequest(location, radius);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<RestaurantsInAreaResponse> AREA_RESPONSE = new TypeAdapter<RestaurantsInAreaResponse>() {
+        @Override
+        public void write(JsonWriter out, RestaurantsInAreaResponse value) throws IOException {
+            out.beginObject();
+            writeLatLon(out, "center", value.center);
+            out.name("radius").value(value.radius);
+            if (value.restaurants != null) {
+                out.name("restaurants").beginArray();
+                for (RestaurantDetails details : value.restaurants) RESTAURANT_DETAILS.write(out, details);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public RestaurantsInAreaResponse read(JsonReader in) throws IOException {
+            LatLonPair center = null;
+            double radius = 0;
+            List<RestaurantDetails> restaurants = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "center": center = readLatLon(in); break;
+                    case "radius": radius = in.nextDouble(); break;
+                    case "restaurants": restaurants = readList(in, RESTAURANT_DETAILS); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new RestaurantsInAreaResponse(center, radius, restaurants);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<TrajectoryPoint> TRAJECTORY_POINT = new TypeAdapter<TrajectoryPoint>() {
+        @Override
+        public void write(JsonWriter out, TrajectoryPoint value) throws IOException {
+            out.beginObject();
+            out.name("time").value(value.time);
+            writeLatLon(out, "location", value.location);
+            if (value.accuracy != null) out.name("accuracy").value(value.accuracy);
+            out.endObject();
+        }
+
+        @Override
+        public TrajectoryPoint read(JsonReader in) throws IOException {
+            long time = 0;
+            LatLonPair location = null;
+            Float accuracy = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "time": time = in.nextLong(); break;
+                    case "location": location = readLatLon(in); break;
+                    case "accuracy":
+                        if (in.peek() == JsonToken.NULL) in.nextNull();
+                        else accuracy = (float) in.nextDouble();
+                        break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TrajectoryPoint(time, location, accuracy);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<TrajectoryCheckRequest> TRAJECTORY_REQUEST = new TypeAdapter<TrajectoryCheckRequest>() {
+        @Override
+        public void write(JsonWriter out, TrajectoryCheckRequest value) throws IOException {
+            out.beginObject();
+            if (value.points != null) {
+                out.name("points").beginArray();
+                for (TrajectoryPoint point : value.points) TRAJECTORY_POINT.write(out, point);
+                out.endArray();
+            }
+            out.name("minDwellMillis").value(value.minDwellMillis);
+            out.endObject();
+        }
+
+        @Override
+        public TrajectoryCheckRequest read(JsonReader in) throws IOException {
+            List<TrajectoryPoint> points = null;
+            long minDwell = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "points": points = readList(in, TRAJECTORY_POINT); break;
+                    case "minDwellMillis": minDwell = in.nextLong(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TrajectoryCheckRequest(points, minDwell);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<TrajectoryCheckResponse.Dwell> DWELL = new TypeAdapter<TrajectoryCheckResponse.Dwell>() {
+        @Override
+        public void write(JsonWriter out, TrajectoryCheckResponse.Dwell value) throws IOException {
+            out.beginObject();
+            out.name("restaurant").value(value.restaurant);
+            out.name("since").value(value.since);
+            out.name("until").value(value.until);
+            out.name("points").value(value.points);
+            out.name("dwelling").value(value.dwelling);
+            out.endObject();
+        }
+
+        @Override
+        public TrajectoryCheckResponse.Dwell read(JsonReader in) throws IOException {
+            int restaurant = -1, points = 0;
+            long since = 0, until = 0;
+            boolean dwelling = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "restaurant": restaurant = in.nextInt(); break;
+                    case "since": since = in.nextLong(); break;
+                    case "until": until = in.nextLong(); break;
+                    case "points": points = in.nextInt(); break;
+                    case "dwelling": dwelling = in.nextBoolean(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TrajectoryCheckResponse.Dwell(restaurant, since, until, points, dwelling);
+        }
+    }.nullSafe();
+
+    static final TypeAdapter<TrajectoryCheckResponse> TRAJECTORY_RESPONSE = new TypeAdapter<TrajectoryCheckResponse>() {
+        @Override
+        public void write(JsonWriter out, TrajectoryCheckResponse value) throws IOException {
+            out.beginObject();
+            if (value.restaurants != null) {
+                out.name("restaurants").beginArray();
+                for (Restaurant restaurant : value.restaurants) RESTAURANT.write(out, restaurant);
+                out.endArray();
+            }
+            if (value.attribution != null) {
+                out.name("attribution").beginArray();
+                for (int index : value.attribution) out.value(index);
+                out.endArray();
+            }
+            if (value.dwell != null) {
+                out.name("dwell");
+                DWELL.write(out, value.dwell);
+            }
+            if (value.candidates != null) {
+                out.name("candidates");
+                AREA_RESPONSE.write(out, value.candidates);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public TrajectoryCheckResponse read(JsonReader in) throws IOException {
+            List<Restaurant> restaurants = new ArrayList<>();
+            int[] attribution = new int[0];
+            TrajectoryCheckResponse.Dwell dwell = null;
+            RestaurantsInAreaResponse candidates = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "restaurants": restaurants = readList(in, RESTAURANT); break;
+                    case "attribution": attribution = readInts(in); break;
+                    case "dwell": dwell = DWELL.read(in); break;
+                    case "candidates": candidates = AREA_RESPONSE.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            TrajectoryCheckResponse response = new TrajectoryCheckResponse(restaurants, attribution, dwell);
+            response.candidates = candidates;
+            return response;
+        }
+    }.nullSafe();
+
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) out.name(name).value(value);
+    }
+
+    private static void writeLatLon(JsonWriter out, String name, LatLonPair value) throws IOException {
+        if (value == null) return;
+        out.name(name);
+        LAT_LON.write(out, value);
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static LatLonPair readLatLon(JsonReader in) throws IOException {
+        return LAT_LON.read(in);
+    }
+
+    private static int[] readInts(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<Integer> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) values.add(in.nextInt());
+        in.endArray();
+        int[] ints = new int[values.size()];
+        for (int i = 0; i < ints.length; i++) ints[i] = values.get(i);
+        return ints;
+    }
+
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) list.add(adapter.read(in));
+        in.endArray();
+        return list;
+    }
+}
@@ -0,0 +1,40 @@
+package com.fitsnitchapp.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integers, 7 bits per byte with the high bit set on all
+ * but the last byte. Signed values are zigzag encoded first so that small
+ * negative numbers stay short.
+ */
+public final class VarInts {
+    private VarInts() {}
+
+    public static void putVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer buf) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+            shift += 7;
+        }
+    }
+
+    public static void putZigZag(ByteBuffer buf, long value) {
+        putVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getZigZag(ByteBuffer buf) {
+        long raw = getVarLong(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
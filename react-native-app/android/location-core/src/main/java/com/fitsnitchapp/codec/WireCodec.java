@@ -0,0 +1,371 @@
+package com.fitsnitchapp.codec;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.RestaurantDetails;
+import com.fitsnitchapp.api.CheckLocationRequest;
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.api.SnitchBatchRequest;
+import com.fitsnitchapp.api.SnitchBatchResponse;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.api.TrajectoryPoint;
+
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the bodies the loop sends and receives on
+ * every tick, used instead of JSON when the server supports it.
+ *
+ * Every message starts with a version byte. Coordinates are degrees * 1e7
+ * as zigzag varints, and a restaurant's pin is stored as a delta from the
+ * coordinates before it. Strings are a varint of their UTF-8 length + 1,
+ * with 0 meaning null, followed by the bytes. Trajectory points are deltas
+ * from the point before, with accuracy rounded to whole meters. Must stay
+ * in sync with server/src/utils/WireCodec.ts.
+ *
+ * Fields added since version 1 are behind a flag or at the end of the
+ * message, where older decoders don't look, so the version didn't change.
+ */
+public final class WireCodec {
+    public static final String MIME_TYPE = "application/x-fitsnitch-wire";
+    public static final byte VERSION = 1;
+
+    private static final double E7 = 1e7;
+    private static final int FLAG_IS_RESTAURANT = 1;
+    private static final int FLAG_HAS_RESTAURANT = 2;
+    private static final int FLAG_HAS_ID = 4;
+    private static final int FLAG_HAS_CANDIDATES = 8;
+    private static final int HAS_PIN = 1;
+    private static final int HAS_BOUNDARY = 2;
+
+    private WireCodec() {}
+
+    /**
+     * @return Whether bodies of this type have a binary encoding
+     */
+    public static boolean supports(Type type) {
+        return type == CheckLocationRequest.class
+                || type == CheckLocationResponse.class
+                || type == CreateSnitchRequest.class
+                || type == SnitchBatchRequest.class
+                || type == SnitchBatchResponse.class
+                || type == TrajectoryCheckRequest.class
+                || type == TrajectoryCheckResponse.class;
+    }
+
+    public static byte[] encode(Object body) {
+        Writer out = new Writer();
+        out.buf.put(VERSION);
+        if (body instanceof CheckLocationRequest) {
+            out.coords(((CheckLocationRequest) body).location, null);
+        }
+        else if (body instanceof CheckLocationResponse) {
+            CheckLocationResponse response = (CheckLocationResponse) body;
+            Restaurant restaurant = response.restaurant;
+            int flags = (response.isRestaurant ? FLAG_IS_RESTAURANT : 0)
+                    | (restaurant != null ? FLAG_HAS_RESTAURANT : 0)
+                    | (restaurant != null && restaurant.id != null ? FLAG_HAS_ID : 0)
+                    | (response.candidates != null ? FLAG_HAS_CANDIDATES : 0);
+            out.buf.put((byte) flags);
+            if (restaurant != null) out.restaurant(restaurant, null);
+            if ((flags & FLAG_HAS_ID) != 0) out.string(restaurant.id);
+            if (response.candidates != null) out.candidates(response.candidates);
+        }
+        else if (body instanceof CreateSnitchRequest) {
+            out.snitch((CreateSnitchRequest) body);
+        }
+        else if (body instanceof SnitchBatchRequest) {
+            List<CreateSnitchRequest> snitches = ((SnitchBatchRequest) body).snitches;
+            out.varLong(snitches.size());
+            for (CreateSnitchRequest snitch : snitches) out.snitch(snitch);
+        }
+        else if (body instanceof SnitchBatchResponse) {
+            List<String> accepted = ((SnitchBatchResponse) body).accepted;
+            out.varLong(accepted.size());
+            for (String id : accepted) out.string(id);
+        }
+        else if (body instanceof TrajectoryCheckRequest) {
+            TrajectoryCheckRequest request = (TrajectoryCheckRequest) body;
+            out.varLong(request.minDwellMillis);
+            out.varLong(request.points.size());
+            TrajectoryPoint previous = null;
+            for (TrajectoryPoint point : request.points) {
+                out.zigZag(previous == null ? point.time : point.time - previous.time);
+                out.coords(point.location, previous == null ? null : previous.location);
+                out.varLong(point.accuracy == null ? 0 : Math.round(point.accuracy) + 1);
+                previous = point;
+            }
+        }
+        else if (body instanceof TrajectoryCheckResponse) {
+            TrajectoryCheckResponse response = (TrajectoryCheckResponse) body;
+            out.varLong(response.restaurants.size());
+            for (Restaurant restaurant : response.restaurants) out.restaurant(restaurant, null);
+            out.varLong(response.attribution.length);
+            for (int index : response.attribution) out.zigZag(index);
+            TrajectoryCheckResponse.Dwell dwell = response.dwell;
+            out.zigZag(dwell.restaurant);
+            out.varLong(dwell.since);
+            out.varLong(dwell.until - dwell.since);
+            out.varLong(dwell.points);
+            out.ensure(1);
+            out.buf.put((byte) (dwell.dwelling ? 1 : 0));
+            for (Restaurant restaurant : response.restaurants) out.string(restaurant.id);
+            if (response.candidates != null) out.candidates(response.candidates);
+        }
+        else {
+            throw new IllegalArgumentException("No wire encoding for " + body.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the bytes aren't a valid message of that type
+     */
+    public static Object decode(Type type, byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported wire version " + version);
+            }
+            if (type == CheckLocationRequest.class) {
+                return new CheckLocationRequest(readCoords(in, null));
+            }
+            if (type == CheckLocationResponse.class) {
+                int flags = in.get();
+                Restaurant restaurant = (flags & FLAG_HAS_RESTAURANT) != 0 ? readRestaurant(in, null) : null;
+                if (restaurant != null && (flags & FLAG_HAS_ID) != 0) restaurant.id = readString(in);
+                RestaurantsInAreaResponse candidates = (flags & FLAG_HAS_CANDIDATES) != 0 ? readCandidates(in) : null;
+                return new CheckLocationResponse(restaurant, (flags & FLAG_IS_RESTAURANT) != 0, candidates);
+            }
+            if (type == CreateSnitchRequest.class) {
+                return readSnitch(in);
+            }
+            if (type == SnitchBatchRequest.class) {
+                int count = readCount(in);
+                List<CreateSnitchRequest> snitches = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) snitches.add(readSnitch(in));
+                return new SnitchBatchRequest(snitches);
+            }
+            if (type == SnitchBatchResponse.class) {
+                int count = readCount(in);
+                SnitchBatchResponse response = new SnitchBatchResponse();
+                response.accepted = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) response.accepted.add(readString(in));
+                return response;
+            }
+            if (type == TrajectoryCheckRequest.class) {
+                long minDwell = VarInts.getVarLong(in);
+                int count = readCount(in);
+                List<TrajectoryPoint> points = new ArrayList<>(count);
+                TrajectoryPoint previous = null;
+                for (int i = 0; i < count; i++) {
+                    long time = VarInts.getZigZag(in) + (previous == null ? 0 : previous.time);
+                    LatLonPair location = readCoords(in, previous == null ? null : previous.location);
+                    long accuracy = VarInts.getVarLong(in);
+                    previous = new TrajectoryPoint(time, location, accuracy == 0 ? null : (float) (accuracy - 1));
+                    points.add(previous);
+                }
+                return new TrajectoryCheckRequest(points, minDwell);
+            }
+            if (type == TrajectoryCheckResponse.class) {
+                int restaurantCount = readCount(in);
+                List<Restaurant> restaurants = new ArrayList<>(restaurantCount);
+                for (int i = 0; i < restaurantCount; i++) restaurants.add(readRestaurant(in, null));
+                int[] attribution = new int[readCount(in)];
+                for (int i = 0; i < attribution.length; i++) attribution[i] = (int) VarInts.getZigZag(in);
+                int restaurant = (int) VarInts.getZigZag(in);
+                long since = VarInts.getVarLong(in);
+                long until = since + VarInts.getVarLong(in);
+                int points = (int) VarInts.getVarLong(in);
+                boolean dwelling = in.get() != 0;
+                // Ids came later, and older servers end the message here
+                if (in.hasRemaining()) {
+                    for (Restaurant r : restaurants) r.id = readString(in);
+                }
+                TrajectoryCheckResponse response = new TrajectoryCheckResponse(restaurants, attribution,
+                        new TrajectoryCheckResponse.Dwell(restaurant, since, until, points, dwelling));
+                // Candidates came after ids, and are left out when there are none
+                if (in.hasRemaining()) response.candidates = readCandidates(in);
+                return response;
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated wire message for " + type);
+        }
+        throw new IllegalArgumentException("No wire encoding for " + type);
+    }
+
+
+    private static LatLonPair readCoords(ByteBuffer in, LatLonPair relativeTo) {
+        long lat = VarInts.getZigZag(in);
+        long lon = VarInts.getZigZag(in);
+        if (relativeTo != null) {
+            lat += Math.round(relativeTo.lat * E7);
+            lon += Math.round(relativeTo.lon * E7);
+        }
+        return new LatLonPair(lat / E7, lon / E7);
+    }
+
+    private static Restaurant readRestaurant(ByteBuffer in, LatLonPair relativeTo) {
+        String name = readString(in);
+        return new Restaurant(name, readCoords(in, relativeTo));
+    }
+
+    private static RestaurantsInAreaResponse readCandidates(ByteBuffer in) {
+        LatLonPair center = readCoords(in, null);
+        double radius = VarInts.getVarLong(in) / E7;
+        int count = readCount(in);
+        List<RestaurantDetails> restaurants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = readString(in);
+            String name = readString(in);
+            int flags = in.get();
+            LatLonPair pin = (flags & HAS_PIN) != 0 ? readCoords(in, center) : null;
+            List<LatLonPair> boundary = null;
+            if ((flags & HAS_BOUNDARY) != 0) {
+                int points = readCount(in);
+                boundary = new ArrayList<>(points);
+                LatLonPair previous = pin != null ? pin : center;
+                for (int p = 0; p < points; p++) {
+                    previous = readCoords(in, previous);
+                    boundary.add(previous);
+                }
+            }
+            restaurants.add(new RestaurantDetails(id, name, pin, boundary));
+        }
+        return new RestaurantsInAreaResponse(center, radius, restaurants);
+    }
+
+    private static CreateSnitchRequest readSnitch(ByteBuffer in) {
+        String snitchId = readString(in);
+        String userId = readString(in);
+        LatLonPair origin = readCoords(in, null);
+        Restaurant restaurant = in.get() != 0 ? readRestaurant(in, origin) : null;
+        return new CreateSnitchRequest(snitchId, userId, origin, restaurant);
+    }
+
+    private static String readString(ByteBuffer in) {
+        long length = VarInts.getVarLong(in) - 1;
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[(int) length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(ByteBuffer in) {
+        long count = VarInts.getVarLong(in);
+        // Every element takes at least one byte
+        if (count > in.remaining()) throw new BufferUnderflowException();
+        return (int) count;
+    }
+
+    /**
+     * Grows its buffer as needed. Every write reserves room for its largest
+     * possible size first.
+     */
+    private static class Writer {
+        private static final int MAX_VARINT = 10;
+
+        ByteBuffer buf = ByteBuffer.allocate(64);
+
+        void varLong(long value) {
+            ensure(MAX_VARINT);
+            VarInts.putVarLong(buf, value);
+        }
+
+        void zigZag(long value) {
+            ensure(MAX_VARINT);
+            VarInts.putZigZag(buf, value);
+        }
+
+        void coords(LatLonPair location, LatLonPair relativeTo) {
+            long lat = Math.round(location.lat * E7);
+            long lon = Math.round(location.lon * E7);
+            if (relativeTo != null) {
+                lat -= Math.round(relativeTo.lat * E7);
+                lon -= Math.round(relativeTo.lon * E7);
+            }
+            ensure(2 * MAX_VARINT);
+            VarInts.putZigZag(buf, lat);
+            VarInts.putZigZag(buf, lon);
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varLong(bytes.length + 1);
+            ensure(bytes.length);
+            buf.put(bytes);
+        }
+
+        void restaurant(Restaurant restaurant, LatLonPair relativeTo) {
+            string(restaurant.name);
+            // The app always expects a location; a missing one is sent as the base coordinates
+            LatLonPair location = restaurant.location != null ? restaurant.location
+                    : relativeTo != null ? relativeTo : new LatLonPair(0, 0);
+            coords(location, relativeTo);
+        }
+
+        /**
+         * Pins are deltas from the center, and each boundary point a delta
+         * from the point before it, starting from the pin or the center.
+         */
+        void candidates(RestaurantsInAreaResponse candidates) {
+            coords(candidates.center, null);
+            varLong(Math.round(candidates.radius * E7));
+            varLong(candidates.restaurants.size());
+            for (RestaurantDetails place : candidates.restaurants) {
+                string(place.id);
+                string(place.name);
+                ensure(1);
+                buf.put((byte) ((place.pinLocation != null ? HAS_PIN : 0)
+                        | (place.boundary != null ? HAS_BOUNDARY : 0)));
+                if (place.pinLocation != null) coords(place.pinLocation, candidates.center);
+                if (place.boundary != null) {
+                    varLong(place.boundary.size());
+                    LatLonPair previous = place.pinLocation != null ? place.pinLocation : candidates.center;
+                    for (LatLonPair point : place.boundary) {
+                        coords(point, previous);
+                        previous = point;
+                    }
+                }
+            }
+        }
+
+        void snitch(CreateSnitchRequest snitch) {
+            string(snitch.snitchId);
+            string(snitch.userId);
+            coords(snitch.originCoords, null);
+            ensure(1);
+            buf.put((byte) (snitch.restaurantData != null ? 1 : 0));
+            if (snitch.restaurantData != null) restaurant(snitch.restaurantData, snitch.originCoords);
+        }
+
+        void ensure(int bytes) {
+            if (buf.remaining() >= bytes) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[buf.position()];
+            System.arraycopy(buf.array(), 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+}
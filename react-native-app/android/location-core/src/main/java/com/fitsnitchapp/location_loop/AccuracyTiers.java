@@ -0,0 +1,130 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides how accurate each tick's fix has to be, and keeps what fixes of
+ * each priority cost and delivered.
+ *
+ * A tick starts with a cheap balanced-power fix, and escalates to high
+ * accuracy only when that fix could be at a restaurant: within
+ * ESCALATION_RANGE plus its own accuracy (at most ESCALATION_RANGE again)
+ * of the nearest known restaurant, or anywhere at all while the restaurants
+ * around it aren't known. The cap keeps a fix accurate to a few hundred
+ * meters from escalating everywhere in a restaurant-dense area.
+ *
+ * Ticks go straight to high accuracy when the restaurants around the last
+ * fix aren't known, since they would escalate anyway, and in the states
+ * that need a precise fix: warnings decide a snitch, and the movement
+ * filter only notices leaving a restaurant from precise fixes.
+ *
+ * How long a fix took is kept as its energy cost, since that is how long
+ * the GPS or the radios were kept on for it.
+ */
+public class AccuracyTiers {
+    /** What a tick starts with */
+    public static final FixPriority COARSE = FixPriority.BALANCED_POWER;
+    /**
+     * Meters beyond a coarse fix's accuracy within which a restaurant is
+     * close enough to need a precise fix, with room for large boundaries
+     */
+    public static final double ESCALATION_RANGE = 100;
+
+    private volatile boolean enabled = true;
+    private final Map<FixPriority, TierStats> stats = new EnumMap<>(FixPriority.class);
+    private long escalationChecks = 0;
+    private long escalations = 0;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * When disabled, every tick uses a high-accuracy fix.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param state The state the tick runs in
+     * @param lastNearestMeters Meters from the last fix to the nearest known restaurant, NaN if unknown
+     */
+    public FixPriority firstPriority(LoopState state, double lastNearestMeters) {
+        boolean needsPrecise = state instanceof ActiveSnitchState || state instanceof StayingState;
+        if (!enabled || needsPrecise || Double.isNaN(lastNearestMeters)) return FixPriority.HIGH_ACCURACY;
+        return COARSE;
+    }
+
+    /**
+     * @param coarse The tick's first fix, or null if it failed
+     * @param nearestMeters Meters from it to the nearest known restaurant, NaN if unknown
+     */
+    public synchronized boolean shouldEscalate(Fix coarse, double nearestMeters) {
+        boolean escalate = coarse == null
+                || !coarse.hasAccuracy()
+                || Double.isNaN(nearestMeters)
+                || nearestMeters <= ESCALATION_RANGE + Math.min(coarse.accuracy, ESCALATION_RANGE);
+        escalationChecks++;
+        if (escalate) escalations++;
+        return escalate;
+    }
+
+    /**
+     * @param fix Null if the request failed
+     * @param millis From the request to the answer
+     */
+    public synchronized void record(FixPriority priority, Fix fix, long millis) {
+        TierStats tier = stats.get(priority);
+        if (tier == null) {
+            tier = new TierStats();
+            stats.put(priority, tier);
+        }
+        tier.requests++;
+        tier.totalMillis += millis;
+        if (fix == null) {
+            tier.failures++;
+        }
+        else if (fix.hasAccuracy()) {
+            tier.withAccuracy++;
+            tier.totalAccuracy += fix.accuracy;
+        }
+    }
+
+    public synchronized long getEscalations() {
+        return escalations;
+    }
+
+    /** How many cheap fixes were checked for escalation */
+    public synchronized long getEscalationChecks() {
+        return escalationChecks;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("escalationChecks", escalationChecks);
+        snapshot.put("escalations", escalations);
+        for (Map.Entry<FixPriority, TierStats> entry : stats.entrySet()) {
+            TierStats tier = entry.getValue();
+            Map<String, Object> values = new HashMap<>();
+            values.put("requests", tier.requests);
+            values.put("failures", tier.failures);
+            values.put("meanAccuracyMeters", tier.withAccuracy == 0 ? 0 : tier.totalAccuracy / tier.withAccuracy);
+            values.put("meanMillis", tier.requests == 0 ? 0 : tier.totalMillis / tier.requests);
+            values.put("totalMillis", tier.totalMillis);
+            snapshot.put(entry.getKey().name(), values);
+        }
+        return snapshot;
+    }
+
+    private static class TierStats {
+        long requests;
+        long failures;
+        long withAccuracy;
+        double totalAccuracy;
+        long totalMillis;
+    }
+}
@@ -0,0 +1,81 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.SnitchTrigger;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the time during which a snitch warning is active.
+ */
+public class ActiveSnitchState extends LoopState {
+    /** Dwell confidence needed to snitch without checking with the resolver */
+    public static final double SNITCH_CONFIDENCE = 0.75;
+
+    @Override
+    public long getInitialLoopIval() {
+        /*
+        Currently sets the next loop to occur after full warning ival, and then uses
+        next location to determine whether or not to snitch.
+         */
+        return loop.getTimings().warning;
+    }
+
+    /**
+     * Decided from where the dwell detector says the user stayed during the
+     * warning. Only when that evidence is unclear, typically when the latest
+     * fix has left the cluster but may be a stray, is every fix since the
+     * trigger checked in one round trip.
+     */
+    @Override
+    public void handleNewLocations(List<Fix> locations) {
+        loop.log("Times up!");
+        SnitchTrigger snitch = loop.getActiveSnitch();
+        if (loop.usedCheatForActiveSnitch()) {
+            loop.log("User used cheat - not snitching");
+            nextState(new StayingState(snitch.restaurantData));
+            return;
+        }
+        DwellDetector.Estimate dwell = loop.estimateDwell();
+        if (dwell.confidence >= SNITCH_CONFIDENCE) {
+            loop.log("User stayed for the whole warning");
+            doSnitch();
+        }
+        else if (dwell.isAway()) {
+            loop.log("User left restaurant - not snitching");
+            nextState(new BaseState());
+        }
+        else {
+            loop.checkTrajectory(loop.getTrajectory(), 0, (verdict) -> {
+                Restaurant restaurant = verdict.dwellRestaurant();
+                if (!snitch.restaurantData.isSamePlace(restaurant)) {
+                    // User has left restaurant
+                    loop.log("User left restaurant - not snitching");
+
+                    /*
+                       TODO handle cases where user left old restaurant but is found in new one
+                       ie: first restaurant was false positive, user was walking by to REAL restaurant
+                       Probably requires movement tracking during active snitch
+                    */
+                    nextState(new BaseState());
+                }
+                else doSnitch();
+            });
+        }
+
+        /* TODO Check for reasons to leave state, like leaving restaurant
+           would require making the initial interval less than the warning ival
+         */
+    }
+
+    public void handleNewLocation(Fix location) {
+        handleNewLocations(Collections.singletonList(location));
+    }
+
+    private void doSnitch() {
+        Restaurant restaurant = loop.getActiveSnitch().restaurantData;
+        loop.publishActiveSnitch();
+        nextState(new StayingState(restaurant));
+    }
+}
@@ -0,0 +1,107 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stretches or shrinks the base detection interval based on how soon the
+ * user could possibly reach a restaurant.
+ *
+ * Only BaseState ticks are adapted. The warning and staying intervals are
+ * part of the snitch rules, so they are passed through unchanged.
+ */
+public class AdaptiveIntervalPolicy implements IntervalPolicy {
+    private static final int MAX_DECISIONS = 50;
+
+    /** Speed assumed when the user's speed is unknown or very low (brisk walk) */
+    public static final double MIN_ASSUMED_SPEED = 1.5;
+    /** Above this the user is assumed to be driving past, not stopping */
+    public static final double DRIVING_SPEED = 12;
+    /** Restaurants closer than this are treated as "could be entered now" */
+    public static final double DETECTION_RANGE = 50;
+    /** Fraction of the estimated time-to-reach that we are willing to wait */
+    public static final double REACH_SAFETY_FACTOR = 0.5;
+    public static final int NIGHT_START_HOUR = 1;
+    public static final int NIGHT_END_HOUR = 5;
+
+    public long minIval = 15000; // 15 seconds
+    public long maxIval = 10 * 60000; // 10 minutes
+
+    private final ArrayDeque<IntervalDecision> decisions = new ArrayDeque<>();
+    private final Map<String, Long> reasonCounts = new HashMap<>();
+
+    @Override
+    public synchronized long nextInterval(LoopState state, long requestedIval, LoopSignals signals) {
+        long ival = requestedIval;
+        String reason;
+
+        if (!(state instanceof BaseState)) {
+            reason = "passthrough";
+        }
+        else if (signals == null) {
+            reason = "no-signals";
+        }
+        else {
+            double speed = signals.effectiveSpeed();
+            double assumedSpeed = Double.isNaN(speed) ? MIN_ASSUMED_SPEED : Math.max(speed, MIN_ASSUMED_SPEED);
+            double nearest = signals.nearestRestaurantDistance;
+
+            if (!Double.isNaN(nearest) && nearest <= DETECTION_RANGE) {
+                // Right next to a restaurant - poll at least as often as requested
+                ival = Math.min(requestedIval, minIval * 2);
+                reason = "near-restaurant";
+            }
+            else if (!Double.isNaN(nearest)) {
+                // Can't reach any restaurant before this, so there's nothing to detect
+                double secondsToReach = (nearest - DETECTION_RANGE) / assumedSpeed;
+                ival = Math.max(requestedIval, (long) (secondsToReach * 1000 * REACH_SAFETY_FACTOR));
+                reason = "time-to-reach";
+            }
+            else if (speed >= DRIVING_SPEED) {
+                ival = requestedIval * 2;
+                reason = "driving";
+            }
+            else {
+                reason = "default";
+            }
+
+            if (isNight(signals.hourOfDay) && !reason.equals("near-restaurant")) {
+                ival *= 2;
+                reason += "+night";
+            }
+            ival = Math.max(minIval, Math.min(maxIval, ival));
+        }
+
+        record(state, requestedIval, ival, reason);
+        return ival;
+    }
+
+    public synchronized void setBounds(long minIval, long maxIval) {
+        if (minIval <= 0 || maxIval < minIval) return;
+        this.minIval = minIval;
+        this.maxIval = maxIval;
+    }
+
+    @Override
+    public synchronized List<IntervalDecision> getRecentDecisions() {
+        return new ArrayList<>(decisions);
+    }
+
+    public synchronized Map<String, Long> getReasonCounts() {
+        return new HashMap<>(reasonCounts);
+    }
+
+    private static boolean isNight(int hour) {
+        return hour >= NIGHT_START_HOUR && hour < NIGHT_END_HOUR;
+    }
+
+    private void record(LoopState state, long requestedIval, long chosenIval, String reason) {
+        if (decisions.size() >= MAX_DECISIONS) decisions.removeFirst();
+        decisions.addLast(new IntervalDecision(System.currentTimeMillis(), state.getClass().getSimpleName(), requestedIval, chosenIval, reason));
+        Long count = reasonCounts.get(reason);
+        reasonCounts.put(reason, count == null ? 1 : count + 1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.SnitchTrigger;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+
+import java.util.List;
+
+
+public class BaseState extends LoopState {
+    /** Points a batch must end with at one restaurant, so walking past one doesn't count */
+    public static final int MIN_DWELL_POINTS = 2;
+
+    @Override
+    public long getInitialLoopIval() {
+        return loop.getTimings().loopShort;
+    }
+
+    /**
+     * A batch of fixes is checked in one round trip, and only starts a
+     * warning if it ends with several fixes at the same restaurant (or
+     * with the only one that could be checked).
+     */
+    @Override
+    public void handleNewLocations(List<Fix> locations) {
+        if (locations.size() < MIN_DWELL_POINTS) {
+            super.handleNewLocations(locations);
+            return;
+        }
+        Fix location = locations.get(locations.size() - 1);
+        loop.checkTrajectory(locations, 0, (verdict) -> {
+            Restaurant restaurant = verdict.dwellRestaurant();
+            if (restaurant != null && verdict.dwell.points >= Math.min(MIN_DWELL_POINTS, checkedPoints(verdict))) {
+                loop.beginSnitchWarning(new SnitchTrigger(
+                        loop.now(),
+                        new LatLonPair(location.lat, location.lon),
+                        restaurant
+                ));
+            }
+            else {
+                loop.continueIdle(location, loop.getTimings().loopShort);
+            }
+        });
+    }
+
+    /**
+     * A fix too coarse to place the user at the restaurant it's near, such
+     * as the cheap fixes allowed once the energy budget runs out, decides
+     * nothing and the loop tries again.
+     */
+    public void handleNewLocation(Fix location) {
+        LatLonPair triggerLocation = new LatLonPair(location.lat, location.lon);
+
+        loop.checkForRestaurant(triggerLocation, (restaurant) -> {
+            if (restaurant != null && !TrajectoryRules.isReliable(location)) {
+                loop.log("Fix too coarse to decide (" + location.accuracy + "m) - retrying");
+                continueLoop(loop.getTimings().loopShort);
+            }
+            else if(restaurant != null) {
+                SnitchTrigger snitch = new SnitchTrigger(
+                        loop.now(),
+                        triggerLocation,
+                        restaurant
+                );
+                loop.beginSnitchWarning(snitch);
+            }
+            else {
+                loop.continueIdle(location, loop.getTimings().loopShort);
+            }
+        });
+
+    }
+
+    private static int checkedPoints(TrajectoryCheckResponse verdict) {
+        int count = 0;
+        for (int index : verdict.attribution) {
+            if (index != TrajectoryRules.SKIPPED) count++;
+        }
+        return count;
+    }
+}
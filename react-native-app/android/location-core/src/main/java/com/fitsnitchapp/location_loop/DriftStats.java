@@ -0,0 +1,31 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks how late ticks start compared to when they were requested.
+ */
+public class DriftStats {
+    private long count = 0;
+    private long totalDrift = 0;
+    private long maxDrift = 0;
+    private long lastDrift = 0;
+
+    public synchronized void record(long scheduledAt, long startedAt) {
+        long drift = startedAt - scheduledAt;
+        count++;
+        totalDrift += Math.abs(drift);
+        maxDrift = Math.max(maxDrift, Math.abs(drift));
+        lastDrift = drift;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ticks", count);
+        stats.put("meanAbsDrift", count == 0 ? 0 : (double) totalDrift / count);
+        stats.put("maxAbsDrift", maxDrift);
+        stats.put("lastDrift", lastDrift);
+        return stats;
+    }
+}
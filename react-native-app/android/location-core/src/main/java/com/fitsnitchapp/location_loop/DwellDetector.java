@@ -0,0 +1,209 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+
+/**
+ * Tracks where the user is staying, one fix at a time.
+ *
+ * Fixes close to each other form a cluster, whose center is the accuracy
+ * weighted mean of its most recent WINDOW fixes. A single fix away from
+ * the cluster is held back as a possible outlier; a second one in a row
+ * means the user moved, and a new cluster starts from the two. Fixes too
+ * inaccurate to place are ignored. Memory and time per fix are constant.
+ *
+ * Not thread safe. The loop feeds it from its own thread.
+ */
+public class DwellDetector {
+    /** Fixes this far from the cluster center (plus half their accuracy) are outside it */
+    public static final double CLUSTER_RADIUS = 30;
+    /** Fixes kept for the cluster center */
+    public static final int WINDOW = 16;
+    /** Fixes a cluster needs before it counts fully */
+    public static final int MIN_FIXES = 2;
+    /** Accuracy assumed for fixes that don't report one */
+    public static final float DEFAULT_ACCURACY = 20;
+    /** Confidence is cut by this while the latest fix is outside the cluster */
+    public static final double OUTLIER_PENALTY = 0.5;
+
+    // Ring of the cluster's recent fixes, in meters from the anchor, with running sums
+    private final double[] xs = new double[WINDOW];
+    private final double[] ys = new double[WINDOW];
+    private final double[] weights = new double[WINDOW];
+    private int next = 0;
+    private int size = 0;
+    private double sumX, sumY, sumWeight;
+
+    private double anchorLat, anchorLon;
+    private double metersPerDegreeLon;
+    private long clusterStart;
+    private long clusterEnd;
+    private int clusterFixes = 0;
+    private Fix outlier;
+
+    /**
+     * @return False if the fix was too inaccurate to use
+     */
+    public boolean add(Fix fix) {
+        if (fix.hasAccuracy() && fix.accuracy > TrajectoryRules.MAX_ACCURACY) return false;
+        if (clusterFixes == 0) {
+            startCluster(fix);
+            return true;
+        }
+        double x = toX(fix.lon), y = toY(fix.lat);
+        double distance = Math.hypot(x - sumX / sumWeight, y - sumY / sumWeight);
+        if (distance <= CLUSTER_RADIUS + accuracyOf(fix) / 2) {
+            outlier = null;
+            join(fix, x, y);
+        }
+        else if (outlier == null) {
+            outlier = fix;
+        }
+        else {
+            // Two in a row - the user has moved on
+            Fix first = outlier;
+            startCluster(first);
+            if (GeoMath.metersBetween(first.lat, first.lon, fix.lat, fix.lon) <= CLUSTER_RADIUS + accuracyOf(fix) / 2) {
+                join(fix, toX(fix.lon), toY(fix.lat));
+            }
+            else {
+                startCluster(fix);
+            }
+        }
+        return true;
+    }
+
+    public void reset() {
+        clusterFixes = 0;
+        size = 0;
+        next = 0;
+        sumX = sumY = sumWeight = 0;
+        outlier = null;
+    }
+
+    /**
+     * How sure the detector is that the user is staying at a place, for a
+     * candidate restaurant found there.
+     *
+     * Confidence is the product of how close the cluster is to the place
+     * (full within CLUSTER_RADIUS, none at twice that), how long it has
+     * lasted compared to minDwell, how precisely its center is known, and
+     * whether it has MIN_FIXES yet. It is cut while the latest fix is a
+     * possible outlier.
+     *
+     * @param place Where the candidate was found, usually the fix that triggered the warning
+     */
+    public Estimate estimate(Restaurant candidate, LatLonPair place, long minDwell) {
+        if (clusterFixes == 0) return new Estimate(candidate, 0, 0, 0, Double.NaN, false);
+        LatLonPair center = getCenter();
+        double distance = GeoMath.metersBetween(center, place);
+        double proximity = clamp(2 - distance / CLUSTER_RADIUS);
+        long duration = clusterEnd - clusterStart;
+        double time = minDwell <= 0 ? 1 : clamp((double) duration / minDwell);
+        // Standard error of a weighted mean with weights of 1 / accuracy^2
+        double precision = clamp(CLUSTER_RADIUS * Math.sqrt(sumWeight));
+        double support = clamp((double) clusterFixes / MIN_FIXES);
+        double confidence = proximity * time * precision * support;
+        if (outlier != null) confidence *= OUTLIER_PENALTY;
+        return new Estimate(candidate, duration, confidence, clusterFixes, distance, outlier != null);
+    }
+
+    /**
+     * @return The center of the current cluster, or null before the first fix
+     */
+    public LatLonPair getCenter() {
+        if (clusterFixes == 0) return null;
+        return new LatLonPair(anchorLat + sumY / sumWeight / GeoMath.METERS_PER_DEGREE_LAT,
+                anchorLon + sumX / sumWeight / metersPerDegreeLon);
+    }
+
+
+    private void startCluster(Fix fix) {
+        reset();
+        anchorLat = fix.lat;
+        anchorLon = fix.lon;
+        metersPerDegreeLon = GeoMath.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(fix.lat));
+        clusterStart = fix.time;
+        clusterEnd = fix.time;
+        join(fix, 0, 0);
+    }
+
+    private void join(Fix fix, double x, double y) {
+        if (size == WINDOW) {
+            sumX -= xs[next] * weights[next];
+            sumY -= ys[next] * weights[next];
+            sumWeight -= weights[next];
+        }
+        else size++;
+        double accuracy = accuracyOf(fix);
+        double weight = 1 / (accuracy * accuracy);
+        xs[next] = x;
+        ys[next] = y;
+        weights[next] = weight;
+        sumX += x * weight;
+        sumY += y * weight;
+        sumWeight += weight;
+        next = (next + 1) % WINDOW;
+        clusterEnd = Math.max(clusterEnd, fix.time);
+        clusterFixes++;
+    }
+
+    private double toX(double lon) {
+        return (lon - anchorLon) * metersPerDegreeLon;
+    }
+
+    private double toY(double lat) {
+        return (lat - anchorLat) * GeoMath.METERS_PER_DEGREE_LAT;
+    }
+
+    private static double accuracyOf(Fix fix) {
+        // Nothing is more precise than a few meters, whatever the fix says
+        return Math.max(5, fix.hasAccuracy() ? fix.accuracy : DEFAULT_ACCURACY);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+
+    /**
+     * "Dwelling at candidate for duration with confidence"
+     */
+    public static final class Estimate {
+        public final Restaurant candidate;
+        /** Millis from the cluster's first fix to its latest */
+        public final long duration;
+        /** 0 to 1 */
+        public final double confidence;
+        public final int fixes;
+        /** Meters from the cluster center to the candidate's place, NaN without fixes */
+        public final double distance;
+        /** The latest fix was outside the cluster, and may or may not be a stray */
+        public final boolean outlierPending;
+
+        Estimate(Restaurant candidate, long duration, double confidence, int fixes, double distance,
+                 boolean outlierPending) {
+            this.candidate = candidate;
+            this.duration = duration;
+            this.confidence = confidence;
+            this.fixes = fixes;
+            this.distance = distance;
+            this.outlierPending = outlierPending;
+        }
+
+        /**
+         * Whether the user has clearly settled somewhere else: a full cluster,
+         * too far from the candidate's place to overlap it.
+         */
+        public boolean isAway() {
+            return !outlierPending && fixes >= MIN_FIXES && distance > 2 * CLUSTER_RADIUS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("dwelling at %s for %ds with confidence %.2f (%d fixes, %.0fm away%s)",
+                    candidate == null ? null : candidate.name, duration / 1000, confidence, fixes, distance,
+                    outlierPending ? ", latest fix outside" : "");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the loop within a rolling hourly budget of high-accuracy fixes,
+ * radio requests and CPU time, so that a bug which ticks too often drains
+ * a bounded amount of battery instead of all of it.
+ *
+ * The budget shrinks on low battery and in power save mode, and doubles
+ * while charging. As it runs out, ticks are spaced further apart and fixes
+ * are requested at cheaper priorities. Snitch warnings are left alone,
+ * since the warning notification promises its 30 seconds.
+ *
+ * Usage is recorded from several threads, so every method is synchronized.
+ */
+public class EnergyGovernor {
+    public enum Level {
+        /** Within budget */
+        NORMAL,
+        /** Most of the budget is used, or the battery is low */
+        CONSERVE,
+        /** The budget is used up, or the battery is nearly empty */
+        CRITICAL
+    }
+
+    /** Length of the rolling window the budget is for */
+    public static final long WINDOW = 60 * 60000;
+    private static final long BUCKET = 60000;
+    private static final int BUCKETS = (int) (WINDOW / BUCKET);
+
+    /** Per window, enough for the precise profile polling every 30 seconds with room to spare */
+    public static final int HIGH_ACCURACY_FIXES = 180;
+    public static final int RADIO_REQUESTS = 180;
+    /** CPU time on the loop's thread per window, one minute */
+    public static final long CPU_MICROS = 60 * 1000000L;
+
+    /** Share of the budget after which the loop starts to conserve */
+    public static final double CONSERVE_AT = 0.75;
+    /** How far below a threshold use has to drop to leave its level, so it doesn't flap */
+    public static final double RECOVERY_MARGIN = 0.15;
+    /** Battery percentages below which the budget is halved and the loop conserves, or goes critical */
+    public static final int LOW_BATTERY = 15;
+    public static final int CRITICAL_BATTERY = 5;
+    public static final long CONSERVE_STRETCH = 2;
+    public static final long CRITICAL_STRETCH = 4;
+    /** Shortest wait between ticks once critical */
+    public static final long CRITICAL_MIN_IVAL = 5 * 60000;
+
+    /** The minute each bucket holds, or -1 if it never held one */
+    private final long[] bucketMinute = new long[BUCKETS];
+    private final int[] highAccuracyFixes = new int[BUCKETS];
+    private final int[] coarseFixes = new int[BUCKETS];
+    private final int[] radioRequests = new int[BUCKETS];
+    private final long[] cpuMicros = new long[BUCKETS];
+
+    private int batteryPercent = 100;
+    private boolean charging = false;
+    private boolean powerSave = false;
+    private long stretchedIntervals = 0;
+    private Level level = Level.NORMAL;
+
+    public EnergyGovernor() {
+        for (int i = 0; i < BUCKETS; i++) bucketMinute[i] = -1;
+    }
+
+    public synchronized void recordFix(long time, FixPriority priority) {
+        int i = bucket(time);
+        if (priority == FixPriority.HIGH_ACCURACY) highAccuracyFixes[i]++;
+        else coarseFixes[i]++;
+    }
+
+    public synchronized void recordRadioRequest(long time) {
+        radioRequests[bucket(time)]++;
+    }
+
+    public synchronized void recordCpu(long time, long micros) {
+        cpuMicros[bucket(time)] += micros;
+    }
+
+    public synchronized void setPowerState(int batteryPercent, boolean charging, boolean powerSave) {
+        this.batteryPercent = batteryPercent;
+        this.charging = charging;
+        this.powerSave = powerSave;
+    }
+
+    public synchronized Level getLevel(long now) {
+        double used = usedShare(now);
+        boolean onBattery = !charging;
+        double conserveAt = level == Level.NORMAL ? CONSERVE_AT : CONSERVE_AT - RECOVERY_MARGIN;
+        double criticalAt = level == Level.CRITICAL ? 1 - RECOVERY_MARGIN : 1;
+        if (used >= criticalAt || (onBattery && batteryPercent <= CRITICAL_BATTERY)) level = Level.CRITICAL;
+        else if (used >= conserveAt || (onBattery && (powerSave || batteryPercent <= LOW_BATTERY))) level = Level.CONSERVE;
+        else level = Level.NORMAL;
+        return level;
+    }
+
+    /**
+     * @param warning Whether the fix is for a snitch warning, which is never downgraded
+     * @return The most expensive priority the budget allows for the next fix
+     */
+    public synchronized FixPriority allowedPriority(boolean warning, long now) {
+        if (warning) return FixPriority.HIGH_ACCURACY;
+        switch (getLevel(now)) {
+            case CRITICAL: return FixPriority.LOW_POWER;
+            case CONSERVE: return FixPriority.BALANCED_POWER;
+            default: return FixPriority.HIGH_ACCURACY;
+        }
+    }
+
+    /**
+     * @param warning Whether the interval is for a snitch warning, which is never stretched
+     * @return How long to actually wait before the next tick
+     */
+    public synchronized long stretchInterval(boolean warning, long ival, long now) {
+        if (warning || ival <= 0) return ival;
+        long stretched;
+        switch (getLevel(now)) {
+            case CRITICAL: stretched = Math.max(ival * CRITICAL_STRETCH, CRITICAL_MIN_IVAL); break;
+            case CONSERVE: stretched = ival * CONSERVE_STRETCH; break;
+            default: return ival;
+        }
+        stretchedIntervals++;
+        return stretched;
+    }
+
+    /** Ticks the governor has delayed since it was created */
+    public synchronized long getStretchedIntervals() {
+        return stretchedIntervals;
+    }
+
+    public synchronized Map<String, Object> snapshot(long now) {
+        double scale = budgetScale();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("level", getLevel(now).name());
+        stats.put("usedShare", usedShare(now));
+        stats.put("highAccuracyFixes", sum(highAccuracyFixes, now));
+        stats.put("highAccuracyFixBudget", (long) (HIGH_ACCURACY_FIXES * scale));
+        stats.put("coarseFixes", sum(coarseFixes, now));
+        stats.put("radioRequests", sum(radioRequests, now));
+        stats.put("radioRequestBudget", (long) (RADIO_REQUESTS * scale));
+        stats.put("cpuMicros", sum(cpuMicros, now));
+        stats.put("cpuMicrosBudget", (long) (CPU_MICROS * scale));
+        stats.put("batteryPercent", batteryPercent);
+        stats.put("charging", charging);
+        stats.put("powerSave", powerSave);
+        stats.put("stretchedIntervals", stretchedIntervals);
+        return stats;
+    }
+
+    /**
+     * The largest share of its budget any one resource has used in the window.
+     */
+    private double usedShare(long now) {
+        double scale = budgetScale();
+        double fixes = sum(highAccuracyFixes, now) / (HIGH_ACCURACY_FIXES * scale);
+        double radio = sum(radioRequests, now) / (RADIO_REQUESTS * scale);
+        double cpu = sum(cpuMicros, now) / (CPU_MICROS * scale);
+        return Math.max(fixes, Math.max(radio, cpu));
+    }
+
+    private double budgetScale() {
+        if (charging) return 2;
+        double scale = 1;
+        if (powerSave) scale /= 2;
+        if (batteryPercent <= LOW_BATTERY) scale /= 2;
+        return scale;
+    }
+
+    /**
+     * @return The index of the bucket for time, cleared first if it held an older minute
+     */
+    private int bucket(long time) {
+        long minute = time / BUCKET;
+        int i = (int) (minute % BUCKETS);
+        if (bucketMinute[i] != minute) {
+            bucketMinute[i] = minute;
+            highAccuracyFixes[i] = 0;
+            coarseFixes[i] = 0;
+            radioRequests[i] = 0;
+            cpuMicros[i] = 0;
+        }
+        return i;
+    }
+
+    private boolean inWindow(int i, long now) {
+        return bucketMinute[i] >= 0 && bucketMinute[i] > now / BUCKET - BUCKETS;
+    }
+
+    private long sum(int[] counts, long now) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (inWindow(i, now)) total += counts[i];
+        }
+        return total;
+    }
+
+    private long sum(long[] counts, long now) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (inWindow(i, now)) total += counts[i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,32 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * A single location fix, independent of where it came from.
+ * Unknown accuracy or speed is NaN.
+ */
+public class Fix {
+    public final double lat;
+    public final double lon;
+    /** Epoch millis */
+    public final long time;
+    /** Meters */
+    public final float accuracy;
+    /** Meters per second */
+    public final float speed;
+
+    public Fix(double lat, double lon, long time, float accuracy, float speed) {
+        this.lat = lat;
+        this.lon = lon;
+        this.time = time;
+        this.accuracy = accuracy;
+        this.speed = speed;
+    }
+
+    public boolean hasAccuracy() {
+        return !Float.isNaN(accuracy);
+    }
+
+    public boolean hasSpeed() {
+        return !Float.isNaN(speed);
+    }
+}
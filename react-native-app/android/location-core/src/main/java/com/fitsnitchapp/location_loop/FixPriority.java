@@ -0,0 +1,27 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * How much power a fix may cost, most expensive first. The app maps these
+ * to the fused location provider's priorities.
+ */
+public enum FixPriority {
+    /** GPS, accurate to a few meters */
+    HIGH_ACCURACY,
+    /** Mostly wifi and cell towers, accurate to about 100m */
+    BALANCED_POWER,
+    /** Cell towers only, accurate to a few kilometers */
+    LOW_POWER,
+    /** Only fixes other apps already asked for, at no cost of our own */
+    PASSIVE;
+
+    public boolean isCheaperThan(FixPriority other) {
+        return ordinal() > other.ordinal();
+    }
+
+    /**
+     * @return Whichever of the two costs less
+     */
+    public static FixPriority cheaper(FixPriority a, FixPriority b) {
+        return a.isCheaperThan(b) ? a : b;
+    }
+}
@@ -0,0 +1,25 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Always waits exactly the interval the state asked for.
+ */
+public class FixedIntervalPolicy implements IntervalPolicy {
+    private static final int MAX_DECISIONS = 50;
+    private final ArrayDeque<IntervalDecision> decisions = new ArrayDeque<>();
+
+    @Override
+    public synchronized long nextInterval(LoopState state, long requestedIval, LoopSignals signals) {
+        if (decisions.size() >= MAX_DECISIONS) decisions.removeFirst();
+        decisions.addLast(new IntervalDecision(System.currentTimeMillis(), state.getClass().getSimpleName(), requestedIval, requestedIval, "fixed"));
+        return requestedIval;
+    }
+
+    @Override
+    public synchronized List<IntervalDecision> getRecentDecisions() {
+        return new ArrayList<>(decisions);
+    }
+}
@@ -0,0 +1,35 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+
+/**
+ * Small-distance geometry helpers. Uses an equirectangular projection,
+ * which is accurate to well under a meter over the few kilometers the
+ * loop cares about.
+ */
+public class GeoMath {
+    public static final double EARTH_RADIUS_M = 6371008.8;
+    public static final double METERS_PER_DEGREE_LAT = Math.PI * EARTH_RADIUS_M / 180;
+
+    private GeoMath() {}
+
+    public static double metersBetween(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = (lat2 - lat1) * METERS_PER_DEGREE_LAT;
+        double dLon = (lon2 - lon1) * METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.sqrt(dLat * dLat + dLon * dLon);
+    }
+
+    public static double metersBetween(LatLonPair p1, LatLonPair p2) {
+        return metersBetween(p1.lat, p1.lon, p2.lat, p2.lon);
+    }
+
+    /**
+     * Straight-line distance in raw degrees, as used by the loop's
+     * significant-movement check.
+     */
+    public static double degreesBetween(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = lat2 - lat1;
+        double dLon = lon2 - lon1;
+        return Math.sqrt(dLon * dLon + dLat * dLat);
+    }
+}
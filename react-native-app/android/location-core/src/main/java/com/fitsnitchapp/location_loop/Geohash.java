@@ -0,0 +1,65 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * Minimal geohash encoder used to quantize coordinates into cache cells.
+ */
+public class Geohash {
+    /**
+     * Precision of cells caching a restaurant, roughly 38m x 19m. They must
+     * be larger than GPS jitter, or fixes from the same spot keep landing
+     * in new cells and never hit.
+     */
+    public static final int CELL_PRECISION = 8;
+    /**
+     * Precision of cells caching no restaurant, roughly 4.8m x 4.8m. They
+     * must be smaller than the server's check radius, or a fix from the
+     * sidewalk could hide walking into a restaurant in the same cell.
+     */
+    public static final int NEGATIVE_CELL_PRECISION = 9;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {}
+
+    public static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                }
+                else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            }
+            else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                }
+                else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.fitsnitchapp.location_loop;
+
+public class IntervalDecision {
+    public final long time;
+    public final String state;
+    public final long requestedIval;
+    public final long chosenIval;
+    public final String reason;
+
+    public IntervalDecision(long time, String state, long requestedIval, long chosenIval, String reason) {
+        this.time = time;
+        this.state = state;
+        this.requestedIval = requestedIval;
+        this.chosenIval = chosenIval;
+        this.reason = reason;
+    }
+}
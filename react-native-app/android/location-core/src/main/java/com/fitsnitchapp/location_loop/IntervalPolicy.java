@@ -0,0 +1,22 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.List;
+
+/**
+ * Decides how long the loop waits before its next tick.
+ * Consulted by LocationLoop every time a new tick is requested.
+ */
+public interface IntervalPolicy {
+    /**
+     * @param state The state the next tick will run in
+     * @param requestedIval The interval the state asked for
+     * @param signals What is known about the user's movement
+     * @return The interval to actually wait
+     */
+    long nextInterval(LoopState state, long requestedIval, LoopSignals signals);
+
+    /**
+     * @return The most recent decisions, oldest first
+     */
+    List<IntervalDecision> getRecentDecisions();
+}
@@ -0,0 +1,593 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.SnitchTrigger;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * The decision logic of the location loop, free of Android.
+ *
+ * Time, scheduling, fixes, restaurant lookups and side effects all go
+ * through the injected ports, so the same state machine runs on the device
+ * (see LocationLoopManager) and in the trace-replay simulator.
+ *
+ * All state lives on one thread: every public entry point is posted to the
+ * executor, and so are the answers from the location source and the
+ * restaurant resolver. Each tick gets a new generation, and answers that
+ * arrive after a newer tick started (or after stop) are dropped. Other
+ * threads read the loop through getSnapshot.
+ *
+ * Every interval and fix priority passes through the energy governor, so
+ * no path through the loop can poll faster than the energy budget allows.
+ * Within that, accuracy tiers decide whether a tick's cheap fix is enough.
+ */
+public class LocationLoop {
+    /**
+     * The movement check used before MovementFilter, in raw degrees (about
+     * 1m). Still computed so the jitter the filter suppresses can be counted.
+     */
+    public static final double SIGNIFICANT_RADIUS = 0.00001f;
+
+    private final LoopClock clock;
+    private final LoopScheduler scheduler;
+    private final LocationSource locationSource;
+    private final RestaurantResolver resolver;
+    private final LoopListener listener;
+    private final Executor executor;
+    private final EnergyGovernor energyGovernor = new EnergyGovernor();
+    private final AccuracyTiers accuracyTiers = new AccuracyTiers();
+
+    private volatile IntervalPolicy intervalPolicy = new AdaptiveIntervalPolicy();
+    private volatile LoopTimings timings = LoopProfile.BALANCED.timings;
+    private volatile LoopSnapshot snapshot = LoopSnapshot.EMPTY;
+    private long generation = 0;
+    /** Told when the current tick has ended */
+    private Runnable tickDone;
+    private LoopState loopState;
+    private Fix lastLocation;
+    private Fix latestFix;
+    private Fix previousFix;
+    /** The most recent fixes, oldest first, for trajectory checks */
+    private final ArrayDeque<Fix> trajectory = new ArrayDeque<>();
+    /** Fixes older than this aren't part of the current trajectory */
+    private long trajectoryStart = 0;
+    /** Fed every fix, so a warning can be decided from where the user stayed */
+    private final DwellDetector dwellDetector = new DwellDetector();
+    private final MovementFilter movementFilter = new MovementFilter();
+    /** Whether the user moved, as decided for the current tick */
+    private boolean moved = false;
+    private SnitchTrigger activeSnitch;
+    private Long lastUsedCheatTime;
+    /** When the pending tick is due */
+    private long nextTickAt = 0;
+    /** Set when the current event changed anything a checkpoint holds */
+    private boolean checkpointDue = false;
+    /** As of the last scheduled tick, for logging changes */
+    private EnergyGovernor.Level energyLevel = EnergyGovernor.Level.NORMAL;
+
+    /**
+     * Runs everything on the calling thread, for single threaded callers
+     * like the simulator and benchmarks.
+     */
+    public LocationLoop(LoopClock clock, LoopScheduler scheduler, LocationSource locationSource,
+                        RestaurantResolver resolver, LoopListener listener) {
+        this(clock, scheduler, locationSource, resolver, listener, Runnable::run);
+    }
+
+    /**
+     * @param executor Runs tasks one at a time, in order
+     */
+    public LocationLoop(LoopClock clock, LoopScheduler scheduler, LocationSource locationSource,
+                        RestaurantResolver resolver, LoopListener listener, Executor executor) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.locationSource = locationSource;
+        this.resolver = resolver;
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    public void start() {
+        post(() -> enterLoopState(new BaseState()));
+    }
+
+    /**
+     * Starts from a checkpoint saved by an earlier process instead of from
+     * scratch: the same state and active snitch, with the pending tick run
+     * when it was due (right away if that has passed). This skips the
+     * detection tick a fresh start would make, which could warn again about
+     * a restaurant the user was already snitched on in.
+     */
+    public void resume(LoopCheckpoint checkpoint) {
+        post(() -> {
+            LoopState state = checkpoint.createState();
+            activeSnitch = checkpoint.activeSnitch;
+            lastUsedCheatTime = checkpoint.lastUsedCheatTime;
+            lastLocation = checkpoint.lastLocation;
+            latestFix = checkpoint.lastLocation;
+            previousFix = null;
+            trajectory.clear();
+            trajectoryStart = 0;
+            dwellDetector.reset();
+            movementFilter.reset();
+            if (lastLocation != null) {
+                // Movement is measured from where the last process saw the user
+                movementFilter.add(lastLocation);
+                movementFilter.decide();
+            }
+            state.attach(this);
+            loopState = state;
+            long delay = Math.max(0, checkpoint.nextTickAt - clock.currentTimeMillis());
+            String stateName = state.getClass().getSimpleName();
+            listener.log("Resuming loop state: " + stateName + ", next tick in " + delay + "ms");
+            listener.onStateEntered(state, delay);
+            if (state instanceof ActiveSnitchState) {
+                // Puts the warning back up, in case it didn't survive a reboot
+                listener.onSnitchWarning(activeSnitch);
+            }
+            requestNextJob(delay);
+        });
+    }
+
+    public void stop() {
+        post(() -> {
+            newGeneration();
+            scheduler.cancel();
+            nextTickAt = 0;
+            checkpointDue = false;
+            listener.onCheckpoint(null);
+        });
+    }
+
+    /**
+     * Runs one iteration: fetches a fix from the location source and handles it.
+     * The fix is a cheap one unless accuracy tiers escalate it.
+     */
+    public void tick() {
+        tick(null);
+    }
+
+    /**
+     * @param onDone Run on the loop's thread once the tick has decided when
+     * the next one runs, right before scheduling it, or once it has been
+     * overtaken by a newer tick or by stop
+     */
+    public void tick(Runnable onDone) {
+        post(() -> {
+            long tick = newGeneration();
+            tickDone = onDone;
+            FixPriority allowed = getFixPriority();
+            FixPriority first = FixPriority.cheaper(
+                    accuracyTiers.firstPriority(loopState, nearestRestaurantMeters(latestFix)), allowed);
+            FixPriority precise = FixPriority.cheaper(FixPriority.HIGH_ACCURACY, allowed);
+            requestFix(tick, first, (fix) -> {
+                if (first.isCheaperThan(precise) && accuracyTiers.shouldEscalate(fix, nearestRestaurantMeters(fix))) {
+                    listener.debug("Escalating fix from %s to %s", first, precise);
+                    // The cheap fix still does if the precise one fails
+                    requestFix(tick, precise, (preciseFix) -> processFix(preciseFix == null ? fix : preciseFix));
+                    return;
+                }
+                processFix(fix);
+            });
+        });
+    }
+
+    /**
+     * Counts the fix against the energy budget, and hands the answer to
+     * onFix on the loop's thread unless a newer tick has started by then.
+     */
+    private void requestFix(long tick, FixPriority priority, Consumer<Fix> onFix) {
+        long requestedAt = clock.currentTimeMillis();
+        energyGovernor.recordFix(requestedAt, priority);
+        locationSource.requestFix(priority, (fix) -> post(() -> {
+            if (isStale(tick, "fix")) return;
+            accuracyTiers.record(priority, fix, clock.currentTimeMillis() - requestedAt);
+            onFix.accept(fix);
+        }));
+    }
+
+    private void processFix(Fix fix) {
+        processFixes(fix == null
+                ? Collections.emptyList()
+                : Collections.singletonList(fix));
+    }
+
+    private double nearestRestaurantMeters(Fix fix) {
+        return fix == null ? Double.NaN : resolver.nearestRestaurantMeters(new LatLonPair(fix.lat, fix.lon));
+    }
+
+    /**
+     * Runs a tick right away instead of waiting for the pending one.
+     */
+    public void wake() {
+        post(() -> {
+            scheduler.cancel();
+            requestNextJob(0);
+        });
+    }
+
+    /**
+     * Replaces the pending tick, if the loop has started.
+     */
+    public void reschedule(long delay) {
+        post(() -> {
+            if (loopState != null) requestNextJob(delay);
+        });
+    }
+
+    /**
+     * Only for use on the loop's thread. Other threads should use getSnapshot.
+     */
+    public LoopState getLoopState() {
+        return loopState;
+    }
+
+    SnitchTrigger getActiveSnitch() {
+        return activeSnitch;
+    }
+
+    public LoopSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public IntervalPolicy getIntervalPolicy() {
+        return intervalPolicy;
+    }
+
+    public void setIntervalPolicy(IntervalPolicy policy) {
+        post(() -> {
+            listener.log("Using interval policy: " + policy.getClass().getSimpleName());
+            intervalPolicy = policy;
+        });
+    }
+
+    public LoopTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Used from the next time the loop picks an interval. The pending tick
+     * keeps its time.
+     */
+    public void setTimings(LoopTimings timings) {
+        post(() -> {
+            listener.log("Using loop timings: " + timings);
+            this.timings = timings;
+        });
+    }
+
+    public long now() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * Safe to use from any thread. Fixes made outside of tick, like those of
+     * the tick schedulers that locate the user themselves, should be
+     * recorded with it.
+     */
+    public EnergyGovernor getEnergyGovernor() {
+        return energyGovernor;
+    }
+
+    /**
+     * Safe to use from any thread.
+     */
+    public AccuracyTiers getAccuracyTiers() {
+        return accuracyTiers;
+    }
+
+    /**
+     * The priority the energy budget allows for the next fix. Safe to call
+     * from any thread.
+     */
+    public FixPriority getFixPriority() {
+        return energyGovernor.allowedPriority(isWarning(snapshot.stateName), clock.currentTimeMillis());
+    }
+
+    /**
+     * Creates a new loop (alarm) with a new state. This method handles setting
+     * a new alarm, so the previous loop should not do that if it plan to
+     * use this method to change state.
+     *
+     * Uses the new state to determine the interval for the new loop.
+     * Defaults to the loop timings' loopShort
+     */
+    public void enterLoopState(LoopState newState) {
+        listener.log("Entering loop state: " + newState.getClass().getSimpleName());
+        newState.attach(this);
+        loopState = newState;
+        long ival = newState.getInitialLoopIval();
+        if (ival == 0) {
+            ival = timings.loopShort;
+        }
+        ival = intervalPolicy.nextInterval(newState, ival, buildSignals());
+        listener.onStateEntered(newState, ival);
+        requestNextJob(ival);
+    }
+
+    /**
+     * Collects what the interval policy needs to know about the user's movement.
+     */
+    LoopSignals buildSignals() {
+        if (latestFix == null) return null;
+        double speed = latestFix.hasSpeed() ? latestFix.speed : Double.NaN;
+        double displacement = Double.NaN;
+        long fixInterval = 0;
+        if (previousFix != null) {
+            displacement = GeoMath.metersBetween(previousFix.lat, previousFix.lon, latestFix.lat, latestFix.lon);
+            fixInterval = latestFix.time - previousFix.time;
+        }
+        double nearest = resolver.nearestRestaurantMeters(new LatLonPair(latestFix.lat, latestFix.lon));
+        return new LoopSignals(speed, displacement, fixInterval, clock.hourOfDay(), nearest);
+    }
+
+    /**
+     * Ends one iteration of the loop by setting the alarm
+     * that will trigger the next.
+     * Only call this once per iteration!
+     *
+     * @param ival How long to wait before the next iteration.
+     */
+    void setNextAlarm(long ival) {
+        ival = intervalPolicy.nextInterval(loopState, ival, buildSignals());
+        requestNextJob(ival);
+    }
+
+    /**
+     * Ends an iteration in which the user wasn't found at a restaurant.
+     * The listener may choose to wait for something like a geofence instead
+     * of polling again after ival.
+     */
+    void continueIdle(Fix location, long ival) {
+        long fallback = listener.onIdle(location);
+        if (fallback >= 0) {
+            requestNextJob(fallback);
+            return;
+        }
+        setNextAlarm(ival);
+    }
+
+    private void requestNextJob(long delay) {
+        String stateName = loopState.getClass().getSimpleName();
+        long now = clock.currentTimeMillis();
+        EnergyGovernor.Level level = energyGovernor.getLevel(now);
+        if (level != energyLevel) {
+            listener.log("Energy level: " + level);
+            energyLevel = level;
+        }
+        delay = energyGovernor.stretchInterval(isWarning(stateName), delay, now);
+        listener.debug("Requesting location worker, %s, %d", stateName, delay);
+        // Ends the tick first, so a scheduler that replaces its running tick
+        // replaces one that has already finished
+        completeTick();
+        scheduler.schedule(delay, stateName);
+        nextTickAt = now + delay;
+        checkpointDue = true;
+    }
+
+
+    /**
+     * Handles a fix delivered by the tick scheduler itself, as a new tick.
+     */
+    public void handleNewFix(Fix fix) {
+        handleNewFixes(fix == null
+                ? Collections.emptyList()
+                : Collections.singletonList(fix));
+    }
+
+    public void handleNewFixes(List<Fix> fixes) {
+        post(() -> {
+            newGeneration();
+            processFixes(fixes);
+        });
+    }
+
+    /**
+     * The main body of logic for each loop.
+     * Determines what to do based on current location and variables.
+     * All paths MUST terminate with a call to setNextAlarm to keep
+     * the loop going.
+     *
+     * With several fixes (oldest first), the most recent fix is treated
+     * as the current location.
+     */
+    private void processFixes(List<Fix> fixes) {
+        try {
+            if (loopState == null) {
+                loopState = new BaseState();
+                loopState.attach(this);
+            }
+            listener.debug("Handling new location: %s", loopState.getClass().getSimpleName());
+            if (fixes.isEmpty()) {
+                listener.log("Got null location! Retrying loop.");
+                requestNextJob(timings.loopShort);
+                return;
+            }
+            listener.onFixes(fixes);
+            for (Fix fix : fixes) {
+                trajectory.addLast(fix);
+                if (trajectory.size() > TrajectoryRules.MAX_POINTS) trajectory.removeFirst();
+                dwellDetector.add(fix);
+                movementFilter.add(fix);
+            }
+            Fix newFix = fixes.get(fixes.size() - 1);
+            previousFix = fixes.size() > 1 ? fixes.get(fixes.size() - 2) : latestFix;
+            latestFix = newFix;
+            decideMovement(newFix);
+
+            loopState.handleNewLocations(fixes);
+
+            // Save new location if change is significant
+            if (moved || lastLocation == null) {
+                lastLocation = newFix;
+            }
+        }
+        catch (Exception e) {
+            listener.log("Error found in location loop");
+            listener.log(String.valueOf(e.getLocalizedMessage()));
+            requestNextJob(timings.loopShort);
+        }
+    }
+
+    /**
+     * Whether the user really moved since the last significant location,
+     * as decided for the current tick by the movement filter.
+     */
+    boolean hasMoved() {
+        return moved;
+    }
+
+    private void decideMovement(Fix newFix) {
+        boolean rawMoved = lastLocation != null && GeoMath.degreesBetween(
+                lastLocation.lat, lastLocation.lon, newFix.lat, newFix.lon) >= SIGNIFICANT_RADIUS;
+        moved = movementFilter.decide();
+        listener.debug("Loc: %f, %f. Speed: %fm/s", newFix.lat, newFix.lon, newFix.speed);
+        listener.debug("Moved %.1fm of %.1fm needed. Moving: %b",
+                movementFilter.getLastDistance(), movementFilter.getLastThreshold(), moved);
+        listener.onMovementDecided(moved, rawMoved);
+    }
+
+    /**
+     * The answer is handed to cb on the loop's thread, unless a newer tick
+     * has started by then.
+     */
+    void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb) {
+        long tick = generation;
+        resolver.checkForRestaurant(location, (restaurant) -> post(() -> {
+            if (isStale(tick, "restaurant check")) return;
+            cb.accept(restaurant);
+        }));
+    }
+
+    /**
+     * Checks every fix in one round trip. Like checkForRestaurant, the answer
+     * is dropped if a newer tick has started by then.
+     * @param fixes Oldest first, never empty
+     */
+    void checkTrajectory(List<Fix> fixes, long minDwellMillis, Consumer<TrajectoryCheckResponse> cb) {
+        long tick = generation;
+        resolver.checkTrajectory(TrajectoryRules.toRequest(fixes, minDwellMillis), (verdict) -> post(() -> {
+            if (isStale(tick, "trajectory check")) return;
+            cb.accept(verdict);
+        }));
+    }
+
+    /**
+     * @return The fixes since the active snitch was triggered, including the
+     * one that triggered it, oldest first
+     */
+    List<Fix> getTrajectory() {
+        List<Fix> fixes = new ArrayList<>(trajectory.size());
+        for (Fix fix : trajectory) {
+            if (fix.time >= trajectoryStart) fixes.add(fix);
+        }
+        return fixes;
+    }
+
+    /**
+     * How sure the dwell detector is that the user stayed where the active
+     * snitch was triggered, for at least the length of a warning.
+     */
+    DwellDetector.Estimate estimateDwell() {
+        DwellDetector.Estimate estimate = dwellDetector.estimate(
+                activeSnitch.restaurantData, activeSnitch.originCoords, timings.warning);
+        listener.debug("Dwell: %s", estimate);
+        return estimate;
+    }
+
+    /**
+     * HANDLES ENTERING NEW STATE!
+     * Do not call enterLoopState when using this method.
+     *
+     * Handles all setup for snitch warning state.
+     */
+    void beginSnitchWarning(SnitchTrigger snitch) {
+        listener.log("Entering Snitch State!");
+        activeSnitch = snitch;
+        trajectoryStart = latestFix == null ? 0 : latestFix.time;
+        listener.onSnitchWarning(snitch);
+        enterLoopState(new ActiveSnitchState());
+    }
+
+    public void onUsedCheat() {
+        post(() -> {
+            lastUsedCheatTime = clock.currentTimeMillis();
+            checkpointDue = nextTickAt != 0;
+            listener.log("SET USED CHEAT" + lastUsedCheatTime);
+        });
+    }
+
+    boolean usedCheatForActiveSnitch() {
+        return lastUsedCheatTime != null && activeSnitch != null && lastUsedCheatTime > activeSnitch.created_at;
+    }
+
+    void publishActiveSnitch() {
+        listener.onSnitchPublished(activeSnitch);
+        activeSnitch = null;
+        lastUsedCheatTime = null;
+    }
+
+    void log(String message) {
+        listener.log(message);
+    }
+
+    /**
+     * Runs the task on the loop's thread, then publishes a new snapshot and,
+     * if the task changed the loop, a new checkpoint.
+     */
+    private void post(Runnable task) {
+        executor.execute(() -> {
+            task.run();
+            publishSnapshot();
+            if (checkpointDue) {
+                checkpointDue = false;
+                listener.onCheckpoint(createCheckpoint());
+            }
+        });
+    }
+
+    /**
+     * Ends the current tick, if any, and starts the next generation.
+     */
+    private long newGeneration() {
+        completeTick();
+        return ++generation;
+    }
+
+    private void completeTick() {
+        if (tickDone == null) return;
+        Runnable done = tickDone;
+        tickDone = null;
+        done.run();
+    }
+
+    private static boolean isWarning(String stateName) {
+        return ActiveSnitchState.class.getSimpleName().equals(stateName);
+    }
+
+    private boolean isStale(long tick, String what) {
+        if (tick == generation) return false;
+        listener.debug("Dropping late %s from tick %d, now at %d", what, tick, generation);
+        return true;
+    }
+
+    private LoopCheckpoint createCheckpoint() {
+        Restaurant staying = loopState instanceof StayingState ? ((StayingState) loopState).getRestaurant() : null;
+        return new LoopCheckpoint(loopState.getClass().getSimpleName(), staying, activeSnitch,
+                lastLocation, lastUsedCheatTime, clock.currentTimeMillis(), nextTickAt);
+    }
+
+    private void publishSnapshot() {
+        snapshot = new LoopSnapshot(
+                loopState == null ? null : loopState.getClass().getSimpleName(),
+                latestFix, activeSnitch, lastUsedCheatTime, generation);
+    }
+}
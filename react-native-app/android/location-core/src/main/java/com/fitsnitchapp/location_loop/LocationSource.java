@@ -0,0 +1,21 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.function.Consumer;
+
+/**
+ * Provides the current location for a tick.
+ */
+public interface LocationSource {
+    /**
+     * Requests a single fix. The callback receives null if no fix could be had.
+     */
+    void requestFix(Consumer<Fix> onFix);
+
+    /**
+     * Requests a single fix no more expensive than priority. Sources that
+     * can't choose how they locate the user ignore it.
+     */
+    default void requestFix(FixPriority priority, Consumer<Fix> onFix) {
+        requestFix(onFix);
+    }
+}
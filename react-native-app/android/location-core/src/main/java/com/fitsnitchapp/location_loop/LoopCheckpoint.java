@@ -0,0 +1,225 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.SnitchTrigger;
+import com.fitsnitchapp.codec.VarInts;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The part of the loop's state needed to carry on in a new process: the
+ * current state, the active snitch, the last significant location and when
+ * the pending tick was due.
+ *
+ * Encoded as a few dozen bytes: a version byte, varint fields, and a CRC32
+ * at the end so a torn write is detected instead of resumed from.
+ */
+public final class LoopCheckpoint {
+    public static final byte VERSION = 1;
+    /** Older checkpoints are ignored and the loop starts from scratch */
+    public static final long MAX_RESUME_AGE = 30 * 60000; // 30 minutes
+
+    private static final int HAS_LAST_LOCATION = 1;
+    private static final int HAS_SNITCH = 2;
+    private static final int HAS_USED_CHEAT = 4;
+    private static final int HAS_STAYING = 8;
+    private static final int HAS_LOCATION = 1;
+    private static final int HAS_ID = 2;
+    private static final double E7 = 1e7;
+
+    /** Simple class name of the loop state */
+    public final String stateName;
+    /** The restaurant a StayingState allows the user to stay in */
+    public final Restaurant stayingRestaurant;
+    public final SnitchTrigger activeSnitch;
+    public final Fix lastLocation;
+    public final Long lastUsedCheatTime;
+    public final long savedAt;
+    /** When the pending tick was due */
+    public final long nextTickAt;
+
+    LoopCheckpoint(String stateName, Restaurant stayingRestaurant, SnitchTrigger activeSnitch,
+                   Fix lastLocation, Long lastUsedCheatTime, long savedAt, long nextTickAt) {
+        this.stateName = stateName;
+        this.stayingRestaurant = stayingRestaurant;
+        this.activeSnitch = activeSnitch;
+        this.lastLocation = lastLocation;
+        this.lastUsedCheatTime = lastUsedCheatTime;
+        this.savedAt = savedAt;
+        this.nextTickAt = nextTickAt;
+    }
+
+    public boolean isResumable(long now) {
+        return savedAt <= now && now - savedAt <= MAX_RESUME_AGE;
+    }
+
+    /**
+     * A new instance of the saved state. Falls back to BaseState if what the
+     * state needs wasn't saved.
+     */
+    LoopState createState() {
+        if (ActiveSnitchState.class.getSimpleName().equals(stateName) && activeSnitch != null) {
+            return new ActiveSnitchState();
+        }
+        if (StayingState.class.getSimpleName().equals(stateName) && stayingRestaurant != null) {
+            return new StayingState(stayingRestaurant);
+        }
+        return new BaseState();
+    }
+
+    public byte[] encode() {
+        byte[] state = utf8(stateName);
+        byte[] snitchId = activeSnitch == null ? null : utf8(activeSnitch.id);
+        byte[] snitchName = activeSnitch == null || activeSnitch.restaurantData == null
+                ? null : utf8(activeSnitch.restaurantData.name);
+        byte[] snitchPlaceId = activeSnitch == null || activeSnitch.restaurantData == null
+                ? null : utf8(activeSnitch.restaurantData.id);
+        byte[] stayingName = stayingRestaurant == null ? null : utf8(stayingRestaurant.name);
+        byte[] stayingPlaceId = stayingRestaurant == null ? null : utf8(stayingRestaurant.id);
+        // Every fixed field together takes well under 256 bytes
+        ByteBuffer buf = ByteBuffer.allocate(256 + length(state) + length(snitchId)
+                + length(snitchName) + length(snitchPlaceId) + length(stayingName) + length(stayingPlaceId));
+
+        buf.put(VERSION);
+        VarInts.putVarLong(buf, savedAt);
+        VarInts.putZigZag(buf, nextTickAt - savedAt);
+        putString(buf, state);
+        buf.put((byte) ((lastLocation != null ? HAS_LAST_LOCATION : 0)
+                | (activeSnitch != null ? HAS_SNITCH : 0)
+                | (lastUsedCheatTime != null ? HAS_USED_CHEAT : 0)
+                | (stayingRestaurant != null ? HAS_STAYING : 0)));
+        if (lastLocation != null) {
+            VarInts.putVarLong(buf, lastLocation.time);
+            putCoords(buf, lastLocation.lat, lastLocation.lon);
+            buf.putFloat(lastLocation.accuracy);
+            buf.putFloat(lastLocation.speed);
+        }
+        if (activeSnitch != null) {
+            putString(buf, snitchId);
+            VarInts.putVarLong(buf, activeSnitch.created_at);
+            LatLonPair origin = activeSnitch.originCoords;
+            buf.put((byte) (origin != null ? HAS_LOCATION : 0));
+            if (origin != null) putCoords(buf, origin.lat, origin.lon);
+            putRestaurant(buf, activeSnitch.restaurantData, snitchName, snitchPlaceId);
+        }
+        if (lastUsedCheatTime != null) {
+            VarInts.putVarLong(buf, lastUsedCheatTime);
+        }
+        if (stayingRestaurant != null) {
+            putRestaurant(buf, stayingRestaurant, stayingName, stayingPlaceId);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the bytes are damaged or from an unknown version
+     */
+    public static LoopCheckpoint decode(byte[] bytes) {
+        if (bytes.length < 5) throw new IllegalArgumentException("Truncated checkpoint");
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+        if (ByteBuffer.wrap(bytes).getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IllegalArgumentException("Checkpoint checksum mismatch");
+        }
+        byte version = buf.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+        }
+        try {
+            long savedAt = VarInts.getVarLong(buf);
+            long nextTickAt = savedAt + VarInts.getZigZag(buf);
+            String stateName = getString(buf);
+            int flags = buf.get();
+            Fix lastLocation = null;
+            if ((flags & HAS_LAST_LOCATION) != 0) {
+                long time = VarInts.getVarLong(buf);
+                LatLonPair coords = getCoords(buf);
+                lastLocation = new Fix(coords.lat, coords.lon, time, buf.getFloat(), buf.getFloat());
+            }
+            SnitchTrigger activeSnitch = null;
+            if ((flags & HAS_SNITCH) != 0) {
+                String id = getString(buf);
+                long createdAt = VarInts.getVarLong(buf);
+                LatLonPair origin = (buf.get() & HAS_LOCATION) != 0 ? getCoords(buf) : null;
+                activeSnitch = new SnitchTrigger(createdAt, origin, getRestaurant(buf));
+                activeSnitch.id = id;
+            }
+            Long lastUsedCheatTime = (flags & HAS_USED_CHEAT) != 0 ? VarInts.getVarLong(buf) : null;
+            Restaurant stayingRestaurant = (flags & HAS_STAYING) != 0 ? getRestaurant(buf) : null;
+            return new LoopCheckpoint(stateName, stayingRestaurant, activeSnitch, lastLocation,
+                    lastUsedCheatTime, savedAt, nextTickAt);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated checkpoint");
+        }
+    }
+
+
+    private static void putCoords(ByteBuffer buf, double lat, double lon) {
+        VarInts.putZigZag(buf, Math.round(lat * E7));
+        VarInts.putZigZag(buf, Math.round(lon * E7));
+    }
+
+    private static LatLonPair getCoords(ByteBuffer buf) {
+        double lat = VarInts.getZigZag(buf) / E7;
+        return new LatLonPair(lat, VarInts.getZigZag(buf) / E7);
+    }
+
+    private static void putRestaurant(ByteBuffer buf, Restaurant restaurant, byte[] name, byte[] id) {
+        buf.put((byte) (restaurant == null ? 0 : 1));
+        if (restaurant == null) return;
+        putString(buf, name);
+        buf.put((byte) ((restaurant.location != null ? HAS_LOCATION : 0) | (id != null ? HAS_ID : 0)));
+        if (restaurant.location != null) putCoords(buf, restaurant.location.lat, restaurant.location.lon);
+        if (id != null) putString(buf, id);
+    }
+
+    /**
+     * Checkpoints saved before restaurants had ids read the same, without one.
+     */
+    private static Restaurant getRestaurant(ByteBuffer buf) {
+        if (buf.get() == 0) return null;
+        String name = getString(buf);
+        int flags = buf.get();
+        LatLonPair location = (flags & HAS_LOCATION) != 0 ? getCoords(buf) : null;
+        String id = (flags & HAS_ID) != 0 ? getString(buf) : null;
+        return new Restaurant(id, name, location);
+    }
+
+    /** Length + 1, with 0 meaning null, then the UTF-8 bytes */
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            VarInts.putVarLong(buf, 0);
+            return;
+        }
+        VarInts.putVarLong(buf, bytes.length + 1);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        long length = VarInts.getVarLong(buf) - 1;
+        if (length < 0) return null;
+        if (length > buf.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[(int) length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.fitsnitchapp.location_loop;
+
+import java.util.Calendar;
+
+/**
+ * Source of time for the loop, so that it can run on simulated time.
+ */
+public interface LoopClock {
+    LoopClock SYSTEM = new LoopClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public int hourOfDay() {
+            return Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        }
+    };
+
+    long currentTimeMillis();
+
+    /**
+     * @return Local hour of day, 0-23
+     */
+    int hourOfDay();
+}
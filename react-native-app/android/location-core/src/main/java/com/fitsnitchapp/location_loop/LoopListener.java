@@ -0,0 +1,56 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.SnitchTrigger;
+
+import java.util.List;
+
+/**
+ * Side effects of the loop's decisions: notifications, delivery of
+ * snitches and logging. Every method is optional.
+ */
+public interface LoopListener {
+    default void onStateEntered(LoopState state, long ival) {}
+
+    /**
+     * Called with every non-empty set of fixes before it is handled, oldest first.
+     */
+    default void onFixes(List<Fix> fixes) {}
+
+    /**
+     * Called once per tick with the movement filter's decision.
+     * @param rawMoved What the old raw-degree check would have said, so the
+     * jitter the filter suppresses can be counted
+     */
+    default void onMovementDecided(boolean moved, boolean rawMoved) {}
+
+    default void onSnitchWarning(SnitchTrigger snitch) {}
+
+    /**
+     * The warning ran out and the user is being snitched on.
+     */
+    default void onSnitchPublished(SnitchTrigger snitch) {}
+
+    /**
+     * Called when a tick found no restaurant. The listener may take over
+     * waiting for the next tick, for example with geofences.
+     * @return Fallback delay until the next tick, or -1 to keep polling as usual
+     */
+    default long onIdle(Fix fix) {
+        return -1;
+    }
+
+    /**
+     * Called after every event that changed what a restarted process would
+     * need to resume the loop, on the loop's thread.
+     * @param checkpoint Null once the loop is stopped, meaning there is
+     * nothing to resume
+     */
+    default void onCheckpoint(LoopCheckpoint checkpoint) {}
+
+    default void log(String message) {}
+
+    /**
+     * Debug level logging. Only formatted if the listener wants to.
+     */
+    default void debug(String format, Object... args) {}
+}
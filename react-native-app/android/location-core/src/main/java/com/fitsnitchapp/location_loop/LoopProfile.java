@@ -0,0 +1,33 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * Named sets of loop timings the user can switch between at runtime.
+ *
+ * Every profile keeps the 30 second warning, since the warning notification
+ * promises it. They differ in how often the user is looked for and how
+ * quickly leaving a restaurant is noticed.
+ */
+public enum LoopProfile {
+    BATTERY_SAVER("battery-saver", new LoopTimings(30000, 3 * 60000, 60000, 20 * 60000)),
+    BALANCED("balanced", new LoopTimings(30000, 60000, 30000, 10 * 60000)),
+    PRECISE("precise", new LoopTimings(30000, 30000, 15000, 5 * 60000));
+
+    /** Name used by JS and in settings */
+    public final String key;
+    public final LoopTimings timings;
+
+    LoopProfile(String key, LoopTimings timings) {
+        this.key = key;
+        this.timings = timings;
+    }
+
+    /**
+     * @return The profile with this key, or null if there is none
+     */
+    public static LoopProfile fromKey(String key) {
+        for (LoopProfile profile : values()) {
+            if (profile.key.equals(key)) return profile;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * Arranges for LocationLoop.tick (or an equivalent delivery of fixes)
+ * to happen after a delay. Only one tick is ever pending.
+ */
+public interface LoopScheduler {
+    /**
+     * Replaces any pending tick with one that runs after delay.
+     * @param stateName Name of the state the tick will run in
+     */
+    void schedule(long delay, String stateName);
+
+    void cancel();
+}
@@ -0,0 +1,36 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * Snapshot of what the loop knows about the user's movement when it
+ * schedules the next tick. Unknown values are NaN.
+ */
+public class LoopSignals {
+    /** Reported speed of the latest fix, in m/s */
+    public final double speed;
+    /** Meters moved between the previous and latest fix */
+    public final double displacement;
+    /** Milliseconds between the previous and latest fix */
+    public final long fixInterval;
+    /** Local hour of day, 0-23 */
+    public final int hourOfDay;
+    /** Meters to the nearest restaurant in the local index */
+    public final double nearestRestaurantDistance;
+
+    public LoopSignals(double speed, double displacement, long fixInterval, int hourOfDay, double nearestRestaurantDistance) {
+        this.speed = speed;
+        this.displacement = displacement;
+        this.fixInterval = fixInterval;
+        this.hourOfDay = hourOfDay;
+        this.nearestRestaurantDistance = nearestRestaurantDistance;
+    }
+
+    /**
+     * Best guess of how fast the user is moving, preferring the fix's own
+     * speed and falling back to displacement over time.
+     */
+    public double effectiveSpeed() {
+        if (!Double.isNaN(speed) && speed > 0) return speed;
+        if (!Double.isNaN(displacement) && fixInterval > 0) return displacement / (fixInterval / 1000.0);
+        return Double.NaN;
+    }
+}
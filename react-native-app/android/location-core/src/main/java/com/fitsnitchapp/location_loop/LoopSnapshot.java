@@ -0,0 +1,27 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.SnitchTrigger;
+
+/**
+ * What the loop looked like after it last handled an event. Safe to read
+ * from any thread; the loop publishes a new one instead of changing it.
+ */
+public final class LoopSnapshot {
+    static final LoopSnapshot EMPTY = new LoopSnapshot(null, null, null, null, 0);
+
+    /** Simple class name of the current state, or null before the loop starts */
+    public final String stateName;
+    public final Fix latestFix;
+    public final SnitchTrigger activeSnitch;
+    public final Long lastUsedCheatTime;
+    /** Incremented for every tick, and when the loop is stopped */
+    public final long generation;
+
+    LoopSnapshot(String stateName, Fix latestFix, SnitchTrigger activeSnitch, Long lastUsedCheatTime, long generation) {
+        this.stateName = stateName;
+        this.latestFix = latestFix;
+        this.activeSnitch = activeSnitch;
+        this.lastUsedCheatTime = lastUsedCheatTime;
+        this.generation = generation;
+    }
+}
@@ -1,15 +1,28 @@
 package com.fitsnitchapp.location_loop;
 
-import android.location.Location;
+import java.util.List;
 
 public abstract class LoopState {
-    protected final LocationLoopManager loopManager = LocationLoopManager.getInstance();
+    protected LocationLoop loop;
+
+    void attach(LocationLoop loop) {
+        this.loop = loop;
+    }
 
     /**
      * Performs the logic for a particular loop in the current state
      * @param location
      */
-    public abstract void handleNewLocation(Location location);
+    public abstract void handleNewLocation(Fix location);
+
+    /**
+     * Performs the logic for a loop that received several fixes at once,
+     * oldest first. By default only the most recent fix is used.
+     * @param locations Never empty
+     */
+    public void handleNewLocations(List<Fix> locations) {
+        handleNewLocation(locations.get(locations.size() - 1));
+    }
 
     /**
      * Provides the initial loop interval when state begins.
@@ -22,10 +35,10 @@ public abstract class LoopState {
     };
 
     protected void continueLoop(long waitTime) {
-        LocationLoopManager.getInstance().setNextAlarm(waitTime);
+        loop.setNextAlarm(waitTime);
     }
 
     public void nextState(LoopState newState) {
-        LocationLoopManager.getInstance().enterLoopState(newState);
+        loop.enterLoopState(newState);
     }
 }
@@ -0,0 +1,29 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * How long the loop waits between ticks in each state, in millis.
+ */
+public final class LoopTimings {
+    /** Short times for trying out debug builds */
+    public static final LoopTimings DEBUG = new LoopTimings(30000, 30000, 30000, 60000);
+
+    /** How long a snitch warning lasts before the user is snitched on */
+    public final long warning;
+    /** Between detection ticks, before any interval policy adjusts it */
+    public final long loopShort;
+    public final long willLeave;
+    /** Between ticks while the user is allowed to stay in a restaurant */
+    public final long willStay;
+
+    public LoopTimings(long warning, long loopShort, long willLeave, long willStay) {
+        this.warning = warning;
+        this.loopShort = loopShort;
+        this.willLeave = willLeave;
+        this.willStay = willStay;
+    }
+
+    @Override
+    public String toString() {
+        return "warning " + warning + ", loop " + loopShort + ", leave " + willLeave + ", stay " + willStay;
+    }
+}
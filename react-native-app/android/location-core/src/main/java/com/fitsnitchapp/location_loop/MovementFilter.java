@@ -0,0 +1,114 @@
+package com.fitsnitchapp.location_loop;
+
+/**
+ * Decides whether the user has really moved, rather than their fixes
+ * jittering around the same spot.
+ *
+ * Fixes go through a position-only Kalman filter: the estimate's variance
+ * grows with time at walking pace, and each fix pulls the estimate toward
+ * it in proportion to how accurate it is. Movement is measured in meters
+ * from an anchor, the estimate when the user last moved. It must exceed
+ * a radius plus two standard deviations of the combined uncertainty.
+ * That radius has hysteresis: it is ENTER_RADIUS while the user is
+ * stationary and EXIT_RADIUS while they are moving, so a slow walk keeps
+ * counting as movement and a stop doesn't flicker.
+ *
+ * Not thread safe. The loop feeds it from its own thread.
+ */
+public class MovementFilter {
+    /** Meters the user must go from the anchor to start moving */
+    public static final double ENTER_RADIUS = 25;
+    /** Meters the user must keep going, per decision, to stay moving */
+    public static final double EXIT_RADIUS = 10;
+    /** Standard deviations of uncertainty added to the radius */
+    public static final double SIGMAS = 2;
+    /** How fast (m/s) the true position may drift between fixes */
+    public static final double PROCESS_SPEED = 1.5;
+    /** Accuracy assumed for fixes that don't report one */
+    public static final float DEFAULT_ACCURACY = 20;
+
+    private boolean hasEstimate = false;
+    private double lat, lon;
+    /** Of the estimate, in square meters */
+    private double variance;
+    private long time;
+
+    private boolean hasAnchor = false;
+    private double anchorLat, anchorLon;
+    private double anchorVariance;
+    private boolean moving = false;
+
+    private double lastDistance = Double.NaN;
+    private double lastThreshold = Double.NaN;
+
+    /**
+     * @return False if the fix was too inaccurate to use
+     */
+    public boolean add(Fix fix) {
+        if (fix.hasAccuracy() && fix.accuracy > TrajectoryRules.MAX_ACCURACY) return false;
+        double accuracy = Math.max(1, fix.hasAccuracy() ? fix.accuracy : DEFAULT_ACCURACY);
+        double measurementVariance = accuracy * accuracy;
+        if (!hasEstimate) {
+            hasEstimate = true;
+            lat = fix.lat;
+            lon = fix.lon;
+            variance = measurementVariance;
+            time = fix.time;
+            return true;
+        }
+        double drift = PROCESS_SPEED * Math.max(0, fix.time - time) / 1000.0;
+        variance += drift * drift;
+        double gain = variance / (variance + measurementVariance);
+        lat += gain * (fix.lat - lat);
+        lon += gain * (fix.lon - lon);
+        variance *= 1 - gain;
+        time = Math.max(time, fix.time);
+        return true;
+    }
+
+    /**
+     * Makes the decision for the fixes added since the last one, and moves
+     * the anchor if the user moved. The first decision anchors without
+     * counting as movement.
+     */
+    public boolean decide() {
+        if (!hasEstimate) return false;
+        if (!hasAnchor) {
+            anchor();
+            return false;
+        }
+        double radius = moving ? EXIT_RADIUS : ENTER_RADIUS;
+        lastDistance = GeoMath.metersBetween(anchorLat, anchorLon, lat, lon);
+        lastThreshold = radius + SIGMAS * Math.sqrt(variance + anchorVariance);
+        moving = lastDistance > lastThreshold;
+        if (moving) anchor();
+        return moving;
+    }
+
+    public void reset() {
+        hasEstimate = false;
+        hasAnchor = false;
+        moving = false;
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    /** Meters from the anchor at the last decision */
+    public double getLastDistance() {
+        return lastDistance;
+    }
+
+    /** Meters the last decision needed to count as movement */
+    public double getLastThreshold() {
+        return lastThreshold;
+    }
+
+    private void anchor() {
+        hasAnchor = true;
+        anchorLat = lat;
+        anchorLon = lon;
+        anchorVariance = variance;
+    }
+}
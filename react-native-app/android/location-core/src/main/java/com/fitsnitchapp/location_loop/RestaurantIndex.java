@@ -0,0 +1,137 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.RestaurantDetails;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable grid index over the restaurants of one fetched area.
+ * Each restaurant is bucketed into every grid cell its bounding box
+ * touches, so a radius query only has to look at a handful of cells.
+ */
+public class RestaurantIndex {
+    /** Roughly 110m per cell, about 7x the detection radius */
+    private static final double GRID_CELL = 0.001;
+
+    public final LatLonPair center;
+    public final double radius;
+    public final long fetchedAt;
+    private final Map<Long, List<Entry>> grid = new HashMap<>();
+    private final int size;
+
+    public RestaurantIndex(LatLonPair center, double radius, List<RestaurantDetails> restaurants, long fetchedAt) {
+        this.center = center;
+        this.radius = radius;
+        this.fetchedAt = fetchedAt;
+        int count = 0;
+        for (RestaurantDetails details : restaurants) {
+            Entry entry = Entry.from(details);
+            if (entry == null) continue;
+            count++;
+            for (int x = cellIndex(entry.minLat); x <= cellIndex(entry.maxLat); x++) {
+                for (int y = cellIndex(entry.minLon); y <= cellIndex(entry.maxLon); y++) {
+                    List<Entry> bucket = grid.get(key(x, y));
+                    if (bucket == null) {
+                        bucket = new ArrayList<>(2);
+                        grid.put(key(x, y), bucket);
+                    }
+                    bucket.add(entry);
+                }
+            }
+        }
+        size = count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether a query of queryRadius around this location falls entirely
+     * inside the fetched area.
+     */
+    public boolean covers(LatLonPair location, double queryRadius) {
+        double margin = radius - queryRadius;
+        return Math.abs(location.lat - center.lat) <= margin
+                && Math.abs(location.lon - center.lon) <= margin;
+    }
+
+    /**
+     * Finds every restaurant whose pin or boundary box overlaps the square of
+     * queryRadius around the location, like the bbox query on the server.
+     */
+    public List<RestaurantDetails> query(LatLonPair location, double queryRadius) {
+        double minLat = location.lat - queryRadius;
+        double maxLat = location.lat + queryRadius;
+        double minLon = location.lon - queryRadius;
+        double maxLon = location.lon + queryRadius;
+
+        List<RestaurantDetails> results = null;
+        Set<Entry> seen = null;
+        for (int x = cellIndex(minLat); x <= cellIndex(maxLat); x++) {
+            for (int y = cellIndex(minLon); y <= cellIndex(maxLon); y++) {
+                List<Entry> bucket = grid.get(key(x, y));
+                if (bucket == null) continue;
+                for (Entry entry : bucket) {
+                    if (!entry.intersects(minLat, minLon, maxLat, maxLon)) continue;
+                    if (seen == null) {
+                        seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                        results = new ArrayList<>();
+                    }
+                    if (seen.add(entry)) results.add(entry.details);
+                }
+            }
+        }
+        return results == null ? Collections.emptyList() : results;
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / GRID_CELL);
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+
+    private static class Entry {
+        final RestaurantDetails details;
+        final double minLat, minLon, maxLat, maxLon;
+
+        private Entry(RestaurantDetails details, double minLat, double minLon, double maxLat, double maxLon) {
+            this.details = details;
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+        }
+
+        static Entry from(RestaurantDetails details) {
+            double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            List<LatLonPair> points = new ArrayList<>();
+            if (details.boundary != null) points.addAll(details.boundary);
+            if (details.pinLocation != null) points.add(details.pinLocation);
+            if (points.isEmpty()) return null;
+            for (LatLonPair p : points) {
+                minLat = Math.min(minLat, p.lat);
+                maxLat = Math.max(maxLat, p.lat);
+                minLon = Math.min(minLon, p.lon);
+                maxLon = Math.max(maxLon, p.lon);
+            }
+            return new Entry(details, minLat, minLon, maxLat, maxLon);
+        }
+
+        boolean intersects(double minLat, double minLon, double maxLat, double maxLon) {
+            return this.minLat <= maxLat && this.maxLat >= minLat
+                    && this.minLon <= maxLon && this.maxLon >= minLon;
+        }
+    }
+}
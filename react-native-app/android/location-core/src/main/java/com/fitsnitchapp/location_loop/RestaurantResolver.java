@@ -0,0 +1,39 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.api.TrajectoryPoint;
+
+import java.util.function.Consumer;
+
+/**
+ * Answers which restaurant, if any, a location is at.
+ */
+public interface RestaurantResolver {
+    /**
+     * Calls back with the restaurant at this location, or null for
+     * no restaurant or any error. May call back synchronously.
+     */
+    void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb);
+
+    /**
+     * Calls back with a restaurant for every point of the trajectory and a
+     * dwell verdict, in a single round trip. By default only the last point
+     * is checked. Errors are answered as no restaurant at all.
+     * May call back synchronously.
+     */
+    default void checkTrajectory(TrajectoryCheckRequest request, Consumer<TrajectoryCheckResponse> cb) {
+        TrajectoryPoint last = request.points.get(request.points.size() - 1);
+        checkForRestaurant(last.location, (restaurant) ->
+                cb.accept(TrajectoryRules.fromLastPoint(request, restaurant)));
+    }
+
+    /**
+     * @return Meters to the nearest known restaurant, or NaN if unknown
+     */
+    default double nearestRestaurantMeters(LatLonPair location) {
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,210 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.RestaurantDetails;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rules for resolving a location to one of the restaurants around it.
+ *
+ * A port of LocationService.getRestaurantAtLocation on the server, so a
+ * local answer matches what check-location would say.
+ */
+public class RestaurantRules {
+    /** Same radius the server uses for check-location */
+    public static final double SEARCH_RADIUS = 0.00015;
+    /** How far to look for the nearest restaurant (~500m) */
+    public static final double NEAREST_SEARCH_RADIUS = 0.005;
+    /** How far around a checked location its candidates are sent for (~110m) */
+    public static final double CANDIDATE_RADIUS = 0.001;
+    /** Most candidates one check-location answer carries */
+    public static final int MAX_CANDIDATES = 8;
+    /** Kept between a candidate area and the places left out of it, well above wire precision */
+    private static final double CANDIDATE_MARGIN = 1e-6;
+
+    private RestaurantRules() {}
+
+    /**
+     * Finds the restaurant the location is inside of or closest to,
+     * among the places found within SEARCH_RADIUS of it.
+     */
+    public static Restaurant resolve(List<RestaurantDetails> places, LatLonPair coord) {
+        if (places.size() == 1) return toRestaurant(places.get(0));
+
+        if (places.size() > 1) {
+            RestaurantDetails closestPlace = null;
+            double smallestDistance = Double.POSITIVE_INFINITY;
+            for (RestaurantDetails place : places) {
+                // If the user is within the boundaries of this place, return this place!
+                if (place.hasBoundary() && isInBoundary(place.boundary, coord)) {
+                    return toRestaurant(place);
+                }
+                // The pin (or boundary centroid, filled in by the server)
+                // is the only other way of fixing a place to a coordinate
+                LatLonPair pin = pinOf(place);
+                if (pin != null) {
+                    double dist = distanceBetween(coord, pin);
+                    if (dist < smallestDistance) {
+                        closestPlace = place;
+                        smallestDistance = dist;
+                    }
+                }
+            }
+            if (closestPlace != null) return toRestaurant(closestPlace);
+        }
+
+        return null;
+    }
+
+    /**
+     * Answers a check-location from restaurants that have been fetched.
+     */
+    public static CheckLocationResponse checkLocation(RestaurantIndex index, LatLonPair location) {
+        Restaurant restaurant = resolve(index.query(location, SEARCH_RADIUS), location);
+        return new CheckLocationResponse(restaurant, restaurant != null,
+                candidates(index.query(location, CANDIDATE_RADIUS), location));
+    }
+
+    /**
+     * Orders places by how well they match the location: those it is inside
+     * of first, then those within SEARCH_RADIUS by distance to their pin,
+     * then the rest by distance to their pin. The first is the one resolve
+     * would pick from the places within SEARCH_RADIUS.
+     */
+    public static List<RestaurantDetails> rank(List<RestaurantDetails> places, LatLonPair coord) {
+        List<Ranked> ranked = new ArrayList<>(places.size());
+        for (RestaurantDetails place : places) ranked.add(new Ranked(place, coord));
+        // Stable, so ties keep the order resolve sees them in
+        ranked.sort(Comparator.<Ranked>comparingInt(r -> r.tier).thenComparingDouble(r -> r.distance));
+        List<RestaurantDetails> result = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) result.add(r.place);
+        return result;
+    }
+
+    /**
+     * The candidates a check-location answer carries: the places around the
+     * location, ranked, and the square around it they cover. With more than
+     * MAX_CANDIDATES places, only the closest are kept and the square shrinks
+     * to leave out the rest, so that a check anywhere inside it finds no
+     * place that isn't a candidate.
+     *
+     * @param places Every place whose pin or boundary box overlaps the square
+     *               of CANDIDATE_RADIUS around the location
+     */
+    public static RestaurantsInAreaResponse candidates(List<RestaurantDetails> places, LatLonPair location) {
+        double radius = CANDIDATE_RADIUS;
+        List<RestaurantDetails> kept = places;
+        if (places.size() > MAX_CANDIDATES) {
+            List<RestaurantDetails> closest = new ArrayList<>(places);
+            closest.sort(Comparator.comparingDouble(place -> boxDistance(place, location)));
+            kept = closest.subList(0, MAX_CANDIDATES);
+            radius = Math.min(radius, boxDistance(closest.get(MAX_CANDIDATES), location) - CANDIDATE_MARGIN);
+        }
+        return new RestaurantsInAreaResponse(location, Math.max(0, radius), rank(kept, location));
+    }
+
+    /**
+     * @return Meters to the closest restaurant pin in the index, NaN if the index
+     * doesn't cover the search, or the search radius if there is nothing within it.
+     */
+    public static double nearestRestaurantMeters(RestaurantIndex index, LatLonPair location) {
+        if (index == null || !index.covers(location, NEAREST_SEARCH_RADIUS)) {
+            return Double.NaN;
+        }
+        double nearest = NEAREST_SEARCH_RADIUS * GeoMath.METERS_PER_DEGREE_LAT;
+        for (RestaurantDetails place : index.query(location, NEAREST_SEARCH_RADIUS)) {
+            if (place.hasBoundary() && isInBoundary(place.boundary, location)) return 0;
+            LatLonPair pin = pinOf(place);
+            if (pin != null) nearest = Math.min(nearest, GeoMath.metersBetween(location, pin));
+        }
+        return nearest;
+    }
+
+    public static LatLonPair pinOf(RestaurantDetails place) {
+        if (place.pinLocation != null) return place.pinLocation;
+        if (!place.hasBoundary()) return null;
+        double lat = 0, lon = 0;
+        for (LatLonPair p : place.boundary) {
+            lat += p.lat;
+            lon += p.lon;
+        }
+        return new LatLonPair(lat / place.boundary.size(), lon / place.boundary.size());
+    }
+
+    private static Restaurant toRestaurant(RestaurantDetails place) {
+        return new Restaurant(place.id, place.name, pinOf(place));
+    }
+
+    /**
+     * Degrees from the location to the place's pin and boundary box along
+     * the farther axis, the smallest square radius around the location that
+     * overlaps the box.
+     */
+    static double boxDistance(RestaurantDetails place, LatLonPair location) {
+        double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        if (place.boundary != null) {
+            for (LatLonPair p : place.boundary) {
+                minLat = Math.min(minLat, p.lat);
+                maxLat = Math.max(maxLat, p.lat);
+                minLon = Math.min(minLon, p.lon);
+                maxLon = Math.max(maxLon, p.lon);
+            }
+        }
+        if (place.pinLocation != null) {
+            minLat = Math.min(minLat, place.pinLocation.lat);
+            maxLat = Math.max(maxLat, place.pinLocation.lat);
+            minLon = Math.min(minLon, place.pinLocation.lon);
+            maxLon = Math.max(maxLon, place.pinLocation.lon);
+        }
+        if (minLat > maxLat) return Double.POSITIVE_INFINITY;
+        double lat = Math.max(0, Math.max(minLat - location.lat, location.lat - maxLat));
+        double lon = Math.max(0, Math.max(minLon - location.lon, location.lon - maxLon));
+        return Math.max(lat, lon);
+    }
+
+    public static double distanceBetween(LatLonPair p1, LatLonPair p2) {
+        return Math.sqrt(Math.pow(p2.lon - p1.lon, 2) + Math.pow(p2.lat - p1.lat, 2));
+    }
+
+    /**
+     * Even-odd ray casting test. Points exactly on an edge count as outside,
+     * which matches the strict check done with robust-point-in-polygon.
+     */
+    public static boolean isInBoundary(List<LatLonPair> boundary, LatLonPair p) {
+        boolean inside = false;
+        int n = boundary.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            LatLonPair a = boundary.get(i);
+            LatLonPair b = boundary.get(j);
+            if ((a.lon > p.lon) != (b.lon > p.lon)) {
+                double latAtLon = (b.lat - a.lat) * (p.lon - a.lon) / (b.lon - a.lon) + a.lat;
+                if (p.lat == latAtLon) return false;
+                if (p.lat < latAtLon) inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+
+    private static class Ranked {
+        final RestaurantDetails place;
+        final int tier;
+        final double distance;
+
+        Ranked(RestaurantDetails place, LatLonPair coord) {
+            this.place = place;
+            LatLonPair pin = pinOf(place);
+            distance = pin == null ? Double.POSITIVE_INFINITY : distanceBetween(coord, pin);
+            if (place.hasBoundary() && isInBoundary(place.boundary, coord)) tier = 0;
+            else if (boxDistance(place, coord) <= SEARCH_RADIUS) tier = 1;
+            else tier = 2;
+        }
+    }
+}
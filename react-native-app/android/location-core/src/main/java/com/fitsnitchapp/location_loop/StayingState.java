@@ -0,0 +1,41 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+
+
+/**
+ * Allows users to stay in a restaurant without activating a snitch
+ * after they have either been snitched on or used a cheat meal.
+ */
+public class StayingState extends LoopState {
+    /** The restaurant the user is allowed to stay in */
+    private final Restaurant restaurant;
+
+    public StayingState(Restaurant restaurant) {
+        this.restaurant = restaurant;
+    }
+
+    Restaurant getRestaurant() {
+        return restaurant;
+    }
+
+    @Override
+    public long getInitialLoopIval() {
+        return loop.getTimings().willStay;
+    }
+
+    public void handleNewLocation(Fix location) {
+        if (loop.hasMoved()) {
+            loop.checkForRestaurant(new LatLonPair(location.lat, location.lon), (Restaurant found)->{
+                if (!restaurant.isSamePlace(found)) {
+                    // User has left restaurant
+                    loop.log("User left restaurant - begin tracking again");
+                    nextState(new BaseState());
+                }
+                else continueLoop(loop.getTimings().willStay);
+            });
+        }
+        else continueLoop(loop.getTimings().willStay);
+    }
+}
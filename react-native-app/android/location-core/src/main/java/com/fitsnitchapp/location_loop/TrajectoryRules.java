@@ -0,0 +1,137 @@
+package com.fitsnitchapp.location_loop;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.api.TrajectoryPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Rules for attributing each point of a short trajectory to a restaurant
+ * and deciding whether it ends dwelling at one.
+ *
+ * A port of LocationService.checkTrajectory on the server, so a local
+ * answer matches what check-trajectory would say.
+ */
+public class TrajectoryRules {
+    /** Points less accurate than this (meters) are skipped */
+    public static final float MAX_ACCURACY = 75;
+    /** Most points one request may carry */
+    public static final int MAX_POINTS = 20;
+
+    /** Attribution of a point at no restaurant */
+    public static final int NONE = -1;
+    /** Attribution of a point too inaccurate to use */
+    public static final int SKIPPED = -2;
+
+    private TrajectoryRules() {}
+
+    /**
+     * @param fixes Oldest first. Only the last MAX_POINTS are used.
+     */
+    public static TrajectoryCheckRequest toRequest(List<Fix> fixes, long minDwellMillis) {
+        List<TrajectoryPoint> points = new ArrayList<>();
+        for (int i = Math.max(0, fixes.size() - MAX_POINTS); i < fixes.size(); i++) {
+            Fix fix = fixes.get(i);
+            points.add(new TrajectoryPoint(fix.time, new LatLonPair(fix.lat, fix.lon),
+                    fix.hasAccuracy() ? fix.accuracy : null));
+        }
+        return new TrajectoryCheckRequest(points, minDwellMillis);
+    }
+
+    public static boolean isReliable(TrajectoryPoint point) {
+        return point.accuracy == null || point.accuracy <= MAX_ACCURACY;
+    }
+
+    /**
+     * Whether the fix is accurate enough to say which restaurant, if any,
+     * it is at.
+     */
+    public static boolean isReliable(Fix fix) {
+        return !fix.hasAccuracy() || fix.accuracy <= MAX_ACCURACY;
+    }
+
+    /**
+     * Answers a trajectory check from restaurants that have been fetched,
+     * with the candidates around the last reliable point.
+     */
+    public static TrajectoryCheckResponse check(RestaurantIndex index, TrajectoryCheckRequest request) {
+        TrajectoryCheckResponse response = attribute(request, (location) ->
+                RestaurantRules.resolve(index.query(location, RestaurantRules.SEARCH_RADIUS), location));
+        LatLonPair last = null;
+        for (TrajectoryPoint point : request.points) {
+            if (isReliable(point)) last = point.location;
+        }
+        if (last != null) {
+            response.candidates = RestaurantRules.candidates(index.query(last, RestaurantRules.CANDIDATE_RADIUS), last);
+        }
+        return response;
+    }
+
+    /**
+     * Attributes every reliable point with resolve, which gives null for no restaurant.
+     */
+    public static TrajectoryCheckResponse attribute(TrajectoryCheckRequest request,
+                                                    Function<LatLonPair, Restaurant> resolve) {
+        List<Restaurant> restaurants = new ArrayList<>();
+        int[] attribution = new int[request.points.size()];
+        for (int i = 0; i < attribution.length; i++) {
+            TrajectoryPoint point = request.points.get(i);
+            if (!isReliable(point)) {
+                attribution[i] = SKIPPED;
+                continue;
+            }
+            Restaurant restaurant = resolve.apply(point.location);
+            attribution[i] = restaurant == null ? NONE : indexOf(restaurants, restaurant);
+        }
+        return new TrajectoryCheckResponse(restaurants, attribution, dwell(request, attribution));
+    }
+
+    /**
+     * An answer built from a single check of the last point, for resolvers
+     * that can't check a whole trajectory.
+     */
+    public static TrajectoryCheckResponse fromLastPoint(TrajectoryCheckRequest request, Restaurant restaurant) {
+        List<Restaurant> restaurants = new ArrayList<>();
+        int[] attribution = new int[request.points.size()];
+        for (int i = 0; i < attribution.length; i++) attribution[i] = SKIPPED;
+        if (attribution.length > 0) {
+            attribution[attribution.length - 1] = restaurant == null ? NONE : indexOf(restaurants, restaurant);
+        }
+        return new TrajectoryCheckResponse(restaurants, attribution, dwell(request, attribution));
+    }
+
+    /**
+     * Finds the trailing run: walking back from the last point, every
+     * attributed point until one with a different attribution.
+     */
+    public static TrajectoryCheckResponse.Dwell dwell(TrajectoryCheckRequest request, int[] attribution) {
+        int run = NONE;
+        int count = 0;
+        long since = 0, until = 0;
+        for (int i = attribution.length - 1; i >= 0; i--) {
+            if (attribution[i] == SKIPPED) continue;
+            if (count == 0) {
+                run = attribution[i];
+                until = request.points.get(i).time;
+            }
+            else if (attribution[i] != run) break;
+            since = request.points.get(i).time;
+            count++;
+        }
+        boolean dwelling = run >= 0 && until - since >= request.minDwellMillis;
+        return new TrajectoryCheckResponse.Dwell(run, since, until, count, dwelling);
+    }
+
+    private static int indexOf(List<Restaurant> restaurants, Restaurant restaurant) {
+        for (int i = 0; i < restaurants.size(); i++) {
+            if (restaurants.get(i).isSamePlace(restaurant)) return i;
+        }
+        restaurants.add(restaurant);
+        return restaurants.size() - 1;
+    }
+}
@@ -0,0 +1,28 @@
+package com.fitsnitchapp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count. Increments don't lock and barely contend.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {}
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    long getAndReset() {
+        return value.sumThenReset();
+    }
+}
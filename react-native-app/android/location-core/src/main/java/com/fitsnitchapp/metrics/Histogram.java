@@ -0,0 +1,83 @@
+package com.fitsnitchapp.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of values over fixed buckets. Recording is lock free and
+ * allocates nothing; percentiles in a snapshot are the upper bound of the
+ * bucket they fall in.
+ */
+public final class Histogram {
+    /** Upper bounds suited to latencies in millis, from 10ms to 5 minutes */
+    public static final long[] MILLIS_BOUNDS = {
+            10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000
+    };
+
+    private final long[] bounds;
+    /** One count per bound, plus one for values above the last bound */
+    private final AtomicLongArray buckets;
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(long[] bounds) {
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) i++;
+        buckets.incrementAndGet(i);
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) count += buckets.get(i);
+        return count;
+    }
+
+    Map<String, Object> snapshot(boolean reset) {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = reset ? buckets.getAndSet(i, 0) : buckets.get(i);
+            count += counts[i];
+        }
+        long total = reset ? sum.sumThenReset() : sum.sum();
+        long highest = reset ? max.getAndSet(Long.MIN_VALUE) : max.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        if (count == 0) return stats;
+        stats.put("sum", total);
+        stats.put("mean", (double) total / count);
+        stats.put("max", highest);
+        stats.put("p50", percentile(counts, count, 0.5, highest));
+        stats.put("p90", percentile(counts, count, 0.9, highest));
+        stats.put("p99", percentile(counts, count, 0.99, highest));
+        Map<String, Long> byBucket = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            byBucket.put(i < bounds.length ? "le" + bounds[i] : "inf", counts[i]);
+        }
+        stats.put("buckets", byBucket);
+        return stats;
+    }
+
+    private long percentile(long[] counts, long count, double q, long highest) {
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(bounds[i], highest);
+        }
+        return highest;
+    }
+}
@@ -0,0 +1,53 @@
+package com.fitsnitchapp.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters and histograms, created on first use. Callers should
+ * hold on to the metric rather than look it up on every update.
+ */
+public class MetricsRegistry {
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * @param bounds Bucket upper bounds, ascending. Ignored if the histogram already exists.
+     */
+    public Histogram histogram(String name, long[] bounds) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(bounds));
+    }
+
+    public Histogram histogram(String name) {
+        return histogram(name, Histogram.MILLIS_BOUNDS);
+    }
+
+    /**
+     * @param reset Start counting from zero again, so that successive
+     * snapshots can be uploaded as deltas
+     */
+    public Map<String, Object> snapshot(boolean reset) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> counterValues = new TreeMap<>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            counterValues.put(e.getKey(), reset ? e.getValue().getAndReset() : e.getValue().get());
+        }
+        Map<String, Object> histogramValues = new TreeMap<>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            histogramValues.put(e.getKey(), e.getValue().snapshot(reset));
+        }
+        Map<String, Object> snapshot = new TreeMap<>();
+        snapshot.put("since", since);
+        snapshot.put("until", now);
+        snapshot.put("counters", counterValues);
+        snapshot.put("histograms", histogramValues);
+        if (reset) since = now;
+        return snapshot;
+    }
+}
@@ -0,0 +1,93 @@
+package com.fitsnitchapp.trace;
+
+import com.fitsnitchapp.codec.VarInts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes an exported trace, which is any number of segments back to back,
+ * or a single raw segment file.
+ */
+public class TraceDecoder {
+    private TraceDecoder() {}
+
+    public static List<TraceEvent> decode(byte[] data) {
+        List<TraceEvent> events = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.remaining() >= TraceFormat.HEADER_SIZE) {
+            int start = buf.position();
+            // A raw segment file is zero filled past its used length
+            if (buf.getInt(start) == 0) break;
+            if (buf.getInt(start) != TraceFormat.MAGIC) {
+                throw new IllegalArgumentException("Not a trace segment at byte " + start);
+            }
+            if (buf.get(start + 4) != TraceFormat.VERSION) {
+                throw new IllegalArgumentException("Unsupported trace version " + buf.get(start + 4));
+            }
+            int used = buf.getInt(start + TraceFormat.USED_OFFSET);
+            long baseTime = buf.getLong(start + TraceFormat.BASE_TIME_OFFSET);
+            int end = Math.min(data.length, start + used);
+            ByteBuffer segment = ByteBuffer.wrap(data, start + TraceFormat.HEADER_SIZE, end - start - TraceFormat.HEADER_SIZE);
+            decodeSegment(segment, baseTime, events);
+            buf.position(end);
+        }
+        return events;
+    }
+
+    private static void decodeSegment(ByteBuffer buf, long time, List<TraceEvent> events) {
+        List<String> strings = new ArrayList<>();
+        long lat = 0, lon = 0;
+        while (buf.hasRemaining()) {
+            byte type = buf.get();
+            if (type == TraceFormat.TYPE_END) return;
+            time += VarInts.getVarLong(buf);
+            TraceEvent event = new TraceEvent(type, time);
+            switch (type) {
+                case TraceFormat.TYPE_FIX: {
+                    lat += VarInts.getZigZag(buf);
+                    lon += VarInts.getZigZag(buf);
+                    event.lat = lat / TraceFormat.E7;
+                    event.lon = lon / TraceFormat.E7;
+                    long accuracy = VarInts.getVarLong(buf);
+                    long speed = VarInts.getVarLong(buf);
+                    if (accuracy > 0) event.accuracy = (accuracy - 1) / 10f;
+                    if (speed > 0) event.speed = (speed - 1) / 100f;
+                    break;
+                }
+                case TraceFormat.TYPE_STATE:
+                    event.name = getString(buf, strings);
+                    break;
+                case TraceFormat.TYPE_CHECK:
+                    lat += VarInts.getZigZag(buf);
+                    lon += VarInts.getZigZag(buf);
+                    event.lat = lat / TraceFormat.E7;
+                    event.lon = lon / TraceFormat.E7;
+                    event.millis = VarInts.getVarLong(buf);
+                    event.source = buf.get();
+                    event.name = getString(buf, strings);
+                    break;
+                case TraceFormat.TYPE_SCHEDULE:
+                    event.millis = VarInts.getVarLong(buf);
+                    event.name = getString(buf, strings);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown trace record type " + type);
+            }
+            events.add(event);
+        }
+    }
+
+    private static String getString(ByteBuffer buf, List<String> strings) {
+        int index = (int) VarInts.getVarLong(buf);
+        if (index == 0) return null;
+        if (index <= strings.size()) return strings.get(index - 1);
+        byte[] bytes = new byte[(int) VarInts.getVarLong(buf)];
+        buf.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+}
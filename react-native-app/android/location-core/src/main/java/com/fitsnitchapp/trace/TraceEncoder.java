@@ -0,0 +1,147 @@
+package com.fitsnitchapp.trace;
+
+import com.fitsnitchapp.codec.VarInts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends trace records to one segment held in a ByteBuffer, typically a
+ * memory-mapped file. Writes no more than the buffer can hold: a record
+ * that doesn't fit is refused, and the caller should start a new segment.
+ *
+ * Not thread safe.
+ */
+public class TraceEncoder {
+    private final ByteBuffer buf;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private long lastTime;
+    private long lastLat;
+    private long lastLon;
+    private long records;
+
+    /**
+     * Starts a new segment at the beginning of buf, discarding what was there.
+     */
+    public TraceEncoder(ByteBuffer buf, long baseTime) {
+        this.buf = buf;
+        this.lastTime = baseTime;
+        buf.clear();
+        buf.putInt(TraceFormat.MAGIC);
+        buf.put(TraceFormat.VERSION);
+        buf.put((byte) 0).put((byte) 0).put((byte) 0);
+        buf.putInt(TraceFormat.HEADER_SIZE);
+        buf.putLong(baseTime);
+        buf.put(TraceFormat.TYPE_END);
+        buf.position(TraceFormat.HEADER_SIZE);
+        commit();
+    }
+
+    public int usedBytes() {
+        return buf.position();
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public boolean fix(long time, double lat, double lon, float accuracy, float speed) {
+        if (!begin(TraceFormat.TYPE_FIX, time, 0)) return false;
+        putCoords(lat, lon);
+        VarInts.putVarLong(buf, Float.isNaN(accuracy) ? 0 : Math.round(accuracy * 10) + 1);
+        VarInts.putVarLong(buf, Float.isNaN(speed) ? 0 : Math.round(speed * 100) + 1);
+        return end();
+    }
+
+    public boolean state(long time, String name) {
+        byte[] bytes = nameBytes(name);
+        if (!begin(TraceFormat.TYPE_STATE, time, bytes.length)) return false;
+        putString(name, bytes);
+        return end();
+    }
+
+    /**
+     * @param restaurant Null if no restaurant was found
+     */
+    public boolean check(long time, double lat, double lon, long latency, int source, String restaurant) {
+        byte[] bytes = nameBytes(restaurant);
+        if (!begin(TraceFormat.TYPE_CHECK, time, bytes.length)) return false;
+        putCoords(lat, lon);
+        VarInts.putVarLong(buf, Math.max(0, latency));
+        buf.put((byte) source);
+        putString(restaurant, bytes);
+        return end();
+    }
+
+    public boolean schedule(long time, long delay, String stateName) {
+        byte[] bytes = nameBytes(stateName);
+        if (!begin(TraceFormat.TYPE_SCHEDULE, time, bytes.length)) return false;
+        VarInts.putVarLong(buf, Math.max(0, delay));
+        putString(stateName, bytes);
+        return end();
+    }
+
+
+    private boolean begin(byte type, long time, int nameLength) {
+        // Room for the record, its name and the end marker
+        if (buf.remaining() < TraceFormat.MAX_RECORD_BYTES + nameLength + 1) return false;
+        buf.put(type);
+        VarInts.putVarLong(buf, Math.max(0, time - lastTime));
+        lastTime = Math.max(lastTime, time);
+        return true;
+    }
+
+    private boolean end() {
+        records++;
+        int position = buf.position();
+        buf.put(TraceFormat.TYPE_END);
+        buf.position(position);
+        commit();
+        return true;
+    }
+
+    /** Publishes the record by moving the segment's used length past it */
+    private void commit() {
+        buf.putInt(TraceFormat.USED_OFFSET, buf.position());
+    }
+
+    private void putCoords(double lat, double lon) {
+        long latE7 = Math.round(lat * TraceFormat.E7);
+        long lonE7 = Math.round(lon * TraceFormat.E7);
+        VarInts.putZigZag(buf, latE7 - lastLat);
+        VarInts.putZigZag(buf, lonE7 - lastLon);
+        lastLat = latE7;
+        lastLon = lonE7;
+    }
+
+    /** Index 0 is reserved for null */
+    private void putString(String value, byte[] bytes) {
+        if (value == null) {
+            VarInts.putVarLong(buf, 0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            VarInts.putVarLong(buf, index);
+            return;
+        }
+        index = strings.size() + 1;
+        strings.put(value, index);
+        VarInts.putVarLong(buf, index);
+        VarInts.putVarLong(buf, bytes.length);
+        buf.put(bytes);
+    }
+
+    private byte[] nameBytes(String name) {
+        if (name == null || strings.containsKey(name)) return EMPTY;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= TraceFormat.MAX_NAME_BYTES) return bytes;
+        byte[] cut = new byte[TraceFormat.MAX_NAME_BYTES];
+        System.arraycopy(bytes, 0, cut, 0, cut.length);
+        return cut;
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+}
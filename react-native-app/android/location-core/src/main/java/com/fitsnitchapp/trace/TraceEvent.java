@@ -0,0 +1,40 @@
+package com.fitsnitchapp.trace;
+
+/**
+ * One decoded trace record. Fields that don't apply to the type are
+ * NaN, -1 or null.
+ */
+public class TraceEvent {
+    public final byte type;
+    public final long time;
+    public double lat = Double.NaN;
+    public double lon = Double.NaN;
+    public float accuracy = Float.NaN;
+    public float speed = Float.NaN;
+    /** State or restaurant name */
+    public String name;
+    /** Check latency or scheduled delay, in millis */
+    public long millis = -1;
+    public int source = -1;
+
+    TraceEvent(byte type, long time) {
+        this.type = type;
+        this.time = time;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case TraceFormat.TYPE_FIX:
+                return time + " FIX " + lat + "," + lon + " acc=" + accuracy + " speed=" + speed;
+            case TraceFormat.TYPE_STATE:
+                return time + " STATE " + name;
+            case TraceFormat.TYPE_CHECK:
+                return time + " CHECK " + lat + "," + lon + " source=" + source + " latency=" + millis + "ms -> " + name;
+            case TraceFormat.TYPE_SCHEDULE:
+                return time + " SCHEDULE " + millis + "ms in " + name;
+            default:
+                return time + " UNKNOWN " + type;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.fitsnitchapp.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary loop trace.
+ *
+ * A trace is one or more segments. Each segment starts with a 20 byte
+ * header: the magic "FSTR", a version byte, 3 reserved bytes, the number of
+ * bytes used by the segment (header included) and the segment's base time.
+ *
+ * Records follow the header. Each is a type byte and the time since the
+ * previous record as a varint (see VarInts), then a type specific payload. Coordinates
+ * are stored as zigzag varint deltas of degrees * 1e7 from the previous fix,
+ * and names go through a per-segment string table: a varint index, followed
+ * by the name itself the first time that index is used. A type byte of 0
+ * marks the end of a segment.
+ */
+public final class TraceFormat {
+    public static final int MAGIC = 0x46535452; // "FSTR"
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    static final int USED_OFFSET = 8;
+    static final int BASE_TIME_OFFSET = 12;
+
+    public static final byte TYPE_END = 0;
+    /** accuracy (decimeters + 1, 0 = unknown), speed (cm/s + 1, 0 = unknown) */
+    public static final byte TYPE_FIX = 1;
+    /** state name */
+    public static final byte TYPE_STATE = 2;
+    /** coordinates, latency ms, source, restaurant name (index 0 = none) */
+    public static final byte TYPE_CHECK = 3;
+    /** delay ms, state name */
+    public static final byte TYPE_SCHEDULE = 4;
+
+    public static final int SOURCE_LOCAL = 0;
+    public static final int SOURCE_CACHE = 1;
+    public static final int SOURCE_NETWORK = 2;
+    public static final int SOURCE_ERROR = 3;
+
+    /** Longer names are cut, to bound the size of a record */
+    static final int MAX_NAME_BYTES = 96;
+    /** Upper bound on a record's size, excluding its name */
+    static final int MAX_RECORD_BYTES = 48;
+
+    static final double E7 = 1e7;
+
+    private TraceFormat() {}
+
+    /**
+     * @return Bytes used by the segment at the start of buf, header
+     * included, or 0 if buf doesn't hold a segment.
+     */
+    public static int usedLength(ByteBuffer buf) {
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) return 0;
+        return Math.min(buf.capacity(), buf.getInt(USED_OFFSET));
+    }
+
+    public static long baseTime(ByteBuffer buf) {
+        return buf.getLong(BASE_TIME_OFFSET);
+    }
+}
@@ -0,0 +1,29 @@
+package com.fitsnitchapp.location_loop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class GeohashTest {
+    @Test
+    public void jitteredFixesShareACell() {
+        // About 15m apart, like two fixes taken standing in the same spot
+        String first = Geohash.encode(34.06107, -118.2316, Geohash.CELL_PRECISION);
+        String second = Geohash.encode(34.06120, -118.2316, Geohash.CELL_PRECISION);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void negativeCellsAreSmallerThanTheCheckRadius() {
+        // About 15m apart, just within the server's check radius of each other
+        assertNotEquals(Geohash.encode(34.06107, -118.2316, Geohash.NEGATIVE_CELL_PRECISION),
+                Geohash.encode(34.06120, -118.2316, Geohash.NEGATIVE_CELL_PRECISION));
+    }
+
+    @Test
+    public void cellsHaveThePrecisionAskedFor() {
+        assertEquals(Geohash.CELL_PRECISION, Geohash.encode(34.0612, -118.2317, Geohash.CELL_PRECISION).length());
+        assertEquals("9q5cv8", Geohash.encode(34.0612, -118.2317, 6));
+    }
+}
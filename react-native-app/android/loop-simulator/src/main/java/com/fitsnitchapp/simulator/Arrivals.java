@@ -0,0 +1,47 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.fitsnitchapp.location_loop.RestaurantRules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ground truth of when the trace arrives at each restaurant, found by
+ * resolving every trace point rather than only the ones the loop samples.
+ */
+public class Arrivals {
+    private final Map<String, List<Long>> arrivals = new HashMap<>();
+
+    public Arrivals(List<Fix> trace, RestaurantIndex index) {
+        String current = null;
+        for (Fix fix : trace) {
+            LatLonPair point = new LatLonPair(fix.lat, fix.lon);
+            Restaurant restaurant = RestaurantRules.resolve(index.query(point, RestaurantRules.SEARCH_RADIUS), point);
+            String name = restaurant == null ? null : restaurant.name;
+            if (name != null && !name.equals(current)) {
+                arrivals.computeIfAbsent(name, k -> new ArrayList<>()).add(fix.time);
+            }
+            current = name;
+        }
+    }
+
+    /**
+     * @return Trace time of the latest arrival at this restaurant no later than time, or -1
+     */
+    public long lastArrival(String restaurant, long time) {
+        List<Long> times = arrivals.get(restaurant);
+        if (times == null) return -1;
+        long last = -1;
+        for (long t : times) {
+            if (t > time) break;
+            last = t;
+        }
+        return last;
+    }
+}
@@ -0,0 +1,48 @@
+package com.fitsnitchapp.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the loop did during one simulated day.
+ */
+public class DayStats {
+    public final long day;
+    public long ticks;
+    public long fixesRequested;
+    /** Of fixesRequested, those the energy governor let be high accuracy */
+    public long highAccuracyFixes;
+    public long apiCalls;
+    /** Checks answered from the candidates of an earlier check-location */
+    public long candidateHits;
+    public long warnings;
+    public long snitches;
+    /** Ticks the movement filter decided the user moved */
+    public long moves;
+    /** Ticks the old raw-degree check would have called movement but the filter didn't */
+    public long jitterSuppressed;
+    /** Millis from arriving at a restaurant to the snitch warning */
+    public final List<Long> detectionLatencies = new ArrayList<>();
+    /** Millis from the snitch warning to the snitch being published */
+    public final List<Long> warningDurations = new ArrayList<>();
+
+    public DayStats(long day) {
+        this.day = day;
+    }
+
+    public static String csvHeader() {
+        return "day,ticks,fixesRequested,highAccuracyFixes,apiCalls,candidateHits,warnings,snitches,moves,jitterSuppressed,meanDetectionMs,meanWarningMs";
+    }
+
+    public String toCsv() {
+        return day + "," + ticks + "," + fixesRequested + "," + highAccuracyFixes + "," + apiCalls + "," + candidateHits + "," + warnings + "," + snitches
+                + "," + moves + "," + jitterSuppressed + "," + mean(detectionLatencies) + "," + mean(warningDurations);
+    }
+
+    static long mean(List<Long> values) {
+        if (values.isEmpty()) return 0;
+        long sum = 0;
+        for (long v : values) sum += v;
+        return sum / values.size();
+    }
+}
@@ -0,0 +1,113 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.LatLonPair;
+import com.fitsnitchapp.Restaurant;
+import com.fitsnitchapp.api.TrajectoryPoint;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.fitsnitchapp.location_loop.RestaurantResolver;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.api.TrajectoryCheckResponse;
+import com.fitsnitchapp.location_loop.RestaurantRules;
+import com.fitsnitchapp.location_loop.TrajectoryRules;
+
+import java.util.function.Consumer;
+
+/**
+ * Answers restaurant checks from a recorded restaurants-in-area response,
+ * with the same rules as the server. Every check is counted as an API call,
+ * as it would be on a device without a local index or cache, except those
+ * answered from the candidates of the last check-location.
+ */
+public class IndexRestaurantResolver implements RestaurantResolver {
+    private final RestaurantIndex index;
+    private final boolean exposeNearest;
+    private final boolean trajectories;
+    private final boolean candidates;
+    /** The candidates of the last check-location, like LocalRestaurantResolver keeps them */
+    private RestaurantIndex candidateIndex;
+    private long checks;
+    private long candidateHits;
+
+    /**
+     * @param exposeNearest Whether the loop may know the distance to the nearest
+     *                      restaurant, as it does once the area has been fetched
+     * @param trajectories  Whether trajectories are checked in one call, like
+     *                      check-trajectory, or only by their last point
+     * @param candidates    Whether checks inside the candidate area of the last
+     *                      check-location are answered from its candidates
+     */
+    public IndexRestaurantResolver(RestaurantIndex index, boolean exposeNearest, boolean trajectories,
+                                   boolean candidates) {
+        this.index = index;
+        this.exposeNearest = exposeNearest;
+        this.trajectories = trajectories;
+        this.candidates = candidates;
+    }
+
+    public long getChecks() {
+        return checks;
+    }
+
+    /** Checks answered from candidates instead of an API call */
+    public long getCandidateHits() {
+        return candidateHits;
+    }
+
+    @Override
+    public void checkForRestaurant(LatLonPair location, Consumer<Restaurant> cb) {
+        if (coveredByCandidates(location)) {
+            candidateHits++;
+            cb.accept(resolveFromCandidates(location));
+            return;
+        }
+        checks++;
+        CheckLocationResponse response = RestaurantRules.checkLocation(index, location);
+        if (candidates) {
+            candidateIndex = new RestaurantIndex(response.candidates.center, response.candidates.radius,
+                    response.candidates.restaurants, 0);
+        }
+        cb.accept(response.restaurant);
+    }
+
+    @Override
+    public void checkTrajectory(TrajectoryCheckRequest request, Consumer<TrajectoryCheckResponse> cb) {
+        if (!trajectories) {
+            RestaurantResolver.super.checkTrajectory(request, cb);
+            return;
+        }
+        if (coveredByCandidates(request)) {
+            candidateHits++;
+            cb.accept(TrajectoryRules.attribute(request, this::resolveFromCandidates));
+            return;
+        }
+        checks++;
+        TrajectoryCheckResponse response = TrajectoryRules.check(index, request);
+        if (candidates && response.candidates != null) {
+            candidateIndex = new RestaurantIndex(response.candidates.center, response.candidates.radius,
+                    response.candidates.restaurants, 0);
+        }
+        cb.accept(response);
+    }
+
+    private boolean coveredByCandidates(LatLonPair location) {
+        return candidateIndex != null && candidateIndex.covers(location, RestaurantRules.SEARCH_RADIUS);
+    }
+
+    private boolean coveredByCandidates(TrajectoryCheckRequest request) {
+        if (candidateIndex == null) return false;
+        for (TrajectoryPoint point : request.points) {
+            if (TrajectoryRules.isReliable(point) && !coveredByCandidates(point.location)) return false;
+        }
+        return true;
+    }
+
+    private Restaurant resolveFromCandidates(LatLonPair location) {
+        return RestaurantRules.resolve(candidateIndex.query(location, RestaurantRules.SEARCH_RADIUS), location);
+    }
+
+    @Override
+    public double nearestRestaurantMeters(LatLonPair location) {
+        return exposeNearest ? RestaurantRules.nearestRestaurantMeters(index, location) : Double.NaN;
+    }
+}
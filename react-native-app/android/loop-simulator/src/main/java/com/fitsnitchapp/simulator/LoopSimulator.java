@@ -0,0 +1,240 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.location_loop.AdaptiveIntervalPolicy;
+import com.fitsnitchapp.location_loop.EnergyGovernor;
+import com.fitsnitchapp.location_loop.FixedIntervalPolicy;
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.FixPriority;
+import com.fitsnitchapp.location_loop.IntervalPolicy;
+import com.fitsnitchapp.location_loop.LocationLoop;
+import com.fitsnitchapp.location_loop.LoopProfile;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.google.gson.Gson;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replays a recorded GPS trace through LocationLoop on simulated time,
+ * as many times as asked, and reports what the loop would have cost and
+ * how quickly it snitched for each simulated day.
+ *
+ * Usage: LoopSimulator --trace FILE.csv|FILE.gpx|FILE.fstr --restaurants AREA.json
+ *          [--repeat N] [--policy adaptive|fixed] [--profile battery-saver|balanced|precise]
+ *          [--local] [--zone ZONE] [--batched] [--no-trajectory] [--no-candidates]
+ *          [--battery PERCENT] [--power-save] [--no-tiers] [--coarse-accuracy METERS]
+ *          [--per-day] [--verbose]
+ *
+ * With --batched, every tick gets all trace points since the last one, like
+ * the batched tick scheduler, instead of requesting a single fix. With
+ * --no-candidates, checks near the last one aren't answered from the
+ * candidates it sent, like with servers from before candidates. --battery
+ * and --power-save set the power state the energy governor scales its
+ * budget by; the device is never charging. With --no-tiers, every tick
+ * uses a high-accuracy fix instead of starting with a cheap one, and
+ * --coarse-accuracy sets how accurate the cheap ones are.
+ */
+public class LoopSimulator {
+    private static final long DAY = 24 * 60 * 60000;
+
+    private String tracePath;
+    private String restaurantsPath;
+    private int repeat = 1;
+    private String policy = "adaptive";
+    private LoopProfile profile = LoopProfile.BALANCED;
+    private boolean local = false;
+    private boolean batched = false;
+    private boolean trajectories = true;
+    private boolean candidates = true;
+    private int batteryPercent = 100;
+    private boolean powerSave = false;
+    private boolean tiers = true;
+    private float coarseAccuracy = TraceLocationSource.BALANCED_ACCURACY;
+    private ZoneId zone = ZoneId.of("UTC");
+    private boolean perDay = false;
+    private boolean verbose = false;
+
+    public static void main(String[] args) throws IOException {
+        LoopSimulator simulator = new LoopSimulator();
+        if (!simulator.parseArgs(args)) {
+            System.err.println("Usage: LoopSimulator --trace FILE.csv|FILE.gpx|FILE.fstr --restaurants AREA.json"
+                    + " [--repeat N] [--policy adaptive|fixed] [--profile battery-saver|balanced|precise]"
+                    + " [--local] [--zone ZONE] [--batched] [--no-trajectory] [--no-candidates]"
+                    + " [--battery PERCENT] [--power-save] [--no-tiers] [--coarse-accuracy METERS]"
+                    + " [--per-day] [--verbose]");
+            System.exit(2);
+        }
+        simulator.run();
+    }
+
+    private boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--trace": tracePath = args[++i]; break;
+                case "--restaurants": restaurantsPath = args[++i]; break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                case "--policy": policy = args[++i]; break;
+                case "--profile": profile = LoopProfile.fromKey(args[++i]); break;
+                case "--local": local = true; break;
+                case "--batched": batched = true; break;
+                case "--no-trajectory": trajectories = false; break;
+                case "--no-candidates": candidates = false; break;
+                case "--battery": batteryPercent = Integer.parseInt(args[++i]); break;
+                case "--power-save": powerSave = true; break;
+                case "--no-tiers": tiers = false; break;
+                case "--coarse-accuracy": coarseAccuracy = Float.parseFloat(args[++i]); break;
+                case "--zone": zone = ZoneId.of(args[++i]); break;
+                case "--per-day": perDay = true; break;
+                case "--verbose": verbose = true; break;
+                default: return false;
+            }
+        }
+        return tracePath != null && restaurantsPath != null && repeat > 0 && profile != null;
+    }
+
+    private IntervalPolicy newPolicy() {
+        return "fixed".equals(policy) ? new FixedIntervalPolicy() : new AdaptiveIntervalPolicy();
+    }
+
+    void run() throws IOException {
+        List<Fix> trace = TraceReader.read(tracePath);
+        if (trace.isEmpty()) throw new IOException("Trace " + tracePath + " has no fixes");
+        RestaurantsInAreaResponse area;
+        try (Reader reader = new FileReader(restaurantsPath)) {
+            area = new Gson().fromJson(reader, RestaurantsInAreaResponse.class);
+        }
+        RestaurantIndex index = new RestaurantIndex(area.center, area.radius, area.restaurants, 0);
+
+        long start = trace.get(0).time;
+        long end = trace.get(trace.size() - 1).time;
+        long epoch = Instant.ofEpochMilli(start).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+        long traceDays = (end - epoch) / DAY + 1;
+
+        SimClock clock = new SimClock(zone);
+        SimScheduler scheduler = new SimScheduler(clock);
+        TraceLocationSource source = new TraceLocationSource(clock, trace);
+        source.setBalancedAccuracy(coarseAccuracy);
+        IndexRestaurantResolver resolver = new IndexRestaurantResolver(index, local, trajectories, candidates);
+        SimRecorder recorder = new SimRecorder(clock, epoch, new Arrivals(trace, index), verbose);
+
+        long stretchedIntervals = 0;
+        long escalations = 0;
+        long escalationChecks = 0;
+        long wallStart = System.nanoTime();
+        for (int r = 0; r < repeat; r++) {
+            long offset = r * traceDays * DAY;
+            source.restart(offset);
+            recorder.setOffset(offset);
+            clock.set(start + offset);
+
+            LocationLoop loop = new LocationLoop(clock, scheduler, source, resolver, recorder);
+            loop.setIntervalPolicy(newPolicy());
+            loop.setTimings(profile.timings);
+            EnergyGovernor governor = loop.getEnergyGovernor();
+            governor.setPowerState(batteryPercent, false, powerSave);
+            loop.getAccuracyTiers().setEnabled(tiers);
+            loop.start();
+            long next;
+            long lastTick = start + offset;
+            while ((next = scheduler.takeNextTick()) != SimScheduler.NONE && next <= end + offset) {
+                clock.set(next);
+                DayStats day = recorder.dayAt(next);
+                long fixesBefore = source.getFixesRequested();
+                long highAccuracyBefore = source.getHighAccuracyFixes();
+                long checksBefore = resolver.getChecks();
+                long candidateHitsBefore = resolver.getCandidateHits();
+                if (batched) {
+                    // Like the batched scheduler, whose subscription follows the governor
+                    FixPriority priority = loop.getFixPriority();
+                    governor.recordFix(next, priority);
+                    loop.handleNewFixes(source.fixesSince(lastTick, priority));
+                    lastTick = next;
+                }
+                else {
+                    loop.tick();
+                }
+                day.ticks++;
+                day.fixesRequested += source.getFixesRequested() - fixesBefore;
+                day.highAccuracyFixes += source.getHighAccuracyFixes() - highAccuracyBefore;
+                long calls = resolver.getChecks() - checksBefore;
+                for (long c = 0; c < calls; c++) governor.recordRadioRequest(next);
+                day.apiCalls += calls;
+                day.candidateHits += resolver.getCandidateHits() - candidateHitsBefore;
+            }
+            loop.stop();
+            stretchedIntervals += governor.getStretchedIntervals();
+            escalations += loop.getAccuracyTiers().getEscalations();
+            escalationChecks += loop.getAccuracyTiers().getEscalationChecks();
+        }
+        long wallMillis = Math.max(1, (System.nanoTime() - wallStart) / 1000000);
+
+        report(recorder, (end - start) * repeat, wallMillis, stretchedIntervals, escalations, escalationChecks);
+    }
+
+    private void report(SimRecorder recorder, long simulatedMillis, long wallMillis, long stretchedIntervals,
+                        long escalations, long escalationChecks) {
+        if (perDay) {
+            System.out.println(DayStats.csvHeader());
+            for (DayStats day : recorder.getDays().values()) {
+                System.out.println(day.toCsv());
+            }
+            System.out.println();
+        }
+
+        int days = recorder.getDays().size();
+        long ticks = 0, fixes = 0, highAccuracy = 0, apiCalls = 0, candidateHits = 0, warnings = 0, snitches = 0, moves = 0, jitter = 0;
+        List<Long> detection = new ArrayList<>();
+        List<Long> warning = new ArrayList<>();
+        for (DayStats day : recorder.getDays().values()) {
+            ticks += day.ticks;
+            fixes += day.fixesRequested;
+            highAccuracy += day.highAccuracyFixes;
+            apiCalls += day.apiCalls;
+            candidateHits += day.candidateHits;
+            warnings += day.warnings;
+            snitches += day.snitches;
+            moves += day.moves;
+            jitter += day.jitterSuppressed;
+            detection.addAll(day.detectionLatencies);
+            warning.addAll(day.warningDurations);
+        }
+
+        System.out.printf("Simulated %d day(s) (%.1f h of trace time) in %d ms, %.0fx real time%n",
+                days, simulatedMillis / 3600000.0, wallMillis, (double) simulatedMillis / wallMillis);
+        System.out.printf("Policy: %s, profile: %s, local index: %b, batched: %b, trajectory checks: %b, candidates: %b%n",
+                policy, profile.key, local, batched, trajectories, candidates);
+        System.out.printf("Per day: %.1f ticks, %.1f fixes requested, %.1f API calls (%.1f answered from candidates),"
+                        + " %.2f warnings, %.2f snitches%n",
+                (double) ticks / days, (double) fixes / days, (double) apiCalls / days, (double) candidateHits / days,
+                (double) warnings / days, (double) snitches / days);
+        System.out.printf("Energy: %.1f high-accuracy fixes (%.1f escalated of %.1f cheap fixes), %.1f intervals"
+                        + " stretched per day (battery %d%%, power save: %b, tiers: %b, cheap fixes to %.0fm)%n",
+                (double) highAccuracy / days, (double) escalations / days, (double) escalationChecks / days,
+                (double) stretchedIntervals / days, batteryPercent, powerSave, tiers, coarseAccuracy);
+        System.out.printf("Movement: %.1f moves, %.1f jitter suppressed per day%n",
+                (double) moves / days, (double) jitter / days);
+        System.out.printf("Detection latency: p50 %s, p90 %s, max %s%n",
+                seconds(percentile(detection, 50)), seconds(percentile(detection, 90)), seconds(percentile(detection, 100)));
+        System.out.printf("Warning to snitch: p50 %s, p90 %s, max %s%n",
+                seconds(percentile(warning, 50)), seconds(percentile(warning, 90)), seconds(percentile(warning, 100)));
+    }
+
+    private static long percentile(List<Long> values, int p) {
+        if (values.isEmpty()) return -1;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int i = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, i));
+    }
+
+    private static String seconds(long millis) {
+        return millis < 0 ? "n/a" : String.format("%.0fs", millis / 1000.0);
+    }
+}
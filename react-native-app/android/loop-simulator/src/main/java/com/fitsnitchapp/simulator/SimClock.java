@@ -0,0 +1,32 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.location_loop.LoopClock;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Simulated time, only moved forward by the simulator.
+ */
+public class SimClock implements LoopClock {
+    private final ZoneId zone;
+    private long now;
+
+    public SimClock(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public void set(long now) {
+        this.now = now;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public int hourOfDay() {
+        return Instant.ofEpochMilli(now).atZone(zone).getHour();
+    }
+}
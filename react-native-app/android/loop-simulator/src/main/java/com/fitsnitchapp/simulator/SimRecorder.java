@@ -0,0 +1,75 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.SnitchTrigger;
+import com.fitsnitchapp.location_loop.LoopListener;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects per-day stats from the loop's side effects.
+ */
+public class SimRecorder implements LoopListener {
+    private static final long DAY = 24 * 60 * 60000;
+
+    private final SimClock clock;
+    private final long epoch;
+    private final Arrivals arrivals;
+    private final boolean verbose;
+    private final Map<Long, DayStats> days = new TreeMap<>();
+    private long offset;
+
+    /**
+     * @param epoch Start of the first simulated day
+     */
+    public SimRecorder(SimClock clock, long epoch, Arrivals arrivals, boolean verbose) {
+        this.clock = clock;
+        this.epoch = epoch;
+        this.arrivals = arrivals;
+        this.verbose = verbose;
+    }
+
+    /**
+     * @param offset How far the current replay is shifted from the recorded trace
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public DayStats dayAt(long time) {
+        return days.computeIfAbsent((time - epoch) / DAY, DayStats::new);
+    }
+
+    public Map<Long, DayStats> getDays() {
+        return days;
+    }
+
+    @Override
+    public void onMovementDecided(boolean moved, boolean rawMoved) {
+        DayStats day = dayAt(clock.currentTimeMillis());
+        if (moved) day.moves++;
+        else if (rawMoved) day.jitterSuppressed++;
+    }
+
+    @Override
+    public void onSnitchWarning(SnitchTrigger snitch) {
+        DayStats day = dayAt(clock.currentTimeMillis());
+        day.warnings++;
+        long arrivedAt = arrivals.lastArrival(snitch.restaurantData.name, snitch.created_at - offset);
+        if (arrivedAt >= 0) {
+            day.detectionLatencies.add(snitch.created_at - offset - arrivedAt);
+        }
+    }
+
+    @Override
+    public void onSnitchPublished(SnitchTrigger snitch) {
+        DayStats day = dayAt(clock.currentTimeMillis());
+        day.snitches++;
+        day.warningDurations.add(clock.currentTimeMillis() - snitch.created_at);
+    }
+
+    @Override
+    public void log(String message) {
+        if (verbose) System.out.println("[" + clock.currentTimeMillis() + "] " + message);
+    }
+}
@@ -0,0 +1,36 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.location_loop.LoopScheduler;
+
+/**
+ * Keeps the single pending tick as a simulated timestamp.
+ */
+public class SimScheduler implements LoopScheduler {
+    public static final long NONE = -1;
+
+    private final SimClock clock;
+    private long nextTickAt = NONE;
+
+    public SimScheduler(SimClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void schedule(long delay, String stateName) {
+        nextTickAt = clock.currentTimeMillis() + delay;
+    }
+
+    @Override
+    public void cancel() {
+        nextTickAt = NONE;
+    }
+
+    /**
+     * @return Time of the pending tick, or NONE. Clears it, as it is about to run.
+     */
+    public long takeNextTick() {
+        long next = nextTickAt;
+        nextTickAt = NONE;
+        return next;
+    }
+}
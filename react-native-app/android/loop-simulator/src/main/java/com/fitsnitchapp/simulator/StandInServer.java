@@ -0,0 +1,182 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.CheckLocationResponse;
+import com.fitsnitchapp.api.CheckLocationRequest;
+import com.fitsnitchapp.api.CreateSnitchRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaRequest;
+import com.fitsnitchapp.api.RestaurantsInAreaResponse;
+import com.fitsnitchapp.api.SnitchBatchRequest;
+import com.fitsnitchapp.api.SnitchBatchResponse;
+import com.fitsnitchapp.api.TrajectoryCheckRequest;
+import com.fitsnitchapp.codec.ApiTypeAdapters;
+import com.fitsnitchapp.codec.WireCodec;
+import com.fitsnitchapp.location_loop.RestaurantIndex;
+import com.fitsnitchapp.location_loop.RestaurantRules;
+import com.fitsnitchapp.location_loop.TrajectoryRules;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Local stand-in for the API endpoints the location loop calls, answering
+ * checks from a recorded restaurants-in-area response with the same rules
+ * as the server. Speaks both JSON and the wire format, negotiated the same
+ * way as the real server, and logs the size of every body.
+ *
+ * Point the app at it with API_URL in .env.local (use 10.0.2.2 from an emulator).
+ *
+ * Usage: StandInServer --restaurants AREA.json [--port 4000] [--json-only]
+ */
+public class StandInServer {
+    private final Gson gson = ApiTypeAdapters.createGson();
+    private final RestaurantsInAreaResponse area;
+    private final RestaurantIndex index;
+    private final boolean jsonOnly;
+
+    StandInServer(RestaurantsInAreaResponse area, boolean jsonOnly) {
+        this.area = area;
+        this.index = new RestaurantIndex(area.center, area.radius, area.restaurants, 0);
+        this.jsonOnly = jsonOnly;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String restaurantsPath = null;
+        int port = 4000;
+        boolean jsonOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--restaurants": restaurantsPath = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--json-only": jsonOnly = true; break;
+                default: usage();
+            }
+        }
+        if (restaurantsPath == null) usage();
+        RestaurantsInAreaResponse area;
+        try (Reader reader = new FileReader(restaurantsPath)) {
+            area = ApiTypeAdapters.createGson().fromJson(reader, RestaurantsInAreaResponse.class);
+        }
+
+        StandInServer standIn = new StandInServer(area, jsonOnly);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", standIn::handle);
+        server.start();
+        System.out.printf("Serving %d restaurants on port %d%s%n",
+                area.restaurants.size(), port, jsonOnly ? " (JSON only)" : "");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: StandInServer --restaurants AREA.json [--port 4000] [--json-only]");
+        System.exit(2);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        try {
+            switch (path) {
+                case "/lambda/check-location":
+                    respond(exchange, checkLocation(read(exchange, CheckLocationRequest.class)));
+                    break;
+                case "/lambda/check-trajectory":
+                    TrajectoryCheckRequest trajectory = read(exchange, TrajectoryCheckRequest.class);
+                    if (trajectory.points == null || trajectory.points.isEmpty()
+                            || trajectory.points.size() > TrajectoryRules.MAX_POINTS) {
+                        throw new IllegalArgumentException("bad point count");
+                    }
+                    respond(exchange, TrajectoryRules.check(index, trajectory));
+                    break;
+                case "/lambda/restaurants-in-area":
+                    read(exchange, RestaurantsInAreaRequest.class);
+                    respond(exchange, area);
+                    break;
+                case "/snitch/publishNewSnitch":
+                    read(exchange, CreateSnitchRequest.class);
+                    respondEmpty(exchange);
+                    break;
+                case "/snitch/publishSnitchBatch":
+                    SnitchBatchRequest batch = read(exchange, SnitchBatchRequest.class);
+                    SnitchBatchResponse response = new SnitchBatchResponse();
+                    response.accepted = new ArrayList<>();
+                    for (CreateSnitchRequest snitch : batch.snitches) response.accepted.add(snitch.snitchId);
+                    respond(exchange, response);
+                    break;
+                default:
+                    log(exchange, "404", 0, 0);
+                    exchange.sendResponseHeaders(404, -1);
+            }
+        }
+        catch (IllegalArgumentException | JsonParseException e) {
+            log(exchange, "400 " + e.getMessage(), 0, 0);
+            exchange.sendResponseHeaders(400, -1);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private CheckLocationResponse checkLocation(CheckLocationRequest request) {
+        return RestaurantRules.checkLocation(index, request.location);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T read(HttpExchange exchange, Type type) throws IOException {
+        byte[] bytes = readAll(exchange.getRequestBody());
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean wire = contentType != null && contentType.startsWith(WireCodec.MIME_TYPE);
+        if (wire && jsonOnly) throw new IllegalArgumentException("wire format disabled");
+        exchange.setAttribute("requestBytes", bytes.length);
+        exchange.setAttribute("requestFormat", wire ? "wire" : "json");
+        if (wire) return (T) WireCodec.decode(type, bytes);
+        T body = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), type);
+        if (body == null) throw new IllegalArgumentException("empty body");
+        return body;
+    }
+
+    private void respond(HttpExchange exchange, Object body) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean wire = !jsonOnly && accept != null && accept.contains(WireCodec.MIME_TYPE)
+                && WireCodec.supports(body.getClass());
+        byte[] bytes = wire
+                ? WireCodec.encode(body)
+                : gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", wire ? WireCodec.MIME_TYPE : "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        log(exchange, "200 " + exchange.getAttribute("requestFormat") + "/" + (wire ? "wire" : "json"),
+                (Integer) exchange.getAttribute("requestBytes"), bytes.length);
+    }
+
+    private void respondEmpty(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, -1);
+        log(exchange, "200 " + exchange.getAttribute("requestFormat"), (Integer) exchange.getAttribute("requestBytes"), 0);
+    }
+
+    private static void log(HttpExchange exchange, String result, int requestBytes, int responseBytes) {
+        System.out.printf("%s %s -> %s (%dB in, %dB out)%n", exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(), result, requestBytes, responseBytes);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
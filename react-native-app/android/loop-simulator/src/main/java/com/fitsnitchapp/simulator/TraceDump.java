@@ -0,0 +1,25 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.trace.TraceDecoder;
+import com.fitsnitchapp.trace.TraceEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Prints every record of a trace exported by the app's trace recorder.
+ *
+ * Usage: TraceDump FILE.fstr
+ */
+public class TraceDump {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDump FILE.fstr");
+            System.exit(2);
+        }
+        for (TraceEvent event : TraceDecoder.decode(Files.readAllBytes(Paths.get(args[0])))) {
+            System.out.println(event);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.location_loop.FixPriority;
+import com.fitsnitchapp.location_loop.LocationSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Answers fix requests with the most recent trace point at the simulated
+ * time, shifted by the offset of the current replay. Fixes cheaper than
+ * high accuracy get the trace point with its accuracy widened to what that
+ * priority typically manages; their position error isn't modelled.
+ */
+public class TraceLocationSource implements LocationSource {
+    /** A request further than this from any trace point gets no fix */
+    private static final long MAX_FIX_AGE = 5 * 60000;
+    /** Typical accuracy in meters of balanced power and low power fixes */
+    public static final float BALANCED_ACCURACY = 100;
+    private static final float LOW_POWER_ACCURACY = 2000;
+
+    private final SimClock clock;
+    private final List<Fix> trace;
+    private long offset;
+    private int cursor;
+    private long fixesRequested;
+    private long highAccuracyFixes;
+    private float balancedAccuracy = BALANCED_ACCURACY;
+
+    public TraceLocationSource(SimClock clock, List<Fix> trace) {
+        this.clock = clock;
+        this.trace = trace;
+    }
+
+    /**
+     * Starts a new replay of the trace, shifted forward by offset millis.
+     */
+    public void restart(long offset) {
+        this.offset = offset;
+        this.cursor = 0;
+    }
+
+    /**
+     * Sets the accuracy balanced power fixes get, for areas where they do
+     * worse than typical.
+     */
+    public void setBalancedAccuracy(float meters) {
+        this.balancedAccuracy = meters;
+    }
+
+    public long getFixesRequested() {
+        return fixesRequested;
+    }
+
+    public long getHighAccuracyFixes() {
+        return highAccuracyFixes;
+    }
+
+    /**
+     * The trace points after from and up to now, like a batch of location
+     * updates delivered at once. Moves the cursor like requestFix does.
+     */
+    public List<Fix> fixesSince(long from, FixPriority priority) {
+        long now = clock.currentTimeMillis() - offset;
+        from -= offset;
+        List<Fix> fixes = new ArrayList<>();
+        for (int i = cursor; i < trace.size() && trace.get(i).time <= now; i++) {
+            Fix point = trace.get(i);
+            if (point.time > from) {
+                fixes.add(new Fix(point.lat, point.lon, point.time + offset, point.accuracy, point.speed));
+            }
+            cursor = i;
+        }
+        fixesRequested += fixes.size();
+        if (priority == FixPriority.HIGH_ACCURACY) highAccuracyFixes += fixes.size();
+        return fixes;
+    }
+
+    @Override
+    public void requestFix(FixPriority priority, Consumer<Fix> onFix) {
+        if (priority == FixPriority.HIGH_ACCURACY) {
+            highAccuracyFixes++;
+            requestFix(onFix);
+            return;
+        }
+        float accuracy = priority == FixPriority.BALANCED_POWER ? balancedAccuracy : LOW_POWER_ACCURACY;
+        requestFix((fix) -> onFix.accept(fix == null ? null
+                : new Fix(fix.lat, fix.lon, fix.time, Math.max(accuracy, fix.hasAccuracy() ? fix.accuracy : 0), fix.speed)));
+    }
+
+    @Override
+    public void requestFix(Consumer<Fix> onFix) {
+        fixesRequested++;
+        long now = clock.currentTimeMillis() - offset;
+        while (cursor + 1 < trace.size() && trace.get(cursor + 1).time <= now) {
+            cursor++;
+        }
+        Fix point = trace.get(cursor);
+        if (point.time > now || now - point.time > MAX_FIX_AGE) {
+            onFix.accept(null);
+            return;
+        }
+        onFix.accept(new Fix(point.lat, point.lon, clock.currentTimeMillis(), point.accuracy, point.speed));
+    }
+}
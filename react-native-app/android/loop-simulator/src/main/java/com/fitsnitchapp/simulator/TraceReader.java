@@ -0,0 +1,129 @@
+package com.fitsnitchapp.simulator;
+
+import com.fitsnitchapp.location_loop.Fix;
+import com.fitsnitchapp.trace.TraceDecoder;
+import com.fitsnitchapp.trace.TraceEvent;
+import com.fitsnitchapp.trace.TraceFormat;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads recorded GPS traces, sorted by time.
+ *
+ * CSV traces have a header row of time,lat,lon[,accuracy[,speed]] with time
+ * in epoch millis. GPX traces use trkpt elements with a time child, and the
+ * optional speed and hdop children. FSTR traces are exported from the app's
+ * trace recorder, and only their fixes are replayed.
+ */
+public class TraceReader {
+    /** Rough conversion from GPX horizontal dilution of precision to meters */
+    private static final float METERS_PER_HDOP = 5;
+
+    private TraceReader() {}
+
+    public static List<Fix> read(String path) throws IOException {
+        String lower = path.toLowerCase();
+        List<Fix> fixes;
+        if (lower.endsWith(".gpx")) fixes = readGpx(path);
+        else if (lower.endsWith(".fstr")) fixes = readRecorded(path);
+        else fixes = readCsv(path);
+        fixes.sort(Comparator.comparingLong(f -> f.time));
+        return fixes;
+    }
+
+    static List<Fix> readCsv(String path) throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line = reader.readLine();
+            if (line == null) return fixes;
+            if (Character.isDigit(line.charAt(0))) fixes.add(parseCsvLine(line));
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                fixes.add(parseCsvLine(line));
+            }
+        }
+        return fixes;
+    }
+
+    private static Fix parseCsvLine(String line) {
+        String[] cols = line.split(",");
+        return new Fix(
+                Double.parseDouble(cols[1]),
+                Double.parseDouble(cols[2]),
+                Long.parseLong(cols[0]),
+                cols.length > 3 ? Float.parseFloat(cols[3]) : Float.NaN,
+                cols.length > 4 ? Float.parseFloat(cols[4]) : Float.NaN);
+    }
+
+    static List<Fix> readRecorded(String path) throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        try {
+            for (TraceEvent event : TraceDecoder.decode(Files.readAllBytes(Paths.get(path)))) {
+                if (event.type == TraceFormat.TYPE_FIX) {
+                    fixes.add(new Fix(event.lat, event.lon, event.time, event.accuracy, event.speed));
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Could not parse recorded trace " + path, e);
+        }
+        return fixes;
+    }
+
+    static List<Fix> readGpx(String path) throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        try (InputStream in = new FileInputStream(path)) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            double lat = 0, lon = 0;
+            long time = -1;
+            float accuracy = Float.NaN, speed = Float.NaN;
+            String element = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    element = xml.getLocalName();
+                    if (element.equals("trkpt")) {
+                        lat = Double.parseDouble(xml.getAttributeValue(null, "lat"));
+                        lon = Double.parseDouble(xml.getAttributeValue(null, "lon"));
+                        time = -1;
+                        accuracy = Float.NaN;
+                        speed = Float.NaN;
+                    }
+                }
+                else if (event == XMLStreamConstants.CHARACTERS && element != null && !xml.isWhiteSpace()) {
+                    String text = xml.getText().trim();
+                    switch (element) {
+                        case "time": time = Instant.parse(text).toEpochMilli(); break;
+                        case "speed": speed = Float.parseFloat(text); break;
+                        case "hdop": accuracy = Float.parseFloat(text) * METERS_PER_HDOP; break;
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (xml.getLocalName().equals("trkpt") && time >= 0) {
+                        fixes.add(new Fix(lat, lon, time, accuracy, speed));
+                    }
+                    element = null;
+                }
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Could not parse GPX trace " + path, e);
+        }
+        return fixes;
+    }
+}
@@ -9,6 +9,35 @@ interface NativeModule {
 	// setWillLeave(): void;
 	setUsedCheat(): void;
 	saveUserId(id: string): void;
+	getRestaurantCacheStats(cb: (json: string | null) => void): void;
+	clearRestaurantCache(): void;
+	getLocalResolverStats(cb: (json: string) => void): void;
+	setApiPrewarmEnabled(enabled: boolean): void;
+	setWireFormatEnabled(enabled: boolean): void;
+	setIntervalPolicy(name: "fixed" | "adaptive"): void;
+	setAdaptiveIntervalBounds(minIval: number, maxIval: number): void;
+	setLoopProfile(profile: "battery-saver" | "balanced" | "precise"): void;
+	getLoopProfile(cb: (profile: "battery-saver" | "balanced" | "precise" | null) => void): void;
+	getIntervalDecisions(cb: (json: string) => void): void;
+	setTickSchedulerMode(mode: "workmanager" | "service" | "batched"): void;
+	getTickDriftStats(cb: (json: string) => void): void;
+	setDetectionMode(mode: "polling" | "geofence"): void;
+	getGeofenceStats(cb: (json: string) => void): void;
+	setLogLevel(level: "VERBOSE" | "DEBUG" | "INFO" | "WARN" | "ERROR"): void;
+	setLogFileEnabled(enabled: boolean): void;
+	getPersistedLog(cb: (log: string | null) => void): void;
+	startLiveLocation(maxRate: number, requireAck: boolean): void;
+	stopLiveLocation(): void;
+	ackLiveLocation(): void;
+	getLiveLocationStats(cb: (json: string) => void): void;
+	getSnitchOutboxStats(cb: (json: string) => void): void;
+	setTraceRecordingEnabled(enabled: boolean): void;
+	exportTrace(cb: (path: string | null) => void): void;
+	getTraceStats(cb: (json: string) => void): void;
+	getLoopMetrics(reset: boolean, cb: (json: string) => void): void;
+	getEnergyBudget(cb: (json: string) => void): void;
+	setTieredAccuracyEnabled(enabled: boolean): void;
+	getAccuracyTierStats(cb: (json: string) => void): void;
 }
 
 class NativeModuleService {
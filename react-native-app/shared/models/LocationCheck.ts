@@ -1,8 +1,21 @@
 import { LatLonPair } from "./CoordinateModels";
+import RestaurantData from "./RestaurantData";
+import { RestaurantsInAreaResponse } from "./requests/RestaurantsInAreaRequest";
 
 export default class LocationCheck {
     constructor(
         public userId: string, 
         public location: LatLonPair
     ) {};
+}
+
+export type LocationCheckResult = {
+    isRestaurant: boolean,
+    restaurant?: RestaurantData | null,
+    /**
+     * Every restaurant around the location, best match first, and the area
+     * in which they are all there is, so the app can resolve locations
+     * inside it without asking again
+     */
+    candidates?: RestaurantsInAreaResponse
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ import { LatLonPair } from "./CoordinateModels";
 
 // TODO - should this be an object (class) instead of a Type?
 type RestaurantData = {
+    /** Stable id of the place, like "way/123456" */
+    id?: string,
     name?: string,
     location?: LatLonPair
 }
@@ -5,6 +5,26 @@ export class CreateSnitchRequest {
     constructor(
         public userId:string,
         public restaurantData:RestaurantData,
-        public originCoords:LatLonPair
+        public originCoords:LatLonPair,
+        /**
+         * Client generated idempotency key. Replaying a request with the
+         * same id won't create a second snitch.
+         */
+        public snitchId?:string
+    ) {}
+}
+
+export class SnitchBatchRequest {
+    constructor(
+        public snitches:CreateSnitchRequest[]
+    ) {}
+}
+
+export class SnitchBatchResponse {
+    constructor(
+        /**
+         * Ids of the snitches that are now stored, including ones that already were
+         */
+        public accepted:string[]
     ) {}
 }
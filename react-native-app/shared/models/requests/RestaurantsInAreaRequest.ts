@@ -0,0 +1,23 @@
+import { LatLonPair } from "../CoordinateModels";
+
+export class RestaurantsInAreaRequest {
+    constructor(
+        public location: LatLonPair,
+        public radius: number
+    ) {}
+}
+
+export type AreaRestaurant = {
+    id?: string,
+    name: string,
+    pinLocation?: LatLonPair,
+    boundary?: LatLonPair[]
+}
+
+export class RestaurantsInAreaResponse {
+    constructor(
+        public center: LatLonPair,
+        public radius: number,
+        public restaurants: AreaRestaurant[]
+    ) {}
+}
@@ -0,0 +1,54 @@
+import { LatLonPair } from "../CoordinateModels";
+import RestaurantData from "../RestaurantData";
+import { RestaurantsInAreaResponse } from "./RestaurantsInAreaRequest";
+
+/** Attribution of a point at no restaurant */
+export const ATTRIBUTION_NONE = -1;
+/** Attribution of a point too inaccurate to use */
+export const ATTRIBUTION_SKIPPED = -2;
+
+export type TrajectoryPoint = {
+    /** Epoch millis */
+    time: number,
+    location: LatLonPair,
+    /** Meters */
+    accuracy?: number | null
+}
+
+export class TrajectoryCheckRequest {
+    constructor(
+        /** Oldest first */
+        public points: TrajectoryPoint[],
+        /** How long the trailing run must last to count as dwelling */
+        public minDwellMillis: number = 0
+    ) {}
+}
+
+/**
+ * The trailing run of points that share an attribution, ignoring skipped points
+ */
+export type Dwell = {
+    /** Index into restaurants, or ATTRIBUTION_NONE */
+    restaurant: number,
+    since: number,
+    until: number,
+    /** Attributed points in the run */
+    points: number,
+    /** Whether the run is at a restaurant and lasted at least minDwellMillis */
+    dwelling: boolean
+}
+
+export class TrajectoryCheckResponse {
+    constructor(
+        /** Every restaurant any point was attributed to */
+        public restaurants: RestaurantData[],
+        /** For each point, an index into restaurants, or ATTRIBUTION_NONE / ATTRIBUTION_SKIPPED */
+        public attribution: number[],
+        public dwell: Dwell,
+        /**
+         * Every restaurant around the last reliable point, like the
+         * candidates of a check-location there
+         */
+        public candidates?: RestaurantsInAreaResponse
+    ) {}
+}
@@ -46,6 +46,12 @@ export default class LogStore {
 	@action handleNativeLog = (event) => {
 		this._log(event.message, event.extras || '');
 	}
+
+	@action handleNativeLogBatch = (event) => {
+		for (let entry of event.entries || []) {
+			this._log(entry.level, entry.message);
+		}
+	}
 }
 
 
@@ -10,7 +10,7 @@ const LogUI = observer(()=>{
 	useEffect(() => {
 		const eventEmitter = new NativeEventEmitter(NativeModules.LocationManager);
 		const sub = eventEmitter ?
-			eventEmitter.addListener('JS_EVENT_LOG', logStore.handleNativeLog)
+			eventEmitter.addListener('JS_EVENT_LOG_BATCH', logStore.handleNativeLogBatch)
 			: null;
 	
         return () => {
@@ -4,6 +4,8 @@ import { handler as cheatmealCreate } from "./handlers/cheatmeal-create";
 import { handler as cheatmealGetForUser } from "./handlers/cheatmeal-get-for-users";
 import { handler as cheatmealGet } from "./handlers/cheatmeal-get";
 import { handler as checkForRestaurant } from "./handlers/check-for-restaurant";
+import { handler as checkTrajectory } from "./handlers/check-trajectory";
+import { handler as restaurantsInArea } from "./handlers/restaurants-in-area";
 import { handler as partnerGetForUser } from "./handlers/partner-get-for-user";
 import { handler as partnerGetRequesters } from "./handlers/partner-get-requesters";
 import { handler as partnerGetStatus } from "./handlers/partner-get-status";
@@ -31,6 +33,8 @@ export const handlers: {[key:string]:(event:APIGatewayProxyEventV2)=>Promise<Pro
     "user_create": userCreate,
     "user_update": userUpdate,
     "check-location": checkForRestaurant,
+    "check-trajectory": checkTrajectory,
+    "restaurants-in-area": restaurantsInArea,
     "trainer_get_status": trainerGetStatus,
     "trainer_request_create": trainerRequestCreate,
     "trainer_request_cancel": trainerRequestCancel,
@@ -5,8 +5,7 @@ import LambaUtils from "../utils/LambdaUtils";
 
 export const handler = async (event: APIGatewayProxyEventV2) => {
     return await LambaUtils.handleEventWithBody<LocationCheck>(event, async (body,res)=>{
-        let restaurant = await LocationService.getRestaurantAtLocation(body.location);
-		res.setBodyToData({ isRestaurant: Boolean(restaurant), restaurant });
+		res.setBodyToData(await LocationService.checkLocation(body.location));
 		res.setCode(200);
         return res;
     });
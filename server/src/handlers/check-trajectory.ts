@@ -0,0 +1,19 @@
+import { TrajectoryCheckRequest } from "../../../react-native-app/shared/models/requests/TrajectoryCheckRequest";
+import { LocationService } from "../services/LocationService";
+import { APIGatewayProxyEventV2 } from "aws-lambda";
+import LambaUtils from "../utils/LambdaUtils";
+
+export const handler = async (event: APIGatewayProxyEventV2) => {
+    return await LambaUtils.handleEventWithBody<TrajectoryCheckRequest>(event, async (body,res)=>{
+        if (!body.points?.length || body.points.length > LocationService.TRAJECTORY_MAX_POINTS) {
+            return res.setCode(400).setBodyToMessage(`A trajectory must have 1 to ${LocationService.TRAJECTORY_MAX_POINTS} points`);
+        }
+        if (LocationService.trajectoryRadius(body) > LocationService.MAX_AREA_RADIUS) {
+            return res.setCode(400).setBodyToMessage("Trajectory covers too large an area");
+        }
+        let verdict = await LocationService.checkTrajectory(body);
+		res.setBodyToData(verdict);
+		res.setCode(200);
+        return res;
+    });
+}
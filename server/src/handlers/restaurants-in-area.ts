@@ -0,0 +1,14 @@
+import { RestaurantsInAreaRequest, RestaurantsInAreaResponse } from "../../../react-native-app/shared/models/requests/RestaurantsInAreaRequest";
+import { LocationService } from "../services/LocationService";
+import { APIGatewayProxyEventV2 } from "aws-lambda";
+import LambaUtils from "../utils/LambdaUtils";
+
+export const handler = async (event: APIGatewayProxyEventV2) => {
+    return await LambaUtils.handleEventWithBody<RestaurantsInAreaRequest>(event, async (body,res)=>{
+        let radius = LocationService.clampAreaRadius(body.radius);
+        let restaurants = await LocationService.getRestaurantsInArea(body.location, radius);
+		res.setBodyToData(new RestaurantsInAreaResponse(body.location, radius, restaurants));
+		res.setCode(200);
+        return res;
+    });
+}
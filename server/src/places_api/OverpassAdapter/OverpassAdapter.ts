@@ -24,6 +24,11 @@ function getNameFromElement(el: OverpassElement) {
     return el.tags?.name || el.tags?.brand || "";
 }
 
+/** OSM ids are only unique per element type, and don't change when a place is renamed */
+function getIdFromElement(el: OverpassElement) {
+    return `${el.type}/${el.id}`;
+}
+
 export default class OverpassAdapter implements PlacesApiAdapter {
     async getRestaurantsInRadius(coord:LatLonPair, radius:number): Promise<RestaurantDetectionDetails[]> {
         let bbox = CoordinateUtils.createBoxAroundCoord(coord,radius);
@@ -36,6 +41,7 @@ export default class OverpassAdapter implements PlacesApiAdapter {
         for (let el of res.data.elements as OverpassElement[]) {
             if (el.type === 'node') {
                 if (el.tags && el.lat && el.lon) restaurants.push({
+                    id: getIdFromElement(el),
                     name: getNameFromElement(el),
                     pinLocation: new LatLonPair(el.lat, el.lon)
                 })
@@ -46,6 +52,7 @@ export default class OverpassAdapter implements PlacesApiAdapter {
 
         for (let [id,way] of ways) {
             restaurants.push({
+                id: getIdFromElement(way),
                 name: getNameFromElement(way),
                 boundary: way.nodes.reduce((arr,id)=> {
                     let node = way_nodes.get(id)
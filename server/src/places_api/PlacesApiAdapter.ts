@@ -10,6 +10,8 @@ export default interface PlacesApiAdapter {
 }
 
 export type RestaurantDetectionDetails = {
+    /** Stable id from the places source, like "way/123456" */
+    id?: string,
     name: string,
     pinLocation?: LatLonPair,
     boundary?: LatLonPair[]
@@ -3,14 +3,39 @@ import express from "express";
 import { handlers } from "../handler-paths";
 import bodyParser from "body-parser";
 import { catchErrors } from "../utils/catchErrors";
+import { WireCodec, WIRE_MIME_TYPE } from "../utils/WireCodec";
+
+/**
+ * Handlers whose bodies can also be sent in the compact wire format. Wire
+ * requests are turned into the JSON the handler expects, and the handler's
+ * JSON response is encoded back when the client accepts it.
+ */
+const WIRE_CODECS: {[path: string]: {decodeRequest: (buf: Buffer) => any, encodeResponse: (body: any) => Buffer}} = {
+    "check-location": {
+        decodeRequest: WireCodec.decodeCheckLocationRequest,
+        encodeResponse: WireCodec.encodeCheckLocationResponse
+    },
+    "check-trajectory": {
+        decodeRequest: WireCodec.decodeTrajectoryCheckRequest,
+        encodeResponse: WireCodec.encodeTrajectoryCheckResponse
+    }
+}
 
 const LambdaRouter = express();
+// Must come first - the text parser would otherwise take wire bodies too
+LambdaRouter.use(bodyParser.raw({type: WIRE_MIME_TYPE}));
 LambdaRouter.use(bodyParser.text({type: '*/*'}));
 
 LambdaRouter.post("/:path", catchErrors(async (req,res)=>{
     try {
+        let wire = WIRE_CODECS[req.params.path];
+        let body = req.body;
+        if (Buffer.isBuffer(body)) {
+            if (!wire) return res.sendStatus(415);
+            body = wire.decodeRequest(body);
+        }
         let albProxy: Partial<APIGatewayProxyEventV2> = {
-            body: typeof req.body === 'object' ? JSON.stringify(req.body) : req.body
+            body: typeof body === 'object' ? JSON.stringify(body) : body
         }
         let handler = handlers[req.params.path];
         if (!handler) {
@@ -28,6 +53,10 @@ LambdaRouter.post("/:path", catchErrors(async (req,res)=>{
                 res.setHeader(header,val)
             }
         }
+        if (wire && proxyRes.body && res.statusCode === 200 && WireCodec.accepts(req.get('Accept'))) {
+            res.type(WIRE_MIME_TYPE);
+            return res.send(wire.encodeResponse(JSON.parse(proxyRes.body)));
+        }
         res.send(proxyRes.body);
     }
     catch (e:any) {
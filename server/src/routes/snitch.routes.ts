@@ -1,12 +1,16 @@
 import express from "express";
-import { CreateSnitchRequest } from "../../../react-native-app/shared/models/requests/CreateSnitchRequest";
+import { CreateSnitchRequest, SnitchBatchRequest, SnitchBatchResponse } from "../../../react-native-app/shared/models/requests/CreateSnitchRequest";
 import SnitchService from "../services/SnitchService";
 import { catchErrors } from "../utils/catchErrors";
+import { WireCodec, WIRE_MIME_TYPE } from "../utils/WireCodec";
 
 const SnitchRouter = express();
+SnitchRouter.use(express.raw({type: WIRE_MIME_TYPE}));
 
 SnitchRouter.post('/publishNewSnitch', catchErrors(async (req, res, next) => {
-	const newSnitchData = req.body as CreateSnitchRequest;
+	const newSnitchData = Buffer.isBuffer(req.body)
+		? WireCodec.decodeCreateSnitchRequest(req.body)
+		: req.body as CreateSnitchRequest;
 	try {
 		await new SnitchService().createAndPublishSnitch(newSnitchData);
 		res.status(200).send();
@@ -16,4 +20,22 @@ SnitchRouter.post('/publishNewSnitch', catchErrors(async (req, res, next) => {
 	}
 }));
 
+SnitchRouter.post('/publishSnitchBatch', catchErrors(async (req, res, next) => {
+	const batch = Buffer.isBuffer(req.body)
+		? WireCodec.decodeSnitchBatchRequest(req.body)
+		: req.body as SnitchBatchRequest;
+	try {
+		const accepted = await new SnitchService().createAndPublishSnitchBatch(batch.snitches || []);
+		const response = new SnitchBatchResponse(accepted);
+		if (WireCodec.accepts(req.get('Accept'))) {
+			res.status(200).type(WIRE_MIME_TYPE).send(WireCodec.encodeSnitchBatchResponse(response));
+			return;
+		}
+		res.status(200).send(response);
+	}
+	catch (e) {
+		next(e);
+	}
+}));
+
 export default SnitchRouter;
\ No newline at end of file
@@ -1,4 +1,5 @@
 import { LatLonPair } from "../../../react-native-app/shared/models/CoordinateModels";
+import { ATTRIBUTION_NONE, ATTRIBUTION_SKIPPED, TrajectoryCheckRequest } from "../../../react-native-app/shared/models/requests/TrajectoryCheckRequest";
 import { LocationService } from "./LocationService";
 
 describe(LocationService, ()=>{
@@ -147,4 +148,117 @@ describe(LocationService, ()=>{
         })
 
     })
+
+    describe(LocationService.rankPlaces, ()=>{
+        it("should put places the coords are inside first, then those in range, then by distance", ()=>{
+            let places = [
+                { name: "Far", pinLocation: new LatLonPair(40.0010, -111.0) },
+                { name: "Near", pinLocation: new LatLonPair(40.0001, -111.0) },
+                { name: "Around", pinLocation: new LatLonPair(40.0020, -111.0), boundary: [
+                    new LatLonPair(39.9995, -111.0005), new LatLonPair(40.0025, -111.0005),
+                    new LatLonPair(40.0025, -110.9995), new LatLonPair(39.9995, -110.9995)
+                ] }
+            ];
+            let ranked = LocationService.rankPlaces(places, new LatLonPair(40.0, -111.0));
+            expect(ranked.map(p => p.name)).toEqual(["Around", "Near", "Far"]);
+        })
+    })
+
+    describe(LocationService.candidates, ()=>{
+        const coord = new LatLonPair(40.0, -111.0);
+        const placeAt = (i: number) => ({ id: `node/${i}`, name: `Place ${i}`, pinLocation: new LatLonPair(40.0 + i * 0.0001, -111.0) });
+
+        it("should keep the whole radius when every place fits", ()=>{
+            let res = LocationService.candidates([placeAt(1), placeAt(2)], coord);
+            expect(res.radius).toBe(LocationService.CANDIDATE_RADIUS);
+            expect(res.restaurants.map(p => p.id)).toEqual(["node/1", "node/2"]);
+        })
+
+        it("should shrink the radius to leave out the places that don't fit", ()=>{
+            let places = [9, 8, 7, 6, 5, 4, 3, 2, 1].map(placeAt);
+            let res = LocationService.candidates(places, coord);
+            expect(res.restaurants.length).toBe(LocationService.MAX_CANDIDATES);
+            expect(res.restaurants.map(p => p.id)).not.toContain("node/9");
+            expect(res.radius).toBeLessThan(0.0009);
+            expect(res.radius).toBeGreaterThanOrEqual(0.0008);
+        })
+    })
+
+    describe(LocationService.trajectoryRadius, ()=>{
+        it("should reach the margin past the farthest reliable point", ()=>{
+            let request = new TrajectoryCheckRequest([
+                { time: 0, location: new LatLonPair(34.0610, -118.2317) },
+                { time: 10000, location: new LatLonPair(34.0614, -118.2317) },
+                { time: 20000, location: new LatLonPair(34.0700, -118.2317), accuracy: 150 }
+            ]);
+            expect(LocationService.trajectoryRadius(request)).toBeCloseTo(0.0002 + LocationService.CHECK_RADIUS);
+            expect(LocationService.trajectoryRadius(request, LocationService.CANDIDATE_RADIUS))
+                .toBeCloseTo(0.0002 + LocationService.CANDIDATE_RADIUS);
+        })
+    })
+
+    describe(LocationService.attributeTrajectory, ()=>{
+        const places = [
+            { name: "Burger Barn", pinLocation: new LatLonPair(34.0612, -118.2317) },
+            { name: "Taco Town", pinLocation: new LatLonPair(34.0630, -118.2317) }
+        ];
+        const at = (time: number, lat: number, accuracy?: number) =>
+            ({ time, location: new LatLonPair(lat, -118.2317), accuracy });
+
+        it("should attribute each point and find the trailing dwell", ()=>{
+            let request = new TrajectoryCheckRequest([
+                at(0, 34.0650),
+                at(10000, 34.0630),
+                at(20000, 34.0612),
+                at(30000, 34.06121)
+            ], 5000);
+            let res = LocationService.attributeTrajectory(places, request);
+            expect(res.restaurants.map(r => r.name)).toEqual(["Taco Town", "Burger Barn"]);
+            expect(res.attribution).toEqual([ATTRIBUTION_NONE, 0, 1, 1]);
+            expect(res.dwell).toEqual({ restaurant: 1, since: 20000, until: 30000, points: 2, dwelling: true });
+        })
+
+        it("should skip inaccurate points", ()=>{
+            let request = new TrajectoryCheckRequest([
+                at(0, 34.0612),
+                at(10000, 34.0612),
+                at(20000, 34.0650, 150)
+            ]);
+            let res = LocationService.attributeTrajectory(places, request);
+            expect(res.attribution).toEqual([0, 0, ATTRIBUTION_SKIPPED]);
+            expect(res.dwell.points).toBe(2);
+            expect(res.dwell.dwelling).toBe(true);
+        })
+
+        it("should not be dwelling when the trajectory ends away from restaurants", ()=>{
+            let request = new TrajectoryCheckRequest([
+                at(0, 34.0612),
+                at(10000, 34.0650)
+            ]);
+            let res = LocationService.attributeTrajectory(places, request);
+            expect(res.dwell.restaurant).toBe(ATTRIBUTION_NONE);
+            expect(res.dwell.dwelling).toBe(false);
+        })
+
+        it("should tell apart places with the same name by id", ()=>{
+            let chain = [
+                { id: "node/1", name: "Burger Barn", pinLocation: new LatLonPair(34.0612, -118.2317) },
+                { id: "node/2", name: "Burger Barn", pinLocation: new LatLonPair(34.0630, -118.2317) }
+            ];
+            let request = new TrajectoryCheckRequest([at(0, 34.0612), at(10000, 34.0630)]);
+            let res = LocationService.attributeTrajectory(chain, request);
+            expect(res.restaurants.map(r => r.id)).toEqual(["node/1", "node/2"]);
+            expect(res.attribution).toEqual([0, 1]);
+        })
+
+        it("should not be dwelling for a run shorter than asked", ()=>{
+            let request = new TrajectoryCheckRequest([
+                at(0, 34.0650),
+                at(10000, 34.0612)
+            ], 60000);
+            let res = LocationService.attributeTrajectory(places, request);
+            expect(res.dwell.restaurant).toBe(0);
+            expect(res.dwell.dwelling).toBe(false);
+        })
+    })
 })
@@ -1,19 +1,92 @@
 import { LatLonPair as LatLonPair } from "../../../react-native-app/shared/models/CoordinateModels";
 import RestaurantData from "../../../react-native-app/shared/models/RestaurantData";
+import { LocationCheckResult } from "../../../react-native-app/shared/models/LocationCheck";
+import { RestaurantsInAreaResponse } from "../../../react-native-app/shared/models/requests/RestaurantsInAreaRequest";
 import OverpassAdapter from "../places_api/OverpassAdapter/OverpassAdapter";
 import PlacesApiAdapter, { RestaurantDetectionDetails } from "../places_api/PlacesApiAdapter";
+import { ATTRIBUTION_NONE, ATTRIBUTION_SKIPPED, Dwell, TrajectoryCheckRequest, TrajectoryCheckResponse, TrajectoryPoint } from "../../../react-native-app/shared/models/requests/TrajectoryCheckRequest";
 const relationToPoly = require('robust-point-in-polygon')
 
 export class LocationService {
+    /** Largest area radius clients may request for bulk restaurant lookups (~2km) */
+    public static readonly MAX_AREA_RADIUS = 0.02;
+    /** Radius about the distance from McD's to their farthest drive-thru menu  */
+    public static readonly CHECK_RADIUS = 0.00015;
+    /** How far around a checked location its candidates are sent for (~110m) */
+    public static readonly CANDIDATE_RADIUS = 0.001;
+    /** Most candidates one check-location answer carries */
+    public static readonly MAX_CANDIDATES = 8;
+    /** Kept between a candidate area and the places left out of it, well above wire precision */
+    private static readonly CANDIDATE_MARGIN = 1e-6;
+    /** Trajectory points less accurate than this (meters) are skipped */
+    public static readonly TRAJECTORY_MAX_ACCURACY = 75;
+    /** Most points one trajectory check may carry */
+    public static readonly TRAJECTORY_MAX_POINTS = 20;
+
     /**
      * Loads all restaurants within a small radius of the given coords and
      * determines which one the coords are inside of or closest to.
      */
     public static async getRestaurantAtLocation(coord: LatLonPair): Promise<RestaurantData | null> {
-        /** Radius about the distance from McD's to their farthest drive-thru menu  */
-        const radius = 0.00015;
-        let places = await this.getPlacesApiAdapter().getRestaurantsInRadius(coord,radius);
-        if (places.length === 1) return places[0];
+        let places = await this.getPlacesApiAdapter().getRestaurantsInRadius(coord,this.CHECK_RADIUS);
+        return this.resolvePlace(places, coord);
+    }
+
+    /**
+     * Resolves the coords like getRestaurantAtLocation, from a query wide
+     * enough to also send every place around them as ranked candidates.
+     * RestaurantRules.checkLocation in the app is a port of this.
+     */
+    public static async checkLocation(coord: LatLonPair): Promise<LocationCheckResult> {
+        let places = await this.getPlacesApiAdapter().getRestaurantsInRadius(coord, this.CANDIDATE_RADIUS);
+        places = places.filter(place => this.isNear(place, coord, this.CANDIDATE_RADIUS));
+        let candidates = this.candidates(places, coord);
+        let restaurant = this.resolvePlace(places.filter(place => this.isNear(place, coord, this.CHECK_RADIUS)), coord);
+        return { isRestaurant: Boolean(restaurant), restaurant, candidates };
+    }
+
+    /**
+     * The candidates a check-location answer carries: the places around the
+     * coords, ranked, and the square around them they cover. With more than
+     * MAX_CANDIDATES places, only the closest are kept and the square shrinks
+     * to leave out the rest, so that a check anywhere inside it finds no
+     * place that isn't a candidate.
+     */
+    public static candidates(places: RestaurantDetectionDetails[], coord: LatLonPair): RestaurantsInAreaResponse {
+        let radius = this.CANDIDATE_RADIUS;
+        let kept = places;
+        if (places.length > this.MAX_CANDIDATES) {
+            let closest = [...places].sort((a, b) => this.boxDistance(a, coord) - this.boxDistance(b, coord));
+            kept = closest.slice(0, this.MAX_CANDIDATES);
+            radius = Math.min(radius, this.boxDistance(closest[this.MAX_CANDIDATES], coord) - this.CANDIDATE_MARGIN);
+        }
+        return new RestaurantsInAreaResponse(coord, Math.max(0, radius), this.rankPlaces(kept, coord));
+    }
+
+    /**
+     * Orders places by how well they match the coords: those they are inside
+     * of first, then those within CHECK_RADIUS by distance to their pin, then
+     * the rest by distance to their pin. The first is the one resolvePlace
+     * would pick from the places within CHECK_RADIUS.
+     */
+    public static rankPlaces(places: RestaurantDetectionDetails[], coord: LatLonPair): RestaurantDetectionDetails[] {
+        let ranked = places.map(place => {
+            let pin = this.pinOf(place);
+            let tier = place.boundary && this.isInBoundary(place.boundary, coord) ? 0
+                : this.boxDistance(place, coord) <= this.CHECK_RADIUS ? 1 : 2;
+            return { place, tier, distance: pin ? this.distanceBetween(coord, pin) : Infinity };
+        });
+        // The sort is stable, so ties keep the order resolvePlace sees them in
+        ranked.sort((a, b) => a.tier - b.tier || (a.distance === b.distance ? 0 : a.distance < b.distance ? -1 : 1));
+        return ranked.map(r => r.place);
+    }
+
+    /**
+     * Determines which of the places found around the coords they are
+     * inside of or closest to.
+     */
+    public static resolvePlace(places: RestaurantDetectionDetails[], coord: LatLonPair): RestaurantData | null {
+        if (places.length === 1) return this.toRestaurantData(places[0]);
 
         if (places.length > 1) {
             let closestPlace: RestaurantDetectionDetails|null = null;
@@ -22,7 +95,7 @@ export class LocationService {
                 if (place.boundary) {
                     // If the user is within the boundaries of this place,
                     // return this place!
-                    if (this.isInBoundary(place.boundary, coord)) return place;
+                    if (this.isInBoundary(place.boundary, coord)) return this.toRestaurantData(place);
                     // Otherewise, compute the pinLocation as the restaurant center
                     // if it doesn't exist yet
                     if (!place.pinLocation) {
@@ -44,24 +117,172 @@ export class LocationService {
 
             }
 
-            if (closestPlace) return {
-                name: closestPlace.name,
-                location: closestPlace.pinLocation
-            }
+            if (closestPlace) return this.toRestaurantData(closestPlace);
     
         }
 
         return null;
     }
 
+    /**
+     * Attributes every point of a short trajectory to a restaurant with a
+     * single places query covering all of them, and decides whether the
+     * trajectory ends dwelling at one. The query also covers the candidates
+     * around the last reliable point, so the app can resolve the next
+     * trajectory from there without asking again.
+     * TrajectoryRules in the app is a port of this, and must stay in sync.
+     */
+    public static async checkTrajectory(request: TrajectoryCheckRequest): Promise<TrajectoryCheckResponse> {
+        let reliable = request.points.filter(p => this.isReliable(p));
+        if (!reliable.length) return this.attributeTrajectory([], request);
+        let lats = reliable.map(p => p.location.lat);
+        let lons = reliable.map(p => p.location.lon);
+        // One query covering every point's own check radius
+        let center = new LatLonPair(
+            (Math.min(...lats) + Math.max(...lats)) / 2,
+            (Math.min(...lons) + Math.max(...lons)) / 2
+        );
+        let places = await this.getPlacesApiAdapter().getRestaurantsInRadius(center, this.trajectoryRadius(request, this.CANDIDATE_RADIUS));
+        let last = reliable[reliable.length - 1].location;
+        let response = this.attributeTrajectory(places, request);
+        response.candidates = this.candidates(places.filter(place => this.isNear(place, last, this.CANDIDATE_RADIUS)), last);
+        return response;
+    }
+
+    /**
+     * @param margin How far around each reliable point the query must reach
+     * @returns The radius of a places query covering the checks of every reliable point
+     */
+    public static trajectoryRadius(request: TrajectoryCheckRequest, margin: number = this.CHECK_RADIUS): number {
+        let reliable = request.points.filter(p => this.isReliable(p));
+        if (!reliable.length) return 0;
+        let lats = reliable.map(p => p.location.lat);
+        let lons = reliable.map(p => p.location.lon);
+        let span = Math.max(Math.max(...lats) - Math.min(...lats), Math.max(...lons) - Math.min(...lons));
+        return span / 2 + margin;
+    }
+
+    public static isReliable(point: TrajectoryPoint): boolean {
+        return point.accuracy === undefined || point.accuracy === null || point.accuracy <= this.TRAJECTORY_MAX_ACCURACY;
+    }
+
+    /**
+     * Attributes each point using only the places near it, as if it had been checked on its own.
+     */
+    public static attributeTrajectory(places: RestaurantDetectionDetails[], request: TrajectoryCheckRequest): TrajectoryCheckResponse {
+        let restaurants: RestaurantData[] = [];
+        let attribution = request.points.map(point => {
+            if (!this.isReliable(point)) return ATTRIBUTION_SKIPPED;
+            let nearby = places.filter(place => this.isNear(place, point.location, this.CHECK_RADIUS));
+            let found = this.resolvePlace(nearby, point.location);
+            if (!found) return ATTRIBUTION_NONE;
+            let restaurant: RestaurantData = {
+                id: found.id,
+                name: found.name,
+                location: found.location || (found as RestaurantDetectionDetails).pinLocation || this.pinOf(found as RestaurantDetectionDetails)
+            };
+            let index = restaurants.findIndex(r => r.id && restaurant.id ? r.id === restaurant.id
+                : r.name === restaurant.name
+                && r.location?.lat === restaurant.location?.lat
+                && r.location?.lon === restaurant.location?.lon);
+            if (index >= 0) return index;
+            restaurants.push(restaurant);
+            return restaurants.length - 1;
+        });
+        return new TrajectoryCheckResponse(restaurants, attribution, this.dwell(request, attribution));
+    }
+
+    /**
+     * Finds the trailing run: walking back from the last point, every
+     * attributed point until one with a different attribution.
+     */
+    public static dwell(request: TrajectoryCheckRequest, attribution: number[]): Dwell {
+        let run = ATTRIBUTION_NONE;
+        let count = 0;
+        let since = 0, until = 0;
+        for (let i = attribution.length - 1; i >= 0; i--) {
+            if (attribution[i] === ATTRIBUTION_SKIPPED) continue;
+            if (count === 0) {
+                run = attribution[i];
+                until = request.points[i].time;
+            }
+            else if (attribution[i] !== run) break;
+            since = request.points[i].time;
+            count++;
+        }
+        let dwelling = run >= 0 && until - since >= (request.minDwellMillis || 0);
+        return { restaurant: run, since, until, points: count, dwelling };
+    }
+
+    /**
+     * Whether the place's pin or boundary box overlaps the square of radius around coord,
+     * like the bbox query of the places adapter.
+     */
+    private static isNear(place: RestaurantDetectionDetails, coord: LatLonPair, radius: number): boolean {
+        let points = [...(place.boundary || []), ...(place.pinLocation ? [place.pinLocation] : [])];
+        if (!points.length) return false;
+        let lats = points.map(p => p.lat);
+        let lons = points.map(p => p.lon);
+        return Math.min(...lats) <= coord.lat + radius && Math.max(...lats) >= coord.lat - radius
+            && Math.min(...lons) <= coord.lon + radius && Math.max(...lons) >= coord.lon - radius;
+    }
+
+    /**
+     * Degrees from the coords to the place's pin and boundary box along the
+     * farther axis, the smallest square radius around the coords that overlaps the box.
+     */
+    private static boxDistance(place: RestaurantDetectionDetails, coord: LatLonPair): number {
+        let points = [...(place.boundary || []), ...(place.pinLocation ? [place.pinLocation] : [])];
+        if (!points.length) return Infinity;
+        let lats = points.map(p => p.lat);
+        let lons = points.map(p => p.lon);
+        let lat = Math.max(0, Math.min(...lats) - coord.lat, coord.lat - Math.max(...lats));
+        let lon = Math.max(0, Math.min(...lons) - coord.lon, coord.lon - Math.max(...lons));
+        return Math.max(lat, lon);
+    }
+
+    private static toRestaurantData(place: RestaurantDetectionDetails): RestaurantData {
+        return { id: place.id, name: place.name, location: this.pinOf(place) };
+    }
+
+    private static pinOf(place: RestaurantDetectionDetails): LatLonPair | undefined {
+        if (place.pinLocation) return place.pinLocation;
+        if (!place.boundary?.length) return undefined;
+        let lat = place.boundary.reduce((sum,p)=>sum+p.lat, 0)/place.boundary.length;
+        let lon = place.boundary.reduce((sum,p)=>sum+p.lon, 0)/place.boundary.length;
+        return new LatLonPair(lat,lon);
+    }
+
     public static distanceBetween(p1: LatLonPair, p2: LatLonPair): number {
         let x1 = p1.lon
         let x2 = p2.lon
         let y1 = p1.lat
-        let y2 = p1.lat
+        let y2 = p2.lat
         return Math.sqrt( (x2-x1)**2 + (y2-y1)**2 )
     }
 
+    /**
+     * Loads every restaurant in a larger area so that clients can resolve
+     * locations against them locally. Boundary-only places get their
+     * centroid as a pin, matching getRestaurantAtLocation.
+     */
+    public static async getRestaurantsInArea(coord: LatLonPair, radius: number): Promise<RestaurantDetectionDetails[]> {
+        let places = await this.getPlacesApiAdapter().getRestaurantsInRadius(coord, radius);
+        for (let place of places) {
+            if (!place.pinLocation && place.boundary?.length) {
+                let lat = place.boundary.reduce((sum,p)=>sum+p.lat, 0)/place.boundary.length;
+                let lon = place.boundary.reduce((sum,p)=>sum+p.lon, 0)/place.boundary.length;
+                place.pinLocation = new LatLonPair(lat,lon)
+            }
+        }
+        return places;
+    }
+
+    public static clampAreaRadius(radius: number): number {
+        if (!radius || radius <= 0) return this.MAX_AREA_RADIUS;
+        return Math.min(radius, this.MAX_AREA_RADIUS);
+    }
+
     public static isInBoundary(boundary: LatLonPair[], p: LatLonPair): boolean {
         let poly = boundary.map(pt=>[pt.lat,pt.lon])
         return relationToPoly(poly, [p.lat,p.lon]) === -1;
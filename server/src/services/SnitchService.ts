@@ -14,6 +14,10 @@ export default class SnitchService {
 	async createAndPublishSnitch(newSnitchData: CreateSnitchRequest) {
 		try {
 			console.log(newSnitchData)
+			if (await this.snitchExists(newSnitchData.snitchId)) {
+				// A retried delivery of a snitch we already have, partners were already notified
+				return;
+			}
 			await this.createSnitch(newSnitchData)
 		}
 		catch (e) {
@@ -47,13 +51,37 @@ export default class SnitchService {
 		console.log("Response is ", response);
 	}
 
+	/**
+	 * Creates and publishes each snitch in the batch.
+	 * A failure on one snitch doesn't stop the others.
+	 * @returns Ids of the snitches that are now stored
+	 */
+	async createAndPublishSnitchBatch(snitches: CreateSnitchRequest[]): Promise<string[]> {
+		const accepted: string[] = [];
+		for (const snitch of snitches) {
+			try {
+				await this.createAndPublishSnitch(snitch);
+				if (snitch.snitchId) accepted.push(snitch.snitchId);
+			}
+			catch (e) {
+				console.log("Error publishing Snitch in batch:", snitch.snitchId, e);
+			}
+		}
+		return accepted;
+	}
+
+	async snitchExists(snitchId?: string): Promise<boolean> {
+		if (!snitchId) return false;
+		return await prisma.snitchEvent.count({ where: { snitchId } }) > 0;
+	}
+
 	/**
 	 * Creates a new Snitch. Handles saving the snitches datetime
 	 * so that it can be mroe reliable than a users phone
 	 * @param data Just the data required to create a new Snitch
 	 */
 	async createSnitch(data: CreateSnitchRequest): Promise<SnitchEvent> {
-		let snitch = new SnitchEvent(data.userId, new Date().toISOString(), data.originCoords, data.restaurantData)
+		let snitch = new SnitchEvent(data.userId, new Date().toISOString(), data.originCoords, data.restaurantData, data.snitchId)
 		await prisma.snitchEvent.create({
 			data: this.typeToDb(snitch)
 		})
@@ -0,0 +1,166 @@
+import { CreateSnitchRequest, SnitchBatchRequest, SnitchBatchResponse } from "../../../react-native-app/shared/models/requests/CreateSnitchRequest";
+import { TrajectoryCheckRequest, TrajectoryCheckResponse } from "../../../react-native-app/shared/models/requests/TrajectoryCheckRequest";
+import { RestaurantsInAreaResponse } from "../../../react-native-app/shared/models/requests/RestaurantsInAreaRequest";
+import { WireCodec, WIRE_MIME_TYPE } from "./WireCodec";
+
+// Produced by WireCodec.java, so these also catch the two codecs drifting apart
+const JAVA_CHECK_REQUEST = "01929ba284039fa9e3c105";
+const JAVA_CHECK_RESPONSE = "01030c4a6f6527732050697a7a61c09eb78403bfe9cfc105";
+const JAVA_SNITCH_BATCH = "01010461626307757365722d31929ba284039fa9e3c1050106436166c3a98e239f04";
+const JAVA_TRAJECTORY_REQUEST = "0188270480a0abfef9628087edc4028fe7c5e7080ba09c01bfb802000ea09c01c8010000a09c01e86b009701";
+const JAVA_CHECK_RESPONSE_WITH_CANDIDATES = "010f0c4a6f6527732050697a7a61c09eb78403bfe9cfc105076e6f64652f3190aeb784038ff9cfc105904e02076e6f64652f310c4a6f6527732050697a7a6101cf0fd00f067761792f320c4a6f6527732050697a7a610203c03ebf3ed00f0000d00f";
+const JAVA_TRAJECTORY_RESPONSE = "01010c427572676572204261726ec0ceeac4028fe7c5e708040100000300909e96ffbc31904e020100";
+const JAVA_TRAJECTORY_RESPONSE_WITH_CANDIDATES = "01010c427572676572204261726ec0ceeac4028fe7c5e708010000909e96ffbc31904e0201067761792f37c0ceeac4028fe7c5e708904e01067761792f370c427572676572204261726e010000";
+/** As encoded before restaurant ids were sent */
+const OLD_TRAJECTORY_RESPONSE = "01010c427572676572204261726ec0ceeac4028fe7c5e708040100000300909e96ffbc31904e0201";
+
+describe(WireCodec, ()=>{
+
+    describe(WireCodec.encodeCheckLocationRequest, ()=>{
+        it("should match the app's encoding", ()=>{
+            let encoded = WireCodec.encodeCheckLocationRequest({location: {lat: 40.7127753, lon: -74.0059728}});
+            expect(encoded.toString('hex')).toBe(JAVA_CHECK_REQUEST);
+        })
+    })
+
+    describe(WireCodec.decodeCheckLocationRequest, ()=>{
+        it("should decode the app's encoding", ()=>{
+            let decoded = WireCodec.decodeCheckLocationRequest(Buffer.from(JAVA_CHECK_REQUEST, 'hex'));
+            expect(decoded.location).toEqual({lat: 40.7127753, lon: -74.0059728});
+        })
+
+        it("should reject truncated messages", ()=>{
+            expect(()=>WireCodec.decodeCheckLocationRequest(Buffer.from("0192", 'hex'))).toThrow();
+        })
+
+        it("should reject unknown versions", ()=>{
+            expect(()=>WireCodec.decodeCheckLocationRequest(Buffer.from("02929ba284039fa9e3c105", 'hex'))).toThrow();
+        })
+    })
+
+    describe(WireCodec.encodeCheckLocationResponse, ()=>{
+        it("should match the app's encoding", ()=>{
+            let encoded = WireCodec.encodeCheckLocationResponse({
+                isRestaurant: true,
+                restaurant: {name: "Joe's Pizza", location: {lat: 40.73, lon: -73.99}}
+            });
+            expect(encoded.toString('hex')).toBe(JAVA_CHECK_RESPONSE);
+        })
+
+        it("should round trip a response without a restaurant", ()=>{
+            let encoded = WireCodec.encodeCheckLocationResponse({isRestaurant: false, restaurant: null});
+            expect(encoded.length).toBe(2);
+            expect(WireCodec.decodeCheckLocationResponse(encoded)).toEqual({isRestaurant: false, restaurant: null});
+        })
+
+        it("should match the app's encoding of ids and candidates", ()=>{
+            let result = {
+                isRestaurant: true,
+                restaurant: {id: "node/1", name: "Joe's Pizza", location: {lat: 40.73, lon: -73.99}},
+                candidates: new RestaurantsInAreaResponse({lat: 40.7301, lon: -73.9901}, 0.001, [
+                    {id: "node/1", name: "Joe's Pizza", pinLocation: {lat: 40.73, lon: -73.99}},
+                    {id: "way/2", name: "Joe's Pizza", boundary: [
+                        {lat: 40.7305, lon: -73.9905}, {lat: 40.7306, lon: -73.9905}, {lat: 40.7306, lon: -73.9904}
+                    ]}
+                ])
+            };
+            let encoded = WireCodec.encodeCheckLocationResponse(result);
+            expect(encoded.toString('hex')).toBe(JAVA_CHECK_RESPONSE_WITH_CANDIDATES);
+            expect(WireCodec.decodeCheckLocationResponse(encoded)).toEqual(result);
+        })
+    })
+
+    describe(WireCodec.decodeSnitchBatchRequest, ()=>{
+        it("should decode the app's encoding", ()=>{
+            let batch = WireCodec.decodeSnitchBatchRequest(Buffer.from(JAVA_SNITCH_BATCH, 'hex'));
+            expect(batch.snitches).toHaveLength(1);
+            expect(batch.snitches[0]).toEqual(new CreateSnitchRequest(
+                "user-1",
+                {name: "Café", location: {lat: 40.713, lon: -74.006}},
+                {lat: 40.7127753, lon: -74.0059728},
+                "abc"
+            ));
+        })
+
+        it("should round trip", ()=>{
+            let batch = new SnitchBatchRequest([
+                new CreateSnitchRequest("user-1", {name: "A", location: {lat: -33.8688, lon: 151.2093}}, {lat: -33.8689, lon: 151.2094}, "id-1"),
+                new CreateSnitchRequest("user-2", {name: "B", location: {lat: 51.5072, lon: -0.1276}}, {lat: 51.5073, lon: -0.1275}, "id-2")
+            ]);
+            let encoded = WireCodec.encodeSnitchBatchRequest(batch);
+            expect(WireCodec.decodeSnitchBatchRequest(encoded)).toEqual(batch);
+            expect(encoded.length).toBeLessThan(JSON.stringify(batch).length / 3);
+        })
+    })
+
+    describe(WireCodec.encodeSnitchBatchResponse, ()=>{
+        it("should round trip", ()=>{
+            let response = new SnitchBatchResponse(["id-1", "id-2"]);
+            expect(WireCodec.decodeSnitchBatchResponse(WireCodec.encodeSnitchBatchResponse(response))).toEqual(response);
+        })
+    })
+
+    describe(WireCodec.decodeTrajectoryCheckRequest, ()=>{
+        it("should decode the app's encoding", ()=>{
+            let request = WireCodec.decodeTrajectoryCheckRequest(Buffer.from(JAVA_TRAJECTORY_REQUEST, 'hex'));
+            expect(request).toEqual(new TrajectoryCheckRequest([
+                {time: 1700000000000, location: {lat: 34.0632, lon: -118.2317}, accuracy: 10},
+                // Accuracy is sent in whole meters
+                {time: 1700000010000, location: {lat: 34.0612, lon: -118.2317}, accuracy: 13},
+                {time: 1700000020000, location: {lat: 34.06121, lon: -118.2317}},
+                {time: 1700000030000, location: {lat: 34.0619, lon: -118.2317}, accuracy: 150}
+            ], 5000));
+            expect(WireCodec.encodeTrajectoryCheckRequest(request).toString('hex')).toBe(JAVA_TRAJECTORY_REQUEST);
+        })
+    })
+
+    describe(WireCodec.encodeTrajectoryCheckResponse, ()=>{
+        it("should match the app's encoding", ()=>{
+            let response = new TrajectoryCheckResponse(
+                [{name: "Burger Barn", location: {lat: 34.0612, lon: -118.2317}}],
+                [-1, 0, 0, -2],
+                {restaurant: 0, since: 1700000010000, until: 1700000020000, points: 2, dwelling: true}
+            );
+            let encoded = WireCodec.encodeTrajectoryCheckResponse(response);
+            expect(encoded.toString('hex')).toBe(JAVA_TRAJECTORY_RESPONSE);
+            expect(WireCodec.decodeTrajectoryCheckResponse(encoded)).toEqual(response);
+        })
+
+        it("should round trip restaurant ids", ()=>{
+            let response = new TrajectoryCheckResponse(
+                [{id: "way/7", name: "Burger Barn", location: {lat: 34.0612, lon: -118.2317}}],
+                [0],
+                {restaurant: 0, since: 0, until: 0, points: 1, dwelling: false}
+            );
+            let encoded = WireCodec.encodeTrajectoryCheckResponse(response);
+            expect(WireCodec.decodeTrajectoryCheckResponse(encoded).restaurants[0].id).toBe("way/7");
+        })
+
+        it("should match the app's encoding of candidates", ()=>{
+            let response = new TrajectoryCheckResponse(
+                [{id: "way/7", name: "Burger Barn", location: {lat: 34.0612, lon: -118.2317}}],
+                [0],
+                {restaurant: 0, since: 1700000010000, until: 1700000020000, points: 2, dwelling: true},
+                new RestaurantsInAreaResponse({lat: 34.0612, lon: -118.2317}, 0.001, [
+                    {id: "way/7", name: "Burger Barn", pinLocation: {lat: 34.0612, lon: -118.2317}}
+                ])
+            );
+            let encoded = WireCodec.encodeTrajectoryCheckResponse(response);
+            expect(encoded.toString('hex')).toBe(JAVA_TRAJECTORY_RESPONSE_WITH_CANDIDATES);
+            expect(WireCodec.decodeTrajectoryCheckResponse(encoded)).toEqual(response);
+        })
+
+        it("should decode responses from before ids were sent", ()=>{
+            let decoded = WireCodec.decodeTrajectoryCheckResponse(Buffer.from(OLD_TRAJECTORY_RESPONSE, 'hex'));
+            expect(decoded.restaurants).toEqual([{name: "Burger Barn", location: {lat: 34.0612, lon: -118.2317}}]);
+        })
+    })
+
+    describe(WireCodec.accepts, ()=>{
+        it("should only accept when the client asks for it", ()=>{
+            expect(WireCodec.accepts(`${WIRE_MIME_TYPE}, application/json;q=0.5`)).toBe(true);
+            expect(WireCodec.accepts("application/json")).toBe(false);
+            expect(WireCodec.accepts(undefined)).toBe(false);
+        })
+    })
+})
@@ -0,0 +1,375 @@
+import { LatLonPair } from "../../../react-native-app/shared/models/CoordinateModels";
+import RestaurantData from "../../../react-native-app/shared/models/RestaurantData";
+import { LocationCheckResult } from "../../../react-native-app/shared/models/LocationCheck";
+import { AreaRestaurant, RestaurantsInAreaResponse } from "../../../react-native-app/shared/models/requests/RestaurantsInAreaRequest";
+import { CreateSnitchRequest, SnitchBatchRequest, SnitchBatchResponse } from "../../../react-native-app/shared/models/requests/CreateSnitchRequest";
+import { TrajectoryCheckRequest, TrajectoryCheckResponse, TrajectoryPoint } from "../../../react-native-app/shared/models/requests/TrajectoryCheckRequest";
+
+export const WIRE_MIME_TYPE = "application/x-fitsnitch-wire";
+
+const VERSION = 1;
+const E7 = 1e7;
+const FLAG_IS_RESTAURANT = 1;
+const FLAG_HAS_RESTAURANT = 2;
+const FLAG_HAS_ID = 4;
+const FLAG_HAS_CANDIDATES = 8;
+const HAS_PIN = 1;
+const HAS_BOUNDARY = 2;
+
+export type CheckLocationBody = { location: LatLonPair };
+
+/**
+ * Compact binary encoding of the bodies the app sends on every loop tick.
+ * Must stay in sync with WireCodec.java in the app's location-core module.
+ *
+ * Every message starts with a version byte. Coordinates are degrees * 1e7
+ * as zigzag varints, and a restaurant's location is stored as a delta from
+ * the coordinates before it. Strings are a varint of their UTF-8 length + 1,
+ * with 0 meaning null, followed by the bytes. Trajectory points are deltas
+ * from the point before, with accuracy rounded to whole meters.
+ *
+ * Fields added since version 1 are behind a flag or at the end of the
+ * message, where older decoders don't look, so the version didn't change.
+ *
+ * Varints are built with arithmetic rather than bit operations, which
+ * would truncate coordinates to 32 bits.
+ */
+export class WireCodec {
+    /**
+     * Whether the client listed the wire format in its Accept header
+     */
+    public static accepts(acceptHeader?: string): boolean {
+        return Boolean(acceptHeader && acceptHeader.includes(WIRE_MIME_TYPE));
+    }
+
+    public static encodeCheckLocationRequest(body: CheckLocationBody): Buffer {
+        const out = new WireWriter();
+        out.coords(body.location);
+        return out.toBuffer();
+    }
+
+    public static decodeCheckLocationRequest(buf: Buffer): CheckLocationBody {
+        const input = new WireReader(buf);
+        return { location: input.coords() };
+    }
+
+    public static encodeCheckLocationResponse(body: LocationCheckResult): Buffer {
+        const out = new WireWriter();
+        const restaurant = body.restaurant;
+        const flags = (body.isRestaurant ? FLAG_IS_RESTAURANT : 0)
+            | (restaurant ? FLAG_HAS_RESTAURANT : 0)
+            | (restaurant?.id ? FLAG_HAS_ID : 0)
+            | (body.candidates ? FLAG_HAS_CANDIDATES : 0);
+        out.byte(flags);
+        if (restaurant) out.restaurant(restaurant);
+        if (flags & FLAG_HAS_ID) out.string(restaurant?.id);
+        if (body.candidates) out.candidates(body.candidates);
+        return out.toBuffer();
+    }
+
+    public static decodeCheckLocationResponse(buf: Buffer): LocationCheckResult {
+        const input = new WireReader(buf);
+        const flags = input.byte();
+        const restaurant = (flags & FLAG_HAS_RESTAURANT) ? input.restaurant() : null;
+        if (restaurant && (flags & FLAG_HAS_ID)) restaurant.id = input.string() ?? undefined;
+        const result: LocationCheckResult = { isRestaurant: Boolean(flags & FLAG_IS_RESTAURANT), restaurant };
+        if (flags & FLAG_HAS_CANDIDATES) result.candidates = input.candidates();
+        return result;
+    }
+
+    public static encodeCreateSnitchRequest(snitch: CreateSnitchRequest): Buffer {
+        const out = new WireWriter();
+        out.snitch(snitch);
+        return out.toBuffer();
+    }
+
+    public static decodeCreateSnitchRequest(buf: Buffer): CreateSnitchRequest {
+        return new WireReader(buf).snitch();
+    }
+
+    public static encodeSnitchBatchRequest(batch: SnitchBatchRequest): Buffer {
+        const out = new WireWriter();
+        out.varint(batch.snitches.length);
+        for (const snitch of batch.snitches) out.snitch(snitch);
+        return out.toBuffer();
+    }
+
+    public static decodeSnitchBatchRequest(buf: Buffer): SnitchBatchRequest {
+        const input = new WireReader(buf);
+        const count = input.count();
+        const snitches: CreateSnitchRequest[] = [];
+        for (let i = 0; i < count; i++) snitches.push(input.snitch());
+        return new SnitchBatchRequest(snitches);
+    }
+
+    public static encodeSnitchBatchResponse(response: SnitchBatchResponse): Buffer {
+        const out = new WireWriter();
+        out.varint(response.accepted.length);
+        for (const id of response.accepted) out.string(id);
+        return out.toBuffer();
+    }
+
+    public static decodeSnitchBatchResponse(buf: Buffer): SnitchBatchResponse {
+        const input = new WireReader(buf);
+        const count = input.count();
+        const accepted: string[] = [];
+        for (let i = 0; i < count; i++) accepted.push(input.string() as string);
+        return new SnitchBatchResponse(accepted);
+    }
+
+    public static encodeTrajectoryCheckRequest(request: TrajectoryCheckRequest): Buffer {
+        const out = new WireWriter();
+        out.varint(request.minDwellMillis || 0);
+        out.varint(request.points.length);
+        let previous: TrajectoryPoint | undefined;
+        for (const point of request.points) {
+            out.zigzag(previous ? point.time - previous.time : point.time);
+            out.coords(point.location, previous?.location);
+            const accuracy = point.accuracy;
+            out.varint(accuracy === undefined || accuracy === null ? 0 : Math.round(accuracy) + 1);
+            previous = point;
+        }
+        return out.toBuffer();
+    }
+
+    public static decodeTrajectoryCheckRequest(buf: Buffer): TrajectoryCheckRequest {
+        const input = new WireReader(buf);
+        const minDwellMillis = input.varint();
+        const count = input.count();
+        const points: TrajectoryPoint[] = [];
+        let previous: TrajectoryPoint | undefined;
+        for (let i = 0; i < count; i++) {
+            const time = input.zigzag() + (previous ? previous.time : 0);
+            const location = input.coords(previous?.location);
+            const accuracy = input.varint();
+            previous = accuracy === 0 ? { time, location } : { time, location, accuracy: accuracy - 1 };
+            points.push(previous);
+        }
+        return new TrajectoryCheckRequest(points, minDwellMillis);
+    }
+
+    public static encodeTrajectoryCheckResponse(response: TrajectoryCheckResponse): Buffer {
+        const out = new WireWriter();
+        out.varint(response.restaurants.length);
+        for (const restaurant of response.restaurants) out.restaurant(restaurant);
+        out.varint(response.attribution.length);
+        for (const index of response.attribution) out.zigzag(index);
+        const dwell = response.dwell;
+        out.zigzag(dwell.restaurant);
+        out.varint(dwell.since);
+        out.varint(dwell.until - dwell.since);
+        out.varint(dwell.points);
+        out.byte(dwell.dwelling ? 1 : 0);
+        for (const restaurant of response.restaurants) out.string(restaurant.id);
+        if (response.candidates) out.candidates(response.candidates);
+        return out.toBuffer();
+    }
+
+    public static decodeTrajectoryCheckResponse(buf: Buffer): TrajectoryCheckResponse {
+        const input = new WireReader(buf);
+        const restaurantCount = input.count();
+        const restaurants: RestaurantData[] = [];
+        for (let i = 0; i < restaurantCount; i++) restaurants.push(input.restaurant());
+        const attributionCount = input.count();
+        const attribution: number[] = [];
+        for (let i = 0; i < attributionCount; i++) attribution.push(input.zigzag());
+        const restaurant = input.zigzag();
+        const since = input.varint();
+        const until = since + input.varint();
+        const points = input.varint();
+        const dwelling = input.byte() !== 0;
+        // Ids came later, and older encoders end the message here
+        if (input.hasRemaining()) {
+            for (const r of restaurants) {
+                const id = input.string();
+                if (id !== null) r.id = id;
+            }
+        }
+        // Candidates came after ids, and are left out when there are none
+        const candidates = input.hasRemaining() ? input.candidates() : undefined;
+        return new TrajectoryCheckResponse(restaurants, attribution, { restaurant, since, until, points, dwelling }, candidates);
+    }
+}
+
+class WireWriter {
+    private bytes: number[] = [VERSION];
+
+    byte(value: number) {
+        this.bytes.push(value & 0xFF);
+    }
+
+    varint(value: number) {
+        while (value >= 0x80) {
+            this.bytes.push((value % 0x80) + 0x80);
+            value = Math.floor(value / 0x80);
+        }
+        this.bytes.push(value);
+    }
+
+    zigzag(value: number) {
+        this.varint(value >= 0 ? value * 2 : -value * 2 - 1);
+    }
+
+    coords(location: LatLonPair, relativeTo?: LatLonPair) {
+        let lat = Math.round(location.lat * E7);
+        let lon = Math.round(location.lon * E7);
+        if (relativeTo) {
+            lat -= Math.round(relativeTo.lat * E7);
+            lon -= Math.round(relativeTo.lon * E7);
+        }
+        this.zigzag(lat);
+        this.zigzag(lon);
+    }
+
+    string(value?: string | null) {
+        if (value === undefined || value === null) {
+            this.varint(0);
+            return;
+        }
+        const encoded = Buffer.from(value, 'utf8');
+        this.varint(encoded.length + 1);
+        for (const b of encoded) this.bytes.push(b);
+    }
+
+    restaurant(restaurant: RestaurantData, relativeTo?: LatLonPair) {
+        this.string(restaurant.name);
+        // The app always expects a location; a missing one is sent as the base coordinates
+        this.coords(restaurant.location || relativeTo || { lat: 0, lon: 0 }, relativeTo);
+    }
+
+    /**
+     * Pins are deltas from the center, and each boundary point a delta
+     * from the point before it, starting from the pin or the center.
+     */
+    candidates(candidates: RestaurantsInAreaResponse) {
+        this.coords(candidates.center);
+        this.varint(Math.round(candidates.radius * E7));
+        this.varint(candidates.restaurants.length);
+        for (const place of candidates.restaurants) {
+            this.string(place.id);
+            this.string(place.name);
+            this.byte((place.pinLocation ? HAS_PIN : 0) | (place.boundary ? HAS_BOUNDARY : 0));
+            if (place.pinLocation) this.coords(place.pinLocation, candidates.center);
+            if (place.boundary) {
+                this.varint(place.boundary.length);
+                let previous = place.pinLocation || candidates.center;
+                for (const point of place.boundary) {
+                    this.coords(point, previous);
+                    previous = point;
+                }
+            }
+        }
+    }
+
+    snitch(snitch: CreateSnitchRequest) {
+        this.string(snitch.snitchId);
+        this.string(snitch.userId);
+        this.coords(snitch.originCoords);
+        this.byte(snitch.restaurantData ? 1 : 0);
+        if (snitch.restaurantData) this.restaurant(snitch.restaurantData, snitch.originCoords);
+    }
+
+    toBuffer(): Buffer {
+        return Buffer.from(this.bytes);
+    }
+}
+
+class WireReader {
+    private pos = 1;
+
+    constructor(private buf: Buffer) {
+        if (buf.length === 0 || buf[0] !== VERSION) {
+            throw new Error(`Unsupported wire version ${buf[0]}`);
+        }
+    }
+
+    byte(): number {
+        if (this.pos >= this.buf.length) throw new Error("Truncated wire message");
+        return this.buf[this.pos++];
+    }
+
+    varint(): number {
+        let result = 0;
+        let scale = 1;
+        while (true) {
+            const b = this.byte();
+            result += (b % 0x80) * scale;
+            if (b < 0x80) return result;
+            scale *= 0x80;
+        }
+    }
+
+    zigzag(): number {
+        const raw = this.varint();
+        return raw % 2 === 0 ? raw / 2 : -(raw + 1) / 2;
+    }
+
+    hasRemaining(): boolean {
+        return this.pos < this.buf.length;
+    }
+
+    count(): number {
+        const count = this.varint();
+        // Every element takes at least one byte
+        if (count > this.buf.length - this.pos) throw new Error("Truncated wire message");
+        return count;
+    }
+
+    coords(relativeTo?: LatLonPair): LatLonPair {
+        let lat = this.zigzag();
+        let lon = this.zigzag();
+        if (relativeTo) {
+            lat += Math.round(relativeTo.lat * E7);
+            lon += Math.round(relativeTo.lon * E7);
+        }
+        return { lat: lat / E7, lon: lon / E7 };
+    }
+
+    string(): string | null {
+        const length = this.varint() - 1;
+        if (length < 0) return null;
+        if (this.pos + length > this.buf.length) throw new Error("Truncated wire message");
+        const value = this.buf.toString('utf8', this.pos, this.pos + length);
+        this.pos += length;
+        return value;
+    }
+
+    restaurant(relativeTo?: LatLonPair): RestaurantData {
+        const name = this.string() ?? undefined;
+        return { name, location: this.coords(relativeTo) };
+    }
+
+    candidates(): RestaurantsInAreaResponse {
+        const center = this.coords();
+        const radius = this.varint() / E7;
+        const count = this.count();
+        const restaurants: AreaRestaurant[] = [];
+        for (let i = 0; i < count; i++) {
+            const id = this.string() ?? undefined;
+            const name = this.string() ?? "";
+            const flags = this.byte();
+            const place: AreaRestaurant = { id, name };
+            if (flags & HAS_PIN) place.pinLocation = this.coords(center);
+            if (flags & HAS_BOUNDARY) {
+                const points = this.count();
+                const boundary: LatLonPair[] = [];
+                let previous = place.pinLocation || center;
+                for (let p = 0; p < points; p++) {
+                    previous = this.coords(previous);
+                    boundary.push(previous);
+                }
+                place.boundary = boundary;
+            }
+            restaurants.push(place);
+        }
+        return new RestaurantsInAreaResponse(center, radius, restaurants);
+    }
+
+    snitch(): CreateSnitchRequest {
+        const snitchId = this.string() ?? undefined;
+        const userId = this.string() as string;
+        const originCoords = this.coords();
+        const restaurantData = this.byte() ? this.restaurant(originCoords) : {};
+        return new CreateSnitchRequest(userId, restaurantData, originCoords, snitchId);
+    }
+}